@@ -0,0 +1,129 @@
+/*
+ * ActionBenchmark.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+
+/**
+ * ActionBenchmark measures the time taken to decode and encode a DoAction
+ * containing a table of names followed by a sequence of Push and arithmetic
+ * actions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ActionBenchmark {
+
+    /** The number of actions in the DoAction. */
+    @Param({"100", "10000" })
+    public int actions;
+
+    /** The encoded DoAction. */
+    private byte[] data;
+    /** The DoAction that is encoded. */
+    private DoAction action;
+    /** Buffer reused when encoding the actions. */
+    private ByteArrayOutputStream out;
+
+    /**
+     * Generate the actions and encode them.
+     *
+     * @throws IOException if the actions cannot be encoded.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        action = Corpus.actions(actions, new Random(Corpus.SEED));
+        out = new ByteArrayOutputStream();
+        data = encode();
+    }
+
+    /**
+     * Decode the DoAction.
+     *
+     * @return the decoded DoAction.
+     * @throws IOException if the actions cannot be decoded.
+     */
+    @Benchmark
+    public DoAction decode() throws IOException {
+        final SWFDecoder coder = new SWFDecoder(
+                new ByteArrayInputStream(data));
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+        context.put(Context.VERSION, Movie.VERSION);
+        return new DoAction(coder, context);
+    }
+
+    /**
+     * Encode the DoAction.
+     *
+     * @return the encoded DoAction.
+     * @throws IOException if the actions cannot be encoded.
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+        out.reset();
+        final SWFEncoder coder = new SWFEncoder(out);
+        final Context context = new Context();
+        context.put(Context.VERSION, Movie.VERSION);
+        action.prepareToEncode(context);
+        action.encode(coder, context);
+        coder.flush();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * CanvasBenchmark.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.shape.DefineShape2;
+import com.flagstone.transform.util.shape.Canvas;
+
+/**
+ * CanvasBenchmark measures the time taken to build paths using Canvas and
+ * generate the shape definition. The coordinates are generated when the
+ * benchmark is set up so only the drawing operations are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CanvasBenchmark {
+
+    /** The number of coordinates needed to draw a cubic curve. */
+    private static final int CUBIC = 6;
+    /** The largest distance in twips covered by a single segment. */
+    private static final int STEP = 400;
+
+    /** The number of segments drawn in each path. */
+    @Param({"100", "10000" })
+    public int segments;
+
+    /** The relative coordinates used to draw each segment. */
+    private int[] coords;
+    /** The Canvas used to draw the paths. */
+    private Canvas canvas;
+
+    /**
+     * Generate the coordinates for the segments.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(Corpus.SEED);
+        coords = new int[segments * CUBIC];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = random.nextInt(STEP) - STEP / 2;
+        }
+        canvas = new Canvas();
+    }
+
+    /**
+     * Draw a path of straight lines.
+     *
+     * @return the shape definition.
+     */
+    @Benchmark
+    public DefineShape2 lines() {
+        start();
+        for (int i = 0; i < coords.length; i += CUBIC) {
+            canvas.rline(coords[i], coords[i + 1]);
+        }
+        canvas.close();
+        return canvas.defineShape(1);
+    }
+
+    /**
+     * Draw a path of quadratic curves.
+     *
+     * @return the shape definition.
+     */
+    @Benchmark
+    public DefineShape2 quadraticCurves() {
+        start();
+        for (int i = 0; i < coords.length; i += CUBIC) {
+            canvas.rcurve(coords[i], coords[i + 1],
+                    coords[i + 2], coords[i + 3]);
+        }
+        canvas.close();
+        return canvas.defineShape(1);
+    }
+
+    /**
+     * Draw a path of cubic curves which the Canvas flattens into a series
+     * of straight lines.
+     *
+     * @return the shape definition.
+     */
+    @Benchmark
+    public DefineShape2 cubicCurves() {
+        start();
+        for (int i = 0; i < coords.length; i += CUBIC) {
+            canvas.rcurve(coords[i], coords[i + 1], coords[i + 2],
+                    coords[i + 3], coords[i + 4], coords[i + 5]);
+        }
+        canvas.close();
+        return canvas.defineShape(1);
+    }
+
+    /**
+     * Clear the canvas and start a new path.
+     */
+    private void start() {
+        canvas.clear();
+        canvas.setLineStyle(new LineStyle1(20, WebPalette.BLACK.color()));
+        canvas.setFillStyle(new SolidFill(WebPalette.RED.color()));
+        canvas.move(0, 0);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Corpus.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import com.flagstone.transform.Background;
+import com.flagstone.transform.DoAction;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.action.Action;
+import com.flagstone.transform.action.BasicAction;
+import com.flagstone.transform.action.Push;
+import com.flagstone.transform.action.Table;
+import com.flagstone.transform.action.TableIndex;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.shape.DefineShape2;
+import com.flagstone.transform.util.shape.Canvas;
+
+/**
+ * Corpus loads the reference files used by the benchmarks and generates
+ * synthetic movies that are much larger than any of the reference files so
+ * the cost of decoding and encoding can be measured on realistic volumes of
+ * data.
+ *
+ * The synthetic movies are generated from a fixed seed so the same movie is
+ * created each time and results can be compared between versions of the
+ * library. Running the class writes a synthetic movie to a file:
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.flagstone.transform.benchmark.Corpus
+ *     large.swf [shapes] [segments] [actions]
+ * </pre>
+ */
+public final class Corpus {
+
+    /** Default location of the reference files relative to the module. */
+    public static final String RESOURCES = "../src/test/resources";
+
+    /** The seed used to generate the synthetic movies. */
+    public static final long SEED = 20100101L;
+
+    /** The number of shapes in the default synthetic movie. */
+    public static final int SHAPES = 2000;
+    /** The number of line and curve segments in each shape. */
+    public static final int SEGMENTS = 200;
+    /** The number of actions in each DoAction. */
+    public static final int ACTIONS = 500;
+
+    /** The width and height of the movie in twips. */
+    private static final int SIZE = 8000;
+    /** The largest distance in twips covered by a single segment. */
+    private static final int STEP = 400;
+    /** The number of shapes shown in each frame. */
+    private static final int SHAPES_PER_FRAME = 20;
+    /** The number of names in the table of strings used by the actions. */
+    private static final int NAMES = 32;
+    /** The size of the buffer used to read files. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Write a synthetic movie to a file.
+     *
+     * @param args the file name followed by the optional number of shapes,
+     * segments in each shape and actions in each frame.
+     * @throws IOException if the movie cannot be written to the file.
+     * @throws DataFormatException if the movie cannot be encoded.
+     */
+    public static void main(final String[] args)
+            throws IOException, DataFormatException {
+        if (args.length == 0) {
+            System.err.println("Usage: Corpus file [shapes] " //NOPMD
+                    + "[segments] [actions]");
+            return;
+        }
+        final int shapes = args.length > 1
+                ? Integer.parseInt(args[1]) : SHAPES;
+        final int segments = args.length > 2
+                ? Integer.parseInt(args[2]) : SEGMENTS;
+        final int actions = args.length > 3
+                ? Integer.parseInt(args[3]) : ACTIONS;
+
+        final OutputStream stream = new FileOutputStream(args[0]);
+        try {
+            movie(shapes, segments, actions).encodeToStream(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read the contents of all the files in a directory with a given
+     * extension. The files are returned in alphabetical order so the same
+     * set of data is used each time a benchmark is run.
+     *
+     * @param dir the directory containing the files.
+     * @param suffix the file extension, for example ".swf".
+     * @return the contents of each file.
+     * @throws IOException if a file cannot be read.
+     */
+    public static List<byte[]> read(final File dir, final String suffix)
+            throws IOException {
+        final String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(final File directory, final String name) {
+                return name.toLowerCase().endsWith(suffix);
+            }
+        });
+
+        if (names == null) {
+            throw new IOException("Cannot read directory: " + dir);
+        }
+        Arrays.sort(names);
+
+        final List<byte[]> files = new ArrayList<byte[]>(names.length);
+        for (final String name : names) {
+            files.add(read(new File(dir, name)));
+        }
+        return files;
+    }
+
+    /**
+     * Read the contents of a file.
+     *
+     * @param file the file to read.
+     * @return the contents of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] read(final File file) throws IOException {
+        final InputStream stream = new FileInputStream(file);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                (int) file.length());
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            stream.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode a movie.
+     *
+     * @param movie the movie to encode.
+     * @return the encoded movie.
+     * @throws IOException if the movie cannot be encoded.
+     * @throws DataFormatException if the movie cannot be compressed.
+     */
+    public static byte[] encode(final Movie movie)
+            throws IOException, DataFormatException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.encodeToStream(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Generate a synthetic movie. Each frame shows a number of shapes and
+     * contains a DoAction with a table of strings followed by a sequence of
+     * Push and arithmetic actions.
+     *
+     * @param shapes the number of shapes defined in the movie.
+     * @param segments the number of lines and curves in each shape.
+     * @param actions the number of actions added to each frame.
+     * @return the generated movie.
+     */
+    public static Movie movie(final int shapes, final int segments,
+            final int actions) {
+        final Random random = new Random(SEED);
+        final Movie movie = new Movie();
+
+        final MovieHeader header = new MovieHeader();
+        header.setVersion(Movie.VERSION);
+        header.setFrameSize(new Bounds(0, 0, SIZE, SIZE));
+        header.setFrameRate(1.0f);
+        header.setCompressed(false);
+
+        movie.add(header);
+        movie.add(new Background(WebPalette.WHITE.color()));
+
+        final Canvas canvas = new Canvas();
+        for (int i = 0; i < shapes; i++) {
+            movie.add(shape(canvas, i + 1, segments, random));
+            movie.add(Place2.show(i + 1, i + 1, 0, 0));
+
+            if ((i + 1) % SHAPES_PER_FRAME == 0 || i == shapes - 1) {
+                movie.add(actions(actions, random));
+                movie.add(ShowFrame.getInstance());
+            }
+        }
+        return movie;
+    }
+
+    /**
+     * Generate a shape drawn as a random walk of lines and curves.
+     *
+     * @param canvas the Canvas used to draw the shape.
+     * @param identifier the unique identifier for the shape.
+     * @param segments the number of lines and curves in the shape.
+     * @param random the source of random coordinates.
+     * @return the definition of the shape.
+     */
+    public static DefineShape2 shape(final Canvas canvas,
+            final int identifier, final int segments, final Random random) {
+        canvas.clear();
+        canvas.setLineStyle(new LineStyle1(20, WebPalette.BLACK.color()));
+        canvas.setFillStyle(new SolidFill(WebPalette.values()[
+                random.nextInt(WebPalette.values().length)].color()));
+        canvas.move(random.nextInt(SIZE), random.nextInt(SIZE));
+        for (int i = 0; i < segments; i++) {
+            if (random.nextBoolean()) {
+                canvas.rline(step(random), step(random));
+            } else {
+                canvas.rcurve(step(random), step(random),
+                        step(random), step(random));
+            }
+        }
+        canvas.close();
+        return canvas.defineShape(identifier);
+    }
+
+    /**
+     * Generate a DoAction which declares a table of names and then pushes
+     * values onto the stack and adds them together.
+     *
+     * @param count the number of actions.
+     * @param random the source of random values.
+     * @return the DoAction.
+     */
+    public static DoAction actions(final int count, final Random random) {
+        final List<Action> list = new ArrayList<Action>(count + 1);
+        final Table table = new Table();
+        for (int i = 0; i < NAMES; i++) {
+            table.add("name" + i);
+        }
+        list.add(table);
+
+        final Push.Builder builder = new Push.Builder();
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+            case 0:
+                list.add(builder.clear()
+                        .add(new TableIndex(random.nextInt(NAMES)))
+                        .add(random.nextInt()).build());
+                break;
+            case 1:
+                list.add(builder.clear()
+                        .add("value" + random.nextInt(NAMES))
+                        .add(random.nextDouble()).build());
+                break;
+            case 2:
+                list.add(BasicAction.ADD);
+                break;
+            default:
+                list.add(BasicAction.SET_VARIABLE);
+                break;
+            }
+        }
+        list.add(BasicAction.END);
+        return new DoAction(list);
+    }
+
+    /**
+     * Return a random distance for a line or curve segment.
+     * @param random the source of random numbers.
+     * @return a distance in the range -STEP/2 to STEP/2 twips.
+     */
+    private static int step(final Random random) {
+        return random.nextInt(STEP) - STEP / 2;
+    }
+
+    /** Private constructor for the utility class. */
+    private Corpus() {
+        // Utility class.
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * DecoderBenchmark.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.flagstone.transform.util.font.TTFDecoder;
+import com.flagstone.transform.util.image.JPGDecoder;
+import com.flagstone.transform.util.image.PNGDecoder;
+import com.flagstone.transform.util.sound.MP3Decoder;
+import com.flagstone.transform.util.sound.WAVDecoder;
+
+/**
+ * DecoderBenchmark measures the time taken by the decoders in the util
+ * package to read the reference images, sounds and fonts and generate the
+ * object that is added to a movie. Each operation decodes every file of the
+ * given format. The reference suites contain files which are deliberately
+ * corrupt so files that cannot be decoded are left out when the benchmark
+ * is set up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class DecoderBenchmark {
+
+    /** Name of the PNG format. */
+    private static final String PNG = "png";
+    /** Name of the JPEG format. */
+    private static final String JPG = "jpg";
+    /** Name of the MP3 format. */
+    private static final String MP3 = "mp3";
+    /** Name of the WAV format. */
+    private static final String WAV = "wav";
+    /** Name of the TrueType format. */
+    private static final String TTF = "ttf";
+
+    /** The directory containing the reference files. */
+    @Param(Corpus.RESOURCES)
+    public String resources;
+
+    /** The PNG images. */
+    private List<byte[]> pngFiles;
+    /** The JPEG images. */
+    private List<byte[]> jpgFiles;
+    /** The MP3 sounds. */
+    private List<byte[]> mp3Files;
+    /** The WAV sounds. */
+    private List<byte[]> wavFiles;
+    /** The TrueType fonts. */
+    private List<byte[]> ttfFiles;
+
+    /**
+     * Load the reference files for each format.
+     *
+     * @throws IOException if a file cannot be read.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pngFiles = load(PNG);
+        jpgFiles = load(JPG);
+        mp3Files = load(MP3);
+        wavFiles = load(WAV);
+        ttfFiles = load(TTF);
+    }
+
+    /**
+     * Decode the PNG images.
+     *
+     * @param hole used to consume the decoded images.
+     * @throws IOException if an image cannot be read.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    @Benchmark
+    public void png(final Blackhole hole)
+            throws IOException, DataFormatException {
+        decodeAll(PNG, pngFiles, hole);
+    }
+
+    /**
+     * Decode the JPEG images.
+     *
+     * @param hole used to consume the decoded images.
+     * @throws IOException if an image cannot be read.
+     * @throws DataFormatException if an image cannot be decoded.
+     */
+    @Benchmark
+    public void jpg(final Blackhole hole)
+            throws IOException, DataFormatException {
+        decodeAll(JPG, jpgFiles, hole);
+    }
+
+    /**
+     * Decode the MP3 sounds.
+     *
+     * @param hole used to consume the decoded sounds.
+     * @throws IOException if a sound cannot be read.
+     * @throws DataFormatException if a sound cannot be decoded.
+     */
+    @Benchmark
+    public void mp3(final Blackhole hole)
+            throws IOException, DataFormatException {
+        decodeAll(MP3, mp3Files, hole);
+    }
+
+    /**
+     * Decode the WAV sounds.
+     *
+     * @param hole used to consume the decoded sounds.
+     * @throws IOException if a sound cannot be read.
+     * @throws DataFormatException if a sound cannot be decoded.
+     */
+    @Benchmark
+    public void wav(final Blackhole hole)
+            throws IOException, DataFormatException {
+        decodeAll(WAV, wavFiles, hole);
+    }
+
+    /**
+     * Decode the TrueType fonts.
+     *
+     * @param hole used to consume the decoded fonts.
+     * @throws IOException if a font cannot be read.
+     * @throws DataFormatException if a font cannot be decoded.
+     */
+    @Benchmark
+    public void ttf(final Blackhole hole)
+            throws IOException, DataFormatException {
+        decodeAll(TTF, ttfFiles, hole);
+    }
+
+    /**
+     * Load the reference files for a format, leaving out any that cannot
+     * be decoded.
+     *
+     * @param format the name of the format, which is also the file
+     * extension and the prefix of the reference directory.
+     * @return the contents of the files that can be decoded.
+     * @throws IOException if a file cannot be read.
+     */
+    private List<byte[]> load(final String format) throws IOException {
+        final List<byte[]> files = Corpus.read(
+                new File(resources, format + "-reference"), "." + format);
+        final List<byte[]> usable = new ArrayList<byte[]>(files.size());
+
+        for (final byte[] file : files) {
+            try {
+                decode(format, file);
+                usable.add(file);
+            } catch (Exception e) { //NOPMD
+                // Reference file that is not valid.
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * Decode a list of files.
+     *
+     * @param format the name of the format.
+     * @param files the files to decode.
+     * @param hole used to consume the decoded objects.
+     * @throws IOException if a file cannot be read.
+     * @throws DataFormatException if a file cannot be decoded.
+     */
+    private static void decodeAll(final String format,
+            final List<byte[]> files, final Blackhole hole)
+            throws IOException, DataFormatException {
+        for (final byte[] file : files) {
+            hole.consume(decode(format, file));
+        }
+    }
+
+    /**
+     * Decode a file and create the object that would be added to a movie.
+     *
+     * @param format the name of the format.
+     * @param file the contents of the file.
+     * @return the definition of the image or sound or the list of fonts.
+     * @throws IOException if the file cannot be read.
+     * @throws DataFormatException if the file cannot be decoded.
+     */
+    private static Object decode(final String format, final byte[] file)
+            throws IOException, DataFormatException {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(file);
+        final Object object;
+
+        switch (format) {
+        case PNG:
+            final PNGDecoder png = new PNGDecoder();
+            png.read(stream);
+            object = png.defineImage(1);
+            break;
+        case JPG:
+            final JPGDecoder jpg = new JPGDecoder();
+            jpg.read(stream);
+            object = jpg.defineImage(1);
+            break;
+        case MP3:
+            final MP3Decoder mp3 = new MP3Decoder();
+            mp3.read(stream);
+            object = mp3.defineSound(1);
+            break;
+        case WAV:
+            final WAVDecoder wav = new WAVDecoder();
+            wav.read(stream);
+            object = wav.defineSound(1);
+            break;
+        case TTF:
+            final TTFDecoder ttf = new TTFDecoder();
+            ttf.read(stream);
+            object = ttf.getFonts();
+            break;
+        default:
+            throw new IllegalArgumentException(format);
+        }
+        return object;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * MovieBenchmark.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.flagstone.transform.Movie;
+
+/**
+ * MovieBenchmark measures the time taken to decode, encode and copy entire
+ * movies. Each operation processes every movie in the corpus: either all the
+ * files in the swf-reference directory or a single large synthetic movie
+ * generated by Corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MovieBenchmark {
+
+    /** The directory containing the reference files. */
+    @Param(Corpus.RESOURCES)
+    public String resources;
+
+    /** Whether the reference files or a synthetic movie is used. */
+    @Param({"reference", "synthetic" })
+    public String corpus;
+
+    /** The encoded movies. */
+    private List<byte[]> files;
+    /** The decoded movies. */
+    private List<Movie> movies;
+    /** Buffer reused when encoding movies. */
+    private ByteArrayOutputStream out;
+
+    /**
+     * Load the movies in the corpus and decode them once so they are
+     * available to the encoding and copying benchmarks.
+     *
+     * @throws IOException if a file cannot be read or decoded.
+     * @throws DataFormatException if a movie cannot be decoded.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, DataFormatException {
+        if ("synthetic".equals(corpus)) {
+            files = new ArrayList<byte[]>(1);
+            files.add(Corpus.encode(Corpus.movie(Corpus.SHAPES,
+                    Corpus.SEGMENTS, Corpus.ACTIONS)));
+        } else {
+            files = Corpus.read(new File(resources, "swf-reference"), ".swf");
+        }
+
+        movies = new ArrayList<Movie>(files.size());
+        int size = 0;
+        for (final byte[] file : files) {
+            movies.add(decode(file));
+            size = Math.max(size, file.length);
+        }
+        out = new ByteArrayOutputStream(size);
+    }
+
+    /**
+     * Decode each movie in the corpus.
+     *
+     * @param hole used to consume the decoded movies.
+     * @throws IOException if a movie cannot be read.
+     * @throws DataFormatException if a movie cannot be decoded.
+     */
+    @Benchmark
+    public void decodeFromStream(final Blackhole hole)
+            throws IOException, DataFormatException {
+        for (final byte[] file : files) {
+            hole.consume(decode(file));
+        }
+    }
+
+    /**
+     * Encode each movie in the corpus.
+     *
+     * @param hole used to consume the encoded data.
+     * @throws IOException if a movie cannot be written.
+     * @throws DataFormatException if a movie cannot be encoded.
+     */
+    @Benchmark
+    public void encodeToStream(final Blackhole hole)
+            throws IOException, DataFormatException {
+        for (final Movie movie : movies) {
+            out.reset();
+            movie.encodeToStream(out);
+            hole.consume(out.size());
+        }
+    }
+
+    /**
+     * Decode then encode each movie in the corpus.
+     *
+     * @param hole used to consume the encoded data.
+     * @throws IOException if a movie cannot be read or written.
+     * @throws DataFormatException if a movie cannot be decoded or encoded.
+     */
+    @Benchmark
+    public void roundTrip(final Blackhole hole)
+            throws IOException, DataFormatException {
+        for (final byte[] file : files) {
+            out.reset();
+            decode(file).encodeToStream(out);
+            hole.consume(out.size());
+        }
+    }
+
+    /**
+     * Make a deep copy of each movie in the corpus.
+     *
+     * @param hole used to consume the copies.
+     */
+    @Benchmark
+    public void copy(final Blackhole hole) {
+        for (final Movie movie : movies) {
+            hole.consume(movie.copy());
+        }
+    }
+
+    /**
+     * Decode a movie.
+     *
+     * @param file the encoded movie.
+     * @return the decoded movie.
+     * @throws IOException if the movie cannot be read.
+     * @throws DataFormatException if the movie cannot be decoded.
+     */
+    private static Movie decode(final byte[] file)
+            throws IOException, DataFormatException {
+        final Movie movie = new Movie();
+        movie.decodeFromStream(new ByteArrayInputStream(file));
+        return movie;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * ShapeBenchmark.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.util.shape.Canvas;
+
+/**
+ * ShapeBenchmark measures the time taken to decode and encode the records
+ * in a Shape drawn as a random walk of lines and curves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ShapeBenchmark {
+
+    /** The number of lines and curves in the shape. */
+    @Param({"100", "10000" })
+    public int segments;
+
+    /** The encoded shape. */
+    private byte[] data;
+    /** The decoded shape. */
+    private Shape shape;
+    /** Buffer reused when encoding the shape. */
+    private ByteArrayOutputStream out;
+
+    /**
+     * Draw the shape and encode it.
+     *
+     * @throws IOException if the shape cannot be encoded.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        shape = Corpus.shape(new Canvas(), 1, segments,
+                new Random(Corpus.SEED)).getShape();
+        out = new ByteArrayOutputStream();
+        data = encode(shape);
+        shape = decode();
+    }
+
+    /**
+     * Decode the shape.
+     *
+     * @return the decoded shape.
+     * @throws IOException if the shape cannot be decoded.
+     */
+    @Benchmark
+    public Shape decode() throws IOException {
+        final SWFDecoder coder = new SWFDecoder(
+                new ByteArrayInputStream(data));
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+        context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE_2);
+        return new Shape(coder, context);
+    }
+
+    /**
+     * Decode the shape then create the list of ShapeRecords.
+     *
+     * @return the number of records in the shape.
+     * @throws IOException if the shape cannot be decoded.
+     */
+    @Benchmark
+    public int decodeRecords() throws IOException {
+        return decode().getObjects().size();
+    }
+
+    /**
+     * Encode the decoded shape.
+     *
+     * @return the encoded shape.
+     * @throws IOException if the shape cannot be encoded.
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return encode(shape);
+    }
+
+    /**
+     * Encode a shape.
+     *
+     * @param object the shape to encode.
+     * @return the encoded shape.
+     * @throws IOException if the shape cannot be encoded.
+     */
+    private byte[] encode(final Shape object) throws IOException {
+        out.reset();
+        final SWFEncoder coder = new SWFEncoder(out);
+        final Context context = new Context();
+        context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE_2);
+        context.put(Context.FILL_SIZE, 1);
+        context.put(Context.LINE_SIZE, 1);
+        object.prepareToEncode(context);
+        object.encode(coder, context);
+        coder.flush();
+        return out.toByteArray();
+    }
+}
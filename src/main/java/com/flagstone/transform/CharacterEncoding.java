@@ -32,6 +32,7 @@
 package com.flagstone.transform;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -73,6 +74,9 @@ public enum CharacterEncoding {
      */
     CP932("CP932");
 
+    /** The number of characters in the ASCII character set. */
+    private static final int ASCII_SIZE = 128;
+
     /** Table used to map CharSet canonical names to a CharacterEncoding. */
     private static final Map<String, CharacterEncoding> TABLE =
         new LinkedHashMap <String, CharacterEncoding>();
@@ -94,11 +98,59 @@ public enum CharacterEncoding {
      * CharSet.
      */
     public static CharacterEncoding fromCharSet(final Charset set) {
-    	return TABLE.get(set.name());
+        final CharacterEncoding enc = TABLE.get(set.name());
+        if (enc == null) {
+            for (final CharacterEncoding value : values()) {
+                if (Charset.isSupported(value.encoding)
+                        && set.equals(value.getCharset())) {
+                    return value;
+                }
+            }
+        }
+        return enc;
+    }
+
+    /**
+     * Get the CharacterEncoding identified by the name used by Java for the
+     * character set, without creating a Charset if the name is one of the
+     * canonical names returned by getEncoding().
+     *
+     * @param name the name of the character set.
+     *
+     * @return the CharacterEncoding with the same name.
+     */
+    static CharacterEncoding fromName(final String name) {
+        final CharacterEncoding enc = TABLE.get(name);
+        if (enc == null) {
+            return fromCharSet(Charset.forName(name));
+        }
+        return enc;
+    }
+
+    /**
+     * Is a character set ASCII compatible, i.e. characters 0-127 are encoded
+     * as single bytes with the same value.
+     *
+     * @param set the character set.
+     * @return true if ASCII characters are encoded as single bytes.
+     */
+    private static boolean isAscii(final Charset set) {
+        final byte[] bytes = new byte[ASCII_SIZE];
+        final char[] chars = new char[ASCII_SIZE];
+        for (int i = 0; i < ASCII_SIZE; i++) {
+            bytes[i] = (byte) i;
+            chars[i] = (char) i;
+        }
+        return Arrays.equals(bytes, new String(chars).getBytes(set))
+            && Arrays.equals(chars, new String(bytes, set).toCharArray());
     }
 
     /** Holds character set encoding name used in Java. */
     private String encoding;
+    /** The character set, created when it is first used. */
+    private transient Charset charset;
+    /** Whether ASCII characters are encoded as single bytes. */
+    private transient boolean ascii;
 
     /**
      * Private constructor used for enum values.
@@ -116,4 +168,32 @@ public enum CharacterEncoding {
     public String getEncoding() {
         return encoding;
     }
+
+    /**
+     * Get the Charset used to encode and decode strings. The Charset is
+     * created the first time it is used so no lookups by name are needed
+     * each time a string is encoded or decoded.
+     *
+     * @return the Charset for the character encoding.
+     */
+    public Charset getCharset() {
+        if (charset == null) {
+            final Charset set = Charset.forName(encoding);
+            ascii = isAscii(set);
+            charset = set;
+        }
+        return charset;
+    }
+
+    /**
+     * Are the characters 0-127 encoded as single bytes with the same value.
+     * Strings that contain only ASCII characters can then be encoded and
+     * decoded without using the Charset.
+     *
+     * @return true if ASCII characters are encoded as single bytes.
+     */
+    public boolean isAscii() {
+        getCharset();
+        return ascii;
+    }
 }
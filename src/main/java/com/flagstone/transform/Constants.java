@@ -37,8 +37,11 @@ package com.flagstone.transform;
 public final class Constants {
     /**
      * DEBUG is used to enable extra checking when encoding and decoding files.
+     * It is on by default and can be turned off by setting the system property
+     * com.flagstone.transform.debug to false.
      */
-    public static final boolean DEBUG = true;
+    public static final boolean DEBUG = Boolean.parseBoolean(
+            System.getProperty("com.flagstone.transform.debug", "true"));
     /**
      * The prime number used to generate the value in the hashCode() method
      * of immutable objects.
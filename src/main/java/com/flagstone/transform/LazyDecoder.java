@@ -0,0 +1,117 @@
+/*
+ * LazyDecoder.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFFactory;
+
+/**
+ * LazyDecoder is used to decode movies where the objects are only decoded
+ * when they are first accessed.
+ *
+ * <p>
+ * Each object is returned as a LazyTag containing the encoded data. Calling
+ * LazyTag.getTag() decodes the object using the decoder passed to the
+ * constructor. Objects that are never accessed are encoded, unchanged, when
+ * the movie is encoded. To use a LazyDecoder replace the movie decoder in the
+ * registry used to decode the movie:
+ * </p>
+ *
+ * <pre>
+ * DecoderRegistry registry = DecoderRegistry.getDefault();
+ * registry.setMovieDecoder(new LazyDecoder());
+ *
+ * Movie movie = new Movie();
+ * movie.setRegistry(registry);
+ * movie.decodeFromFile(file);
+ * </pre>
+ *
+ * <p>
+ * Objects with no body, such as ShowFrame and PathsArePostscript, are always
+ * decoded immediately since there is nothing to be saved and they are used
+ * to count frames or change how later objects are decoded. Since the registry
+ * is also used to decode the objects nested inside a DefineMovieClip, they
+ * will be LazyTags as well.
+ * </p>
+ *
+ * @see LazyTag
+ */
+public final class LazyDecoder implements SWFFactory<MovieTag> {
+
+    /** The decoder used when an object is accessed. */
+    private final transient SWFFactory<MovieTag> decoder;
+
+    /**
+     * Creates a LazyDecoder that uses a MovieDecoder to decode objects.
+     */
+    public LazyDecoder() {
+        this(new MovieDecoder());
+    }
+
+    /**
+     * Creates a LazyDecoder that uses the specified decoder when objects are
+     * accessed.
+     *
+     * @param factory the decoder used to decode each object when it is
+     * accessed.
+     */
+    public LazyDecoder(final SWFFactory<MovieTag> factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException();
+        }
+        decoder = factory;
+    }
+
+    /**
+     * Get the decoder used to decode each object when it is accessed.
+     *
+     * @return the decoder passed to the constructor.
+     */
+    public SWFFactory<MovieTag> getDecoder() {
+        return decoder;
+    }
+
+    /** {@inheritDoc} */
+    public void getObject(final List<MovieTag> list, final SWFDecoder coder,
+            final Context context) throws IOException {
+        if ((coder.scanUnsignedShort() & Coder.LENGTH_FIELD) == 0) {
+            decoder.getObject(list, coder, context);
+        } else {
+            list.add(new LazyTag(coder, decoder, context));
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * LazyTag.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderPool;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.coder.SWFFactory;
+
+/**
+ * LazyTag contains the encoded data for a MovieTag that is only decoded when
+ * it is first accessed.
+ *
+ * <p>
+ * LazyTags are created by a LazyDecoder. The type of the tag and the encoded
+ * data are kept until getTag() is called. If the tag is never accessed then
+ * the encoded data is written, unchanged, when the movie is encoded - so
+ * movies where only a handful of objects are changed can be decoded and
+ * encoded without parsing the objects that are not of interest.
+ * </p>
+ *
+ * @see LazyDecoder
+ */
+public final class LazyTag implements MovieTag {
+
+    /** Format string used in toString() method. */
+    private static final String FORMAT = "LazyTag: { type=%d;"
+            + " data=byte<%d> ...}";
+
+    /** The type identifying the MovieTag. */
+    private final transient int type;
+    /** Whether the length was encoded using the long form of the header. */
+    private final transient boolean extended;
+    /** The encoded tag: the header followed by the body. */
+    private final transient byte[] data;
+    /** The decoder used to decode the tag when it is first accessed. */
+    private final transient SWFFactory<MovieTag> decoder;
+    /** The registry containing the decoders used for nested objects. */
+    private final transient DecoderRegistry registry;
+    /** The character encoding used for strings. */
+    private final transient CharacterEncoding encoding;
+    /** The Flash version of the movie the tag was decoded from. */
+    private final transient int version;
+    /** Whether glyphs in the movie were derived from Postscript fonts. */
+    private final transient boolean postscript;
+
+    /** The decoded tag, or null if the tag was not yet accessed. */
+    private transient MovieTag tag;
+
+    /**
+     * Creates a LazyTag containing the encoded data for a MovieTag.
+     *
+     * @param coder
+     *            an SWFDecoder object that contains the encoded Flash data.
+     * @param factory
+     *            the decoder used to decode the tag when it is accessed.
+     * @param context
+     *            a Context object used to manage the decoders for different
+     *            type of object and to pass information on how objects are
+     *            decoded.
+     *
+     * @throws IOException
+     *             if an error occurs while decoding the data.
+     */
+    public LazyTag(final SWFDecoder coder, final SWFFactory<MovieTag> factory,
+            final Context context) throws IOException {
+        type = coder.scanUnsignedShort() >>> Coder.LENGTH_FIELD_SIZE;
+        int length = coder.readUnsignedShort() & Coder.LENGTH_FIELD;
+        extended = length == Coder.IS_EXTENDED;
+        if (extended) {
+            length = coder.readInt();
+            data = new byte[Coder.LONG_HEADER + length];
+            writeShort(data, 0, (type << Coder.LENGTH_FIELD_SIZE)
+                    | Coder.IS_EXTENDED);
+            writeShort(data, 2, length);
+            writeShort(data, 4, length >>> Coder.ALIGN_BYTE2);
+        } else {
+            data = new byte[Coder.SHORT_HEADER + length];
+            writeShort(data, 0, (type << Coder.LENGTH_FIELD_SIZE) | length);
+        }
+        coder.readBytes(data, data.length - length, length);
+        decoder = factory;
+        registry = context.getRegistry();
+        encoding = CharacterEncoding.fromName(context.getEncoding());
+        if (context.contains(Context.VERSION)) {
+            version = context.get(Context.VERSION);
+        } else {
+            version = Movie.VERSION;
+        }
+        postscript = context.contains(Context.POSTSCRIPT);
+    }
+
+    /**
+     * Creates and initialises a LazyTag object using the values copied
+     * from another LazyTag object.
+     *
+     * @param object
+     *            a LazyTag object from which the values will be copied.
+     */
+    public LazyTag(final LazyTag object) {
+        type = object.type;
+        extended = object.extended;
+        data = object.data;
+        decoder = object.decoder;
+        registry = object.registry;
+        encoding = object.encoding;
+        version = object.version;
+        postscript = object.postscript;
+        if (object.tag != null) {
+            tag = object.tag.copy();
+        }
+    }
+
+    /**
+     * Get the type that identifies the object when it is encoded.
+     * @return the type that identifies the encoded data structure.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Get the length, in bytes, of the encoded body of the tag, excluding the
+     * header.
+     *
+     * @return the length of the encoded data.
+     */
+    public int getLength() {
+        return data.length - (extended ? Coder.LONG_HEADER
+                : Coder.SHORT_HEADER);
+    }
+
+    /**
+     * Has the tag been decoded.
+     *
+     * @return true if getTag() has been called, false if the tag is still
+     * encoded.
+     */
+    public boolean isDecoded() {
+        return tag != null;
+    }
+
+    /**
+     * Get the decoded tag, decoding it the first time this method is called.
+     * Once the tag has been decoded it, rather than the original encoded
+     * data, is used when the movie is encoded.
+     *
+     * @return the decoded MovieTag.
+     *
+     * @throws IOException if an error occurs while decoding the tag or the
+     * factory used to decode it did not return an object, for example a
+     * SelectiveDecoder that skips tags of this type.
+     */
+    public MovieTag getTag() throws IOException {
+        if (tag == null) {
+            final SWFDecoder coder = CoderPool.getDecoder(
+                    ByteBuffer.wrap(data));
+            coder.setEncoding(encoding);
+
+            final Context context = new Context();
+            context.setRegistry(registry);
+            context.setEncoding(encoding.getEncoding());
+            context.put(Context.VERSION, version);
+            if (postscript) {
+                context.put(Context.POSTSCRIPT, 1);
+            }
+
+            final List<MovieTag> list = new ArrayList<MovieTag>(1);
+            try {
+                decoder.getObject(list, coder, context);
+            } finally {
+                CoderPool.release(coder);
+            }
+            if (list.isEmpty()) {
+                throw new IOException("No object decoded for tag type "
+                        + type);
+            }
+            tag = list.get(0);
+        }
+        return tag;
+    }
+
+    /**
+     * Write a 16-bit value to an array of bytes.
+     *
+     * @param bytes the array where the value will be written.
+     * @param offset the offset in the array.
+     * @param value the value to write.
+     */
+    private static void writeShort(final byte[] bytes, final int offset,
+            final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> Coder.ALIGN_BYTE1);
+    }
+
+    /** {@inheritDoc} */
+    public LazyTag copy() {
+        return new LazyTag(this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        String str;
+        if (tag == null) {
+            str = String.format(FORMAT, type, getLength());
+        } else {
+            str = tag.toString();
+        }
+        return str;
+    }
+
+    /** {@inheritDoc} */
+    public int prepareToEncode(final Context context) {
+        int length;
+        if (tag == null) {
+            length = data.length;
+        } else {
+            length = tag.prepareToEncode(context);
+        }
+        return length;
+    }
+
+    /** {@inheritDoc} */
+    public void encode(final SWFEncoder coder, final Context context)
+            throws IOException {
+        if (tag == null) {
+            coder.writeBytes(data);
+        } else {
+            tag.encode(coder, context);
+        }
+    }
+}
@@ -31,8 +31,8 @@
 
 package com.flagstone.transform;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -41,19 +41,23 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderPool;
 import com.flagstone.transform.coder.Context;
 import com.flagstone.transform.coder.Copyable;
 import com.flagstone.transform.coder.DecoderRegistry;
-import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.ParallelDeflaterOutputStream;
 import com.flagstone.transform.coder.SWFEncoder;
-import com.flagstone.transform.coder.SWFFactory;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.shape.PathsArePostscript;
 
 /**
  * Movie is a container class for the objects that represents the data
@@ -79,16 +83,22 @@ import com.flagstone.transform.coder.SWFFactory;
  * decoded. This allows new objects to be added and ensures that the identifier
  * does not conflict with an existing object.
  * </p>
+ *
+ * <p>
+ * If an ExecutorService is set using setExecutor() then movies are decoded
+ * and encoded in parallel, with runs of objects coded as separate tasks. The
+ * executor is not shut down by the Movie. When encoding in parallel the same
+ * object should only be added to a movie once, unless, like ShowFrame, it
+ * has no attributes. Compressed movies are also compressed in parallel,
+ * with blocks of the movie compressed as separate tasks to generate a
+ * single ZLIB stream.
+ * </p>
  */
 public final class Movie implements Copyable<Movie> {
 
     /** The version of Flash supported. */
     public static final int VERSION = 10;
 
-    /** Length in bytes of the magic number used to identify the file type. */
-    private static final int SIGNATURE_LENGTH = 3;
-    /** Length in bytes of the signature and length fields. */
-    private static final int HEADER_LENGTH = 8;
     /** Signature identifying Flash (SWF) files. */
     public static final byte[] FWS = new byte[] {0x46, 0x57, 0x53 };
     /** Signature identifying Compressed Flash (SWF) files. */
@@ -96,10 +106,20 @@ public final class Movie implements Copyable<Movie> {
 
     /** Format string used in toString() method. */
     private static final String FORMAT = "Movie: { objects=%s}";
+    /** Number of tasks created for each processor when encoding. */
+    private static final int TASKS_PER_PROCESSOR = 4;
+    /** Size of the buffer used when compressing a movie. */
+    private static final int DEFLATE_BUFFER_SIZE = 65536;
     /** The registry for the different types of decoder. */
     private transient DecoderRegistry registry;
     /** The character encoding used for strings. */
     private transient CharacterEncoding encoding;
+    /** The executor used to decode objects in parallel. */
+    private transient ExecutorService executor;
+    /** The compression level used for compressed movies. */
+    private transient int level;
+    /** The compression strategy used for compressed movies. */
+    private transient int strategy;
     /** The list of objects that make up the movie. */
     private List<MovieTag> objects;
 
@@ -109,6 +129,8 @@ public final class Movie implements Copyable<Movie> {
     public Movie() {
         registry = DecoderRegistry.getDefault();
         encoding = CharacterEncoding.UTF8;
+        level = Deflater.DEFAULT_COMPRESSION;
+        strategy = Deflater.DEFAULT_STRATEGY;
         objects = new ArrayList<MovieTag>();
     }
 
@@ -122,6 +144,9 @@ public final class Movie implements Copyable<Movie> {
             registry = movie.registry.copy();
         }
         encoding = movie.encoding;
+        executor = movie.executor;
+        level = movie.level;
+        strategy = movie.strategy;
 
         objects = new ArrayList<MovieTag>(movie.objects.size());
 
@@ -151,6 +176,68 @@ public final class Movie implements Copyable<Movie> {
         encoding = enc;
     }
 
+    /**
+     * Sets the ExecutorService used to decode and encode the objects in a
+     * movie in parallel.
+     *
+     * @param service the ExecutorService used to run the tasks that decode
+     * and encode the objects. May be null in which case movies are decoded
+     * and encoded using the current thread.
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /**
+     * Get the compression level used when encoding compressed movies.
+     *
+     * @return the compression level in the range -1..9.
+     */
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level used when encoding compressed movies. Higher
+     * levels generate smaller files but take longer to compress.
+     *
+     * @param compression the compression level, in the range 0..9 or
+     * Deflater.DEFAULT_COMPRESSION (-1).
+     */
+    public void setCompressionLevel(final int compression) {
+        if ((compression < Deflater.DEFAULT_COMPRESSION)
+                || (compression > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentRangeException(
+                    Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION,
+                    compression);
+        }
+        level = compression;
+    }
+
+    /**
+     * Get the compression strategy used when encoding compressed movies.
+     *
+     * @return the compression strategy, see Deflater.
+     */
+    public int getCompressionStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Sets the compression strategy used when encoding compressed movies.
+     *
+     * @param method either Deflater.DEFAULT_STRATEGY, Deflater.FILTERED or
+     * Deflater.HUFFMAN_ONLY.
+     */
+    public void setCompressionStrategy(final int method) {
+        if ((method < Deflater.DEFAULT_STRATEGY)
+                || (method > Deflater.HUFFMAN_ONLY)) {
+            throw new IllegalArgumentRangeException(
+                    Deflater.DEFAULT_STRATEGY, Deflater.HUFFMAN_ONLY, method);
+        }
+        strategy = method;
+    }
+
     /**
      * Get the list of objects contained in the Movie.
      *
@@ -212,7 +299,7 @@ public final class Movie implements Copyable<Movie> {
      */
     public void decodeFromFile(final File file) throws DataFormatException,
             IOException {
-        decodeFromStream(new FileInputStream(file));
+        decode(new MovieReader(file, registry, encoding));
     }
 
     /**
@@ -254,71 +341,35 @@ public final class Movie implements Copyable<Movie> {
     public void decodeFromStream(final InputStream stream)
             throws DataFormatException, IOException {
 
-        InputStream streamIn = null;
+        decode(new MovieReader(stream, registry, encoding));
+    }
 
+    /**
+     * Decodes all the objects from a MovieReader, closing the reader when
+     * finished.
+     *
+     * @param reader
+     *            the MovieReader used to decode the objects in the movie.
+     *
+     * @throws IOException
+     *             if an I/O error occurs while reading the file.
+     */
+    private void decode(final MovieReader reader) throws IOException {
         try {
-            final Context context = new Context();
-            context.setRegistry(registry);
-            context.setEncoding(encoding.getEncoding());
-
-            final byte[] signature = new byte[SIGNATURE_LENGTH];
-            if (stream.read(signature) != signature.length) {
-                throw new DataFormatException("Could not read file signature");
-            }
-
-            if (Arrays.equals(CWS, signature)) {
-                streamIn = new InflaterInputStream(stream);
-                context.put(Context.COMPRESSED, 1);
-            } else if (Arrays.equals(FWS, signature)) {
-                streamIn = stream;
-                context.put(Context.COMPRESSED, 0);
-            } else {
-                throw new DataFormatException();
-            }
-
-            context.put(Context.VERSION, stream.read());
-
-            int length = stream.read();
-            length |= stream.read() << Coder.ALIGN_BYTE1;
-            length |= stream.read() << Coder.ALIGN_BYTE2;
-            length |= stream.read() << Coder.ALIGN_BYTE3;
-
-            /*
-             * If the file is shorter than the default buffer size then set the
-             * buffer size to be the file size - this gets around a bug in Java
-             * where the end of ZLIB streams are not detected correctly.
-             */
-            SWFDecoder decoder;
-
-            if (length < SWFDecoder.BUFFER_SIZE) {
-                decoder = new SWFDecoder(streamIn, length - HEADER_LENGTH);
-            } else {
-                decoder = new SWFDecoder(streamIn);
-            }
-
-            decoder.setEncoding(encoding);
-
             objects.clear();
+            objects.add(reader.getHeader());
 
-            final SWFFactory<MovieTag> factory = registry.getMovieDecoder();
+            if (executor == null) {
+                MovieTag tag;
 
-            final MovieHeader header = new MovieHeader(decoder, context);
-            objects.add(header);
-
-            while (decoder.scanUnsignedShort() >>> Coder.LENGTH_FIELD_SIZE
-                    != MovieTypes.END) {
-                factory.getObject(objects, decoder, context);
+                while ((tag = reader.read()) != null) {
+                    objects.add(tag);
+                }
+            } else {
+                objects.addAll(reader.readAll(executor));
             }
-
-            decoder.readUnsignedShort();
-
-            header.setVersion(context.get(Context.VERSION));
-            header.setCompressed(context.get(Context.COMPRESSED) == 1);
-
         } finally {
-            if (streamIn != null) {
-                streamIn.close();
-            }
+            reader.close();
         }
     }
 
@@ -353,6 +404,22 @@ public final class Movie implements Copyable<Movie> {
      */
     public void encodeToStream(final OutputStream stream)
             throws DataFormatException, IOException {
+        if (executor == null) {
+            encode(stream);
+        } else {
+            encodeInParallel(stream);
+        }
+    }
+
+    /**
+     * Encode the objects in the movie using the current thread.
+     *
+     * @param stream
+     *            the output stream that the video will be encoded to.
+     * @throws IOException
+     *             - if an I/O error occurs while encoding the file.
+     */
+    private void encode(final OutputStream stream) throws IOException {
 
         OutputStream streamOut = null;
 
@@ -377,37 +444,202 @@ public final class Movie implements Copyable<Movie> {
             }
 
             header.setFrameCount(frameCount);
+            streamOut = writeSignature(stream, header, length);
 
-            if (header.isCompressed()) {
-                stream.write(CWS);
-            } else {
-                stream.write(FWS);
+            final SWFEncoder coder = CoderPool.getEncoder(streamOut);
+            coder.setEncoding(encoding);
+
+            try {
+                for (final MovieTag tag : objects) {
+                    tag.encode(coder, context);
+                }
+                coder.writeShort(0);
+                coder.flush();
+            } finally {
+                CoderPool.release(coder);
             }
+        } finally {
+            if (streamOut != null) {
+                streamOut.close();
+            }
+        }
+    }
 
-            stream.write(header.getVersion());
-            stream.write(length);
-            stream.write(length >>> Coder.ALIGN_BYTE1);
-            stream.write(length >>> Coder.ALIGN_BYTE2);
-            stream.write(length >>> Coder.ALIGN_BYTE3);
+    /**
+     * Encode the objects in the movie, using the executor to encode runs of
+     * objects into separate buffers which are then written out in order.
+     *
+     * @param stream
+     *            the output stream that the video will be encoded to.
+     * @throws IOException
+     *             - if an I/O error occurs while encoding the file.
+     */
+    private void encodeInParallel(final OutputStream stream)
+            throws IOException {
 
-            if (header.isCompressed()) {
-                streamOut = new DeflaterOutputStream(stream);
-            } else {
-                streamOut = stream;
-            }
+        OutputStream streamOut = null;
 
-            final SWFEncoder coder = new SWFEncoder(streamOut);
-            coder.setEncoding(encoding);
+        try {
+            final MovieHeader header = (MovieHeader) objects.get(0);
+            int frameCount = 0;
 
             for (final MovieTag tag : objects) {
-                tag.encode(coder, context);
+                if (tag instanceof ShowFrame) {
+                    frameCount++;
+                }
             }
-            coder.writeShort(0);
-            coder.flush();
+            header.setFrameCount(frameCount);
+
+            final int count = objects.size();
+            final int runLength = Math.max(1, count / (TASKS_PER_PROCESSOR
+                    * Runtime.getRuntime().availableProcessors()));
+            final List<Future<ByteArrayOutputStream>> tasks =
+                new ArrayList<Future<ByteArrayOutputStream>>();
+
+            boolean postscript = false;
+
+            for (int start = 0; start < count; start += runLength) {
+                final List<MovieTag> run = objects.subList(start,
+                        Math.min(start + runLength, count));
+                tasks.add(executor.submit(new EncodeTask(run,
+                        header.getVersion(), postscript)));
+                for (final MovieTag tag : run) {
+                    postscript |= tag instanceof PathsArePostscript;
+                }
+            }
+
+            final List<ByteArrayOutputStream> buffers =
+                new ArrayList<ByteArrayOutputStream>(tasks.size());
+
+            // length of signature, version, length and end
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+            int length = 10;
+
+            for (final Future<ByteArrayOutputStream> task : tasks) {
+                final ByteArrayOutputStream buffer =
+                    MovieReader.waitFor(task);
+                length += buffer.size();
+                buffers.add(buffer);
+            }
+
+            streamOut = writeSignature(stream, header, length);
+
+            for (final ByteArrayOutputStream buffer : buffers) {
+                buffer.writeTo(streamOut);
+            }
+            streamOut.write(0);
+            streamOut.write(0);
+            streamOut.flush();
         } finally {
             if (streamOut != null) {
                 streamOut.close();
             }
         }
     }
+
+    /**
+     * Write the signature, version and length at the start of a movie.
+     *
+     * @param stream
+     *            the output stream that the video will be encoded to.
+     * @param header
+     *            the header for the movie.
+     * @param length
+     *            the length of the movie in bytes when uncompressed.
+     * @return the stream the remainder of the movie should be written to.
+     * @throws IOException
+     *             - if an I/O error occurs while writing the signature.
+     */
+    private OutputStream writeSignature(final OutputStream stream,
+            final MovieHeader header, final int length) throws IOException {
+
+        if (header.isCompressed()) {
+            stream.write(CWS);
+        } else {
+            stream.write(FWS);
+        }
+
+        stream.write(header.getVersion());
+        stream.write(length);
+        stream.write(length >>> Coder.ALIGN_BYTE1);
+        stream.write(length >>> Coder.ALIGN_BYTE2);
+        stream.write(length >>> Coder.ALIGN_BYTE3);
+
+        OutputStream streamOut;
+
+        if (!header.isCompressed()) {
+            streamOut = stream;
+        } else if (executor == null) {
+            final Deflater deflater = new Deflater(level);
+            deflater.setStrategy(strategy);
+            streamOut = new DeflaterOutputStream(stream, deflater,
+                    DEFLATE_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        } else {
+            streamOut = new ParallelDeflaterOutputStream(stream, executor,
+                    level, strategy);
+        }
+        return streamOut;
+    }
+
+    /**
+     * EncodeTask encodes a run of consecutive objects into a buffer.
+     */
+    private final class EncodeTask
+            implements Callable<ByteArrayOutputStream> {
+        /** The objects to encode. */
+        private final transient List<MovieTag> run;
+        /** The Flash version of the movie. */
+        private final transient int version;
+        /** Whether PathsArePostscript appears before the run. */
+        private final transient boolean postscript;
+
+        /**
+         * Create a task to encode a list of objects.
+         *
+         * @param list the objects to encode. The list is copied.
+         * @param flashVersion the version of Flash the movie is encoded for.
+         * @param paths true if PathsArePostscript appears in the movie
+         * before the objects in the list.
+         */
+        public EncodeTask(final List<MovieTag> list, final int flashVersion,
+                final boolean paths) {
+            run = new ArrayList<MovieTag>(list);
+            version = flashVersion;
+            postscript = paths;
+        }
+
+        /** {@inheritDoc} */
+        public ByteArrayOutputStream call() throws IOException {
+            final Context context = new Context();
+            context.setEncoding(encoding.getEncoding());
+            context.put(Context.VERSION, version);
+            if (postscript) {
+                context.put(Context.POSTSCRIPT, 1);
+            }
+
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final SWFEncoder coder = CoderPool.getEncoder(buffer);
+            coder.setEncoding(encoding);
+
+            try {
+                for (final MovieTag tag : run) {
+                    tag.prepareToEncode(context);
+                    tag.encode(coder, context);
+                }
+                coder.flush();
+            } finally {
+                CoderPool.release(coder);
+            }
+            return buffer;
+        }
+    }
 }
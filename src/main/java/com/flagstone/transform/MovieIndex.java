@@ -0,0 +1,864 @@
+/*
+ * MovieIndex.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.InflaterInputStream;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderPool;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+
+/**
+ * MovieIndex records where each object is located in a Flash file so
+ * individual objects can be decoded without decoding the rest of the movie.
+ *
+ * <p>
+ * The index contains the type, offset, length and frame number of each
+ * object, along with the identifier of objects that define shapes, images,
+ * sounds, fonts, text, buttons, movie clips, videos and binary data. Offsets
+ * are measured from the start of the uncompressed movie, including the
+ * signature. Uncompressed files are read directly from the offset. For
+ * compressed files the movie is inflated up to the start of the objects, so
+ * fetching objects is only fast when the movie is not compressed.
+ * </p>
+ *
+ * <p>
+ * The index can be saved in a sidecar file, with the same name as the movie
+ * and the extension ".idx" appended, so the movie only needs to be scanned
+ * once. The length and last modified time of the movie are stored in the
+ * sidecar and the index is rebuilt if either changes.
+ * </p>
+ *
+ * <pre>
+ * MovieIndex index = MovieIndex.open(file);
+ * MovieTag tag = index.getDefinition(4711);
+ * </pre>
+ *
+ * <p>
+ * Only the objects at the top level of the movie are indexed, the objects
+ * inside a DefineMovieClip are decoded along with it.
+ * </p>
+ */
+public final class MovieIndex {
+
+    /** The extension added to the name of the movie for the sidecar. */
+    public static final String EXTENSION = ".idx";
+
+    /** Magic number identifying a sidecar file, "SWFI". */
+    private static final int MAGIC = 0x53574649;
+    /** The version of the sidecar format. */
+    private static final int FORMAT = 1;
+    /** Length in bytes of the fields before the entries in a sidecar. */
+    private static final int SIDECAR_HEADER = 32;
+    /** Length in bytes of each entry in a sidecar. */
+    private static final int ENTRY_LENGTH = 18;
+    /** Length in bytes of the signature and length fields. */
+    private static final int HEADER_LENGTH = 8;
+    /** Number of bits used to encode the size of each field in Bounds. */
+    private static final int FIELD_SIZE = 5;
+    /** Number of fields in Bounds. */
+    private static final int FIELDS = 4;
+    /** Length in bytes of the frame rate and frame count. */
+    private static final int RATE_AND_COUNT = 4;
+    /** Length in bytes of the magic number used to identify the file type. */
+    private static final int SIGNATURE_LENGTH = 3;
+    /** Number of bits in a byte. */
+    private static final int BITS_PER_BYTE = 8;
+    /** Length in bytes of the identifier of a definition. */
+    private static final int ID_LENGTH = 2;
+    /** Initial capacity of the arrays holding the index. */
+    private static final int CAPACITY = 64;
+    /** Value used when an object does not have an identifier. */
+    private static final int NO_ID = -1;
+    /** Size of the buffer used when scanning a movie. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Get the sidecar file used to store the index for a movie.
+     *
+     * @param file the Flash file.
+     * @return the file where the index is stored.
+     */
+    public static File sidecarFor(final File file) {
+        return new File(file.getPath() + EXTENSION);
+    }
+
+    /**
+     * Get the index for a movie, reading it from the sidecar file if it is
+     * up to date, otherwise scanning the movie and saving the index in the
+     * sidecar. If the sidecar cannot be written, for example when the movie
+     * is on read-only storage, the index is still returned.
+     *
+     * @param file the Flash file.
+     * @return the index for the movie.
+     *
+     * @throws DataFormatException if the file does not contain Flash data.
+     * @throws IOException if an error occurs reading the movie or reading
+     * the sidecar.
+     */
+    public static MovieIndex open(final File file)
+            throws DataFormatException, IOException {
+        MovieIndex index = load(file);
+
+        if (index == null) {
+            index = build(file);
+            try {
+                index.save();
+            } catch (final IOException e) {
+                // The index is used without saving it.
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Read the index for a movie from its sidecar file.
+     *
+     * @param file the Flash file.
+     * @return the index or null if there is no sidecar file, the movie has
+     * changed since the index was saved or the sidecar is not valid.
+     *
+     * @throws IOException if an error occurs reading the sidecar.
+     */
+    public static MovieIndex load(final File file) throws IOException {
+        final File sidecar = sidecarFor(file);
+
+        if (!sidecar.isFile()) {
+            return null;
+        }
+
+        final DataInputStream stream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)));
+
+        try {
+            if (stream.readInt() != MAGIC
+                    || stream.readUnsignedShort() != FORMAT
+                    || stream.readLong() != file.length()
+                    || stream.readLong() != file.lastModified()) {
+                return null;
+            }
+
+            final MovieIndex index = new MovieIndex(file);
+            index.compressed = stream.readBoolean();
+            index.version = stream.readUnsignedByte();
+            index.frameCount = stream.readInt();
+            final int count = stream.readInt();
+
+            if (count < 0 || count > (sidecar.length() - SIDECAR_HEADER)
+                    / ENTRY_LENGTH) {
+                return null;
+            }
+            index.allocate(count);
+
+            final long limit = index.compressed ? movieLength(file)
+                    : file.length();
+
+            for (int i = 0; i < count; i++) {
+                index.types[i] = stream.readUnsignedShort();
+                index.identifiers[i] = stream.readInt();
+                index.offsets[i] = stream.readInt();
+                index.lengths[i] = stream.readInt();
+                index.frames[i] = stream.readInt();
+
+                if (index.offsets[i] < HEADER_LENGTH
+                        || index.lengths[i] < Coder.SHORT_HEADER
+                        || (long) index.offsets[i] + index.lengths[i]
+                            > limit) {
+                    return null;
+                }
+            }
+            index.size = count;
+            index.index();
+            return index;
+        } catch (final EOFException e) {
+            return null;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read the length of the uncompressed movie from the signature.
+     *
+     * @param file the Flash file.
+     * @return the length recorded in the signature.
+     *
+     * @throws IOException if an error occurs reading the file.
+     */
+    private static long movieLength(final File file) throws IOException {
+        final RandomAccessFile stream = new RandomAccessFile(file, "r");
+
+        try {
+            stream.seek(SIGNATURE_LENGTH + 1);
+            return stream.readUnsignedByte()
+                    | stream.readUnsignedByte() << Coder.ALIGN_BYTE1
+                    | stream.readUnsignedByte() << Coder.ALIGN_BYTE2
+                    | (long) stream.readUnsignedByte() << Coder.ALIGN_BYTE3;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Scan a movie and create an index of the objects it contains.
+     *
+     * @param file the Flash file.
+     * @return the index for the movie.
+     *
+     * @throws DataFormatException if the file does not contain Flash data.
+     * @throws IOException if an error occurs reading the movie.
+     */
+    public static MovieIndex build(final File file)
+            throws DataFormatException, IOException {
+        final MovieIndex index = new MovieIndex(file);
+        final InputStream stream = new FileInputStream(file);
+
+        try {
+            index.readSignature(stream);
+            index.scan(index.open(stream, HEADER_LENGTH));
+        } finally {
+            stream.close();
+        }
+        index.index();
+        return index;
+    }
+
+    /** The Flash file. */
+    private final transient File file;
+    /** The registry used to decode objects. */
+    private transient DecoderRegistry registry;
+    /** The character encoding used for strings. */
+    private transient CharacterEncoding encoding;
+
+    /** Whether the movie is compressed. */
+    private transient boolean compressed;
+    /** The Flash version of the movie. */
+    private transient int version;
+    /** The number of frames in the movie. */
+    private transient int frameCount;
+    /** The number of objects in the index. */
+    private transient int size;
+    /** The type of each object. */
+    private transient int[] types;
+    /** The identifier of each definition or -1 for other objects. */
+    private transient int[] identifiers;
+    /** The offset of each object from the start of the movie. */
+    private transient int[] offsets;
+    /** The length of each object including the header. */
+    private transient int[] lengths;
+    /** The frame number of each object, starting at zero. */
+    private transient int[] frames;
+    /** Table of definitions, mapping identifiers to positions in the index. */
+    private transient Map<Integer, Integer> definitions;
+    /** Position of the first PathsArePostscript object, if any. */
+    private transient int postscript;
+
+    /**
+     * Create an empty index for a movie.
+     *
+     * @param movieFile the Flash file.
+     */
+    private MovieIndex(final File movieFile) {
+        if (movieFile == null) {
+            throw new IllegalArgumentException();
+        }
+        file = movieFile;
+        registry = DecoderRegistry.getDefault();
+        encoding = CharacterEncoding.UTF8;
+    }
+
+    /**
+     * Set the registry containing the decoders used for each type of object.
+     *
+     * @param decoderRegistry the registry used to decode objects.
+     */
+    public void setRegistry(final DecoderRegistry decoderRegistry) {
+        if (decoderRegistry == null) {
+            throw new IllegalArgumentException();
+        }
+        registry = decoderRegistry;
+    }
+
+    /**
+     * Set the character encoding used for strings.
+     *
+     * @param enc the character encoding.
+     */
+    public void setEncoding(final CharacterEncoding enc) {
+        if (enc == null) {
+            throw new IllegalArgumentException();
+        }
+        encoding = enc;
+    }
+
+    /**
+     * Get the Flash file that was indexed.
+     * @return the Flash file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Is the movie compressed.
+     * @return true if the movie is compressed, false otherwise.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Get the Flash version of the movie.
+     * @return the version number from the signature.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of frames in the movie, counting the ShowFrame objects.
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Get the number of objects in the index.
+     * @return the number of objects, not including the MovieHeader.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the type of an object.
+     * @param index the position of the object in the index.
+     * @return the type of the object, from MovieTypes.
+     */
+    public int getType(final int index) {
+        return types[check(index)];
+    }
+
+    /**
+     * Get the identifier of an object.
+     * @param index the position of the object in the index.
+     * @return the identifier if the object is a definition or -1 otherwise.
+     */
+    public int getIdentifier(final int index) {
+        return identifiers[check(index)];
+    }
+
+    /**
+     * Get the location of an object.
+     * @param index the position of the object in the index.
+     * @return the offset, in bytes, from the start of the uncompressed movie.
+     */
+    public int getOffset(final int index) {
+        return offsets[check(index)];
+    }
+
+    /**
+     * Get the length of an object.
+     * @param index the position of the object in the index.
+     * @return the length of the encoded object, in bytes, including the
+     * header.
+     */
+    public int getLength(final int index) {
+        return lengths[check(index)];
+    }
+
+    /**
+     * Get the frame that contains an object.
+     * @param index the position of the object in the index.
+     * @return the frame number, starting at zero. The ShowFrame that ends a
+     * frame is included in the frame.
+     */
+    public int getFrameNumber(final int index) {
+        return frames[check(index)];
+    }
+
+    /**
+     * Find the object that defines a shape, image, sound, font, etc.
+     * @param identifier the unique identifier of the object.
+     * @return the position of the object in the index or -1 if there is
+     * no definition with the identifier.
+     */
+    public int find(final int identifier) {
+        final Integer index = definitions.get(identifier);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Save the index in the sidecar file next to the movie. The index is
+     * written to a temporary file which then replaces the sidecar so the
+     * sidecar is never read while it is only partly written.
+     *
+     * @throws IOException if an error occurs writing the sidecar.
+     */
+    public void save() throws IOException {
+        final File sidecar = sidecarFor(file).getAbsoluteFile();
+        final File temp = File.createTempFile(sidecar.getName(), null,
+                sidecar.getParentFile());
+        boolean saved = false;
+
+        try {
+            write(temp);
+            try {
+                Files.move(temp.toPath(), sidecar.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), sidecar.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            saved = true;
+        } finally {
+            if (!saved) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Write the index to a file.
+     *
+     * @param target the file where the index is written.
+     *
+     * @throws IOException if an error occurs writing the file.
+     */
+    private void write(final File target) throws IOException {
+        final DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(target)));
+
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeShort(FORMAT);
+            stream.writeLong(file.length());
+            stream.writeLong(file.lastModified());
+            stream.writeBoolean(compressed);
+            stream.writeByte(version);
+            stream.writeInt(frameCount);
+            stream.writeInt(size);
+
+            for (int i = 0; i < size; i++) {
+                stream.writeShort(types[i]);
+                stream.writeInt(identifiers[i]);
+                stream.writeInt(offsets[i]);
+                stream.writeInt(lengths[i]);
+                stream.writeInt(frames[i]);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Decode an object.
+     *
+     * @param index the position of the object in the index.
+     * @return the decoded object.
+     *
+     * @throws IOException if an error occurs reading or decoding the object.
+     */
+    public MovieTag getTag(final int index) throws IOException {
+        final List<MovieTag> list = getTags(index, check(index) + 1);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Decode the object that defines a shape, image, sound, font, etc.
+     *
+     * @param identifier the unique identifier of the object.
+     * @return the decoded object or null if there is no definition with the
+     * identifier.
+     *
+     * @throws IOException if an error occurs reading or decoding the object.
+     */
+    public MovieTag getDefinition(final int identifier) throws IOException {
+        final int index = find(identifier);
+        return index == -1 ? null : getTag(index);
+    }
+
+    /**
+     * Decode the objects in a frame.
+     *
+     * @param frame the frame number, starting at zero.
+     * @return the objects in the frame, including the ShowFrame that ends
+     * it. The list is empty if the frame number is not in the movie.
+     *
+     * @throws IOException if an error occurs reading or decoding the objects.
+     */
+    public List<MovieTag> getFrame(final int frame) throws IOException {
+        int start = Arrays.binarySearch(frames, 0, size, frame);
+
+        if (start < 0) {
+            return new ArrayList<MovieTag>();
+        }
+        while (start > 0 && frames[start - 1] == frame) {
+            start--;
+        }
+        int end = start;
+        while (end < size && frames[end] == frame) {
+            end++;
+        }
+        return getTags(start, end);
+    }
+
+    /**
+     * Decode a run of consecutive objects. The encoded objects are read in
+     * one operation.
+     *
+     * @param start the position in the index of the first object.
+     * @param end the position in the index after the last object.
+     * @return the decoded objects.
+     *
+     * @throws IOException if an error occurs reading or decoding the objects.
+     */
+    public List<MovieTag> getTags(final int start, final int end)
+            throws IOException {
+        if (start < 0 || end > size || start > end) {
+            throw new IllegalArgumentException();
+        }
+
+        final List<MovieTag> list = new ArrayList<MovieTag>(end - start);
+
+        if (start == end) {
+            return list;
+        }
+
+        final byte[] bytes = new byte[offsets[end - 1] + lengths[end - 1]
+                - offsets[start]];
+
+        if (compressed) {
+            final InputStream stream = new FileInputStream(file);
+            try {
+                skip(stream, HEADER_LENGTH);
+                new DataInputStream(open(stream, offsets[start]))
+                        .readFully(bytes);
+            } finally {
+                stream.close();
+            }
+        } else {
+            final RandomAccessFile stream = new RandomAccessFile(file, "r");
+            try {
+                stream.seek(offsets[start]);
+                stream.readFully(bytes);
+            } finally {
+                stream.close();
+            }
+        }
+
+        final Context context = new Context();
+        context.setRegistry(registry);
+        context.setEncoding(encoding.getEncoding());
+        context.put(Context.VERSION, version);
+        if (postscript < start) {
+            context.put(Context.POSTSCRIPT, 1);
+        }
+
+        final SWFDecoder coder = CoderPool.getDecoder(ByteBuffer.wrap(bytes));
+        coder.setEncoding(encoding);
+        try {
+            for (int i = start; i < end; i++) {
+                registry.getMovieDecoder().getObject(list, coder, context);
+            }
+        } finally {
+            CoderPool.release(coder);
+        }
+        return list;
+    }
+
+    /**
+     * Check a position is in the index.
+     * @param index the position of an object.
+     * @return the position.
+     */
+    private int check(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException();
+        }
+        return index;
+    }
+
+    /**
+     * Read the signature and length fields from the start of the movie.
+     *
+     * @param stream the stream containing the movie.
+     *
+     * @throws DataFormatException if the stream does not contain Flash data.
+     * @throws IOException if an error occurs while reading the stream.
+     */
+    private void readSignature(final InputStream stream)
+            throws DataFormatException, IOException {
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        final DataInputStream data = new DataInputStream(stream);
+        data.readFully(signature);
+
+        if (Arrays.equals(Movie.CWS, signature)) {
+            compressed = true;
+        } else if (Arrays.equals(Movie.FWS, signature)) {
+            compressed = false;
+        } else {
+            throw new DataFormatException();
+        }
+        version = data.readUnsignedByte();
+        skip(stream, HEADER_LENGTH - SIGNATURE_LENGTH - 1);
+    }
+
+    /**
+     * Create the stream used to read the body of the movie, inflating it if
+     * the movie is compressed.
+     *
+     * @param stream the stream positioned after the signature and length.
+     * @param offset the offset from the start of the uncompressed movie to
+     * skip to.
+     * @return a stream positioned at the offset.
+     *
+     * @throws IOException if an error occurs while reading the stream.
+     */
+    private InputStream open(final InputStream stream, final int offset)
+            throws IOException {
+        final InputStream body = new BufferedInputStream(compressed
+                ? new InflaterInputStream(stream) : stream, BUFFER_SIZE);
+        skip(body, offset - HEADER_LENGTH);
+        return body;
+    }
+
+    /**
+     * Scan the objects in a movie.
+     *
+     * @param stream the stream positioned after the signature and length.
+     *
+     * @throws IOException if an error occurs reading the movie.
+     */
+    private void scan(final InputStream stream) throws IOException {
+        final DataInputStream data = new DataInputStream(stream);
+
+        final int bits = data.readUnsignedByte() >>> (BITS_PER_BYTE
+                - FIELD_SIZE);
+        final int bounds = (FIELD_SIZE + FIELDS * bits + BITS_PER_BYTE
+                - 1) / BITS_PER_BYTE;
+        skip(stream, bounds - 1 + RATE_AND_COUNT);
+
+        int offset = HEADER_LENGTH + bounds + RATE_AND_COUNT;
+        int frame = 0;
+        int header;
+        int type;
+        int length;
+        int identifier;
+
+        allocate(CAPACITY);
+
+        while (true) {
+            header = readShort(data);
+            type = header >>> Coder.LENGTH_FIELD_SIZE;
+            if (type == MovieTypes.END) {
+                break;
+            }
+            length = header & Coder.LENGTH_FIELD;
+            int headerLength = Coder.SHORT_HEADER;
+            if (length == Coder.IS_EXTENDED) {
+                length = readShort(data) | (readShort(data)
+                        << Coder.ALIGN_BYTE2);
+                headerLength = Coder.LONG_HEADER;
+            }
+
+            if (isDefinition(type) && length >= ID_LENGTH) {
+                identifier = readShort(data);
+                skip(stream, length - ID_LENGTH);
+            } else {
+                identifier = NO_ID;
+                skip(stream, length);
+            }
+
+            if (size == types.length) {
+                grow();
+            }
+            types[size] = type;
+            identifiers[size] = identifier;
+            offsets[size] = offset;
+            lengths[size] = headerLength + length;
+            frames[size] = frame;
+            size++;
+
+            offset += headerLength + length;
+            if (type == MovieTypes.SHOW_FRAME) {
+                frame++;
+            }
+        }
+        frameCount = frame;
+    }
+
+    /**
+     * Create the table of definitions and find the first PathsArePostscript
+     * object.
+     */
+    private void index() {
+        definitions = new HashMap<Integer, Integer>();
+        postscript = size;
+
+        for (int i = 0; i < size; i++) {
+            if (identifiers[i] != NO_ID) {
+                definitions.put(identifiers[i], i);
+            }
+            if (types[i] == MovieTypes.PATHS_ARE_POSTSCRIPT
+                    && postscript == size) {
+                postscript = i;
+            }
+        }
+    }
+
+    /**
+     * Allocate the arrays for the index.
+     * @param capacity the number of objects.
+     */
+    private void allocate(final int capacity) {
+        types = new int[capacity];
+        identifiers = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        frames = new int[capacity];
+    }
+
+    /**
+     * Double the capacity of the arrays for the index.
+     */
+    private void grow() {
+        final int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        identifiers = Arrays.copyOf(identifiers, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        frames = Arrays.copyOf(frames, capacity);
+    }
+
+    /**
+     * Read an unsigned 16-bit little-endian value.
+     * @param stream the stream to read from.
+     * @return the value read.
+     * @throws IOException if the end of the stream is reached.
+     */
+    private static int readShort(final DataInputStream stream)
+            throws IOException {
+        return stream.readUnsignedByte()
+            | (stream.readUnsignedByte() << Coder.ALIGN_BYTE1);
+    }
+
+    /**
+     * Skip a number of bytes in a stream.
+     * @param stream the stream.
+     * @param count the number of bytes to skip.
+     * @throws IOException if the end of the stream is reached.
+     */
+    private static void skip(final InputStream stream, final long count)
+            throws IOException {
+        long remaining = count;
+        long skipped;
+
+        while (remaining > 0) {
+            skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Does a type of object define a shape, image, sound, font, text,
+     * button, movie clip, video or binary data with the identifier encoded
+     * in the first two bytes of the body.
+     *
+     * @param type the type of object, from MovieTypes.
+     * @return true if the object is a definition.
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private static boolean isDefinition(final int type) {
+        switch (type) {
+        case MovieTypes.DEFINE_SHAPE:
+        case MovieTypes.DEFINE_SHAPE_2:
+        case MovieTypes.DEFINE_SHAPE_3:
+        case MovieTypes.DEFINE_SHAPE_4:
+        case MovieTypes.DEFINE_MORPH_SHAPE:
+        case MovieTypes.DEFINE_MORPH_SHAPE_2:
+        case MovieTypes.DEFINE_JPEG_IMAGE:
+        case MovieTypes.DEFINE_JPEG_IMAGE_2:
+        case MovieTypes.DEFINE_JPEG_IMAGE_3:
+        case MovieTypes.DEFINE_JPEG_IMAGE_4:
+        case MovieTypes.DEFINE_IMAGE:
+        case MovieTypes.DEFINE_IMAGE_2:
+        case MovieTypes.DEFINE_BUTTON:
+        case MovieTypes.DEFINE_BUTTON_2:
+        case MovieTypes.DEFINE_FONT:
+        case MovieTypes.DEFINE_FONT_2:
+        case MovieTypes.DEFINE_FONT_3:
+        case MovieTypes.DEFINE_FONT_4:
+        case MovieTypes.DEFINE_TEXT:
+        case MovieTypes.DEFINE_TEXT_2:
+        case MovieTypes.DEFINE_TEXT_FIELD:
+        case MovieTypes.DEFINE_SOUND:
+        case MovieTypes.DEFINE_MOVIE_CLIP:
+        case MovieTypes.DEFINE_VIDEO:
+        case MovieTypes.DEFINE_BINARY_DATA:
+            return true;
+        default:
+            return false;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * MovieReader.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderPool;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFFactory;
+
+/**
+ * MovieReader decodes the objects in a Flash file one at a time.
+ *
+ * <p>
+ * Unlike Movie.decodeFromStream(), which adds every object to a list before
+ * returning, a MovieReader only decodes an object when read() is called. Only
+ * the current object needs to be kept in memory so movies of any size can be
+ * scanned, filtered or copied to a MovieWriter without holding the entire
+ * movie on the heap.
+ * </p>
+ *
+ * <p>
+ * When an uncompressed movie is read from a File, the file is mapped into
+ * memory rather than being read through a stream.
+ * </p>
+ *
+ * <p>
+ * readAll() decodes the remaining objects in parallel. The movie is scanned
+ * once to find where each object starts and ends, then runs of objects are
+ * decoded on an ExecutorService. Only the Flash version and whether the
+ * glyphs in the movie are derived from Postscript fonts are shared between
+ * objects, so the values in effect when each object is scanned are recorded
+ * and used when it is decoded.
+ * </p>
+ *
+ * <pre>
+ * MovieReader reader = new MovieReader(stream);
+ * MovieTag tag;
+ *
+ * while ((tag = reader.read()) != null) {
+ *     ...
+ * }
+ * reader.close();
+ * </pre>
+ */
+public final class MovieReader implements Closeable {
+
+    /** Length in bytes of the magic number used to identify the file type. */
+    private static final int SIGNATURE_LENGTH = 3;
+    /** Length in bytes of the signature and length fields. */
+    private static final int HEADER_LENGTH = 8;
+    /** Minimum number of encoded bytes decoded by each parallel task. */
+    private static final int TASK_SIZE = 65536;
+
+    /** The stream the movie is read from, after decompression. */
+    private transient InputStream streamIn;
+    /** The Inflater used if the movie is compressed. */
+    private transient Inflater inflater;
+    /** The decoder used to read the objects from the stream. */
+    private transient SWFDecoder decoder;
+    /** The context used to pass information between objects. */
+    private final transient Context context;
+    /** The factory used to decode each object. */
+    private final transient SWFFactory<MovieTag> factory;
+    /** Objects that have been decoded but not yet returned by read(). */
+    private final transient List<MovieTag> pending;
+    /** The header decoded from the start of the file. */
+    private final transient MovieHeader header;
+    /** The length of the movie, in bytes, when it is uncompressed. */
+    private transient int length;
+    /** Flag indicating whether the End tag has been read. */
+    private transient boolean finished;
+
+    /**
+     * Creates a MovieReader that uses the default set of decoders and UTF-8
+     * as the encoding for strings.
+     *
+     * @param stream the InputStream from which the movie will be read.
+     *
+     * @throws DataFormatException if the stream does not contain Flash data.
+     * @throws IOException if an error occurs while reading the header.
+     */
+    public MovieReader(final InputStream stream)
+            throws DataFormatException, IOException {
+        this(stream, DecoderRegistry.getDefault(), CharacterEncoding.UTF8);
+    }
+
+    /**
+     * Creates a MovieReader and decodes the header from the start of the
+     * movie.
+     *
+     * @param stream the InputStream from which the movie will be read.
+     * @param registry the registry containing the decoders used for each
+     * type of object.
+     * @param encoding the character encoding used for strings.
+     *
+     * @throws DataFormatException if the stream does not contain Flash data.
+     * @throws IOException if an error occurs while reading the header.
+     */
+    public MovieReader(final InputStream stream,
+            final DecoderRegistry registry, final CharacterEncoding encoding)
+            throws DataFormatException, IOException {
+
+        context = new Context();
+        context.setRegistry(registry);
+        context.setEncoding(encoding.getEncoding());
+
+        if (readSignature(stream)) {
+            streamIn = inflate(stream);
+        } else {
+            streamIn = stream;
+        }
+        boolean opened = false;
+
+        try {
+            decoder = createDecoder(streamIn);
+            decoder.setEncoding(encoding);
+
+            factory = registry.getMovieDecoder();
+            pending = new LinkedList<MovieTag>();
+            header = new MovieHeader(decoder, context);
+            opened = true;
+        } finally {
+            if (!opened) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Creates a MovieReader that reads a movie from a file using the default
+     * set of decoders and UTF-8 as the encoding for strings.
+     *
+     * @param file the Flash file that will be read.
+     *
+     * @throws DataFormatException if the file does not contain Flash data.
+     * @throws IOException if an error occurs while reading the header.
+     */
+    public MovieReader(final File file)
+            throws DataFormatException, IOException {
+        this(file, DecoderRegistry.getDefault(), CharacterEncoding.UTF8);
+    }
+
+    /**
+     * Creates a MovieReader that reads a movie from a file. If the movie is
+     * not compressed then the file is mapped into memory and decoded
+     * directly.
+     *
+     * @param file the Flash file that will be read.
+     * @param registry the registry containing the decoders used for each
+     * type of object.
+     * @param encoding the character encoding used for strings.
+     *
+     * @throws DataFormatException if the file does not contain Flash data.
+     * @throws IOException if an error occurs while reading the header.
+     */
+    public MovieReader(final File file, final DecoderRegistry registry,
+            final CharacterEncoding encoding)
+            throws DataFormatException, IOException {
+
+        context = new Context();
+        context.setRegistry(registry);
+        context.setEncoding(encoding.getEncoding());
+
+        final FileInputStream stream = new FileInputStream(file);
+        boolean opened = false;
+
+        try {
+            if (readSignature(stream)) {
+                streamIn = inflate(stream);
+                decoder = createDecoder(streamIn);
+            } else {
+                final FileChannel channel = stream.getChannel();
+                final long end = Math.min(channel.size(), length);
+                streamIn = stream;
+                decoder = CoderPool.getDecoder(channel.map(
+                        FileChannel.MapMode.READ_ONLY, HEADER_LENGTH,
+                        end - HEADER_LENGTH));
+            }
+            decoder.setEncoding(encoding);
+
+            factory = registry.getMovieDecoder();
+            pending = new LinkedList<MovieTag>();
+            header = new MovieHeader(decoder, context);
+            opened = true;
+        } finally {
+            if (!opened) {
+                release();
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Read the signature, version and length fields from the start of the
+     * movie.
+     *
+     * @param stream the stream containing the movie.
+     * @return true if the movie is compressed, false otherwise.
+     *
+     * @throws DataFormatException if the stream does not contain Flash data.
+     * @throws IOException if an error occurs while reading the stream.
+     */
+    private boolean readSignature(final InputStream stream)
+            throws DataFormatException, IOException {
+
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        if (stream.read(signature) != signature.length) {
+            throw new DataFormatException("Could not read file signature");
+        }
+
+        final boolean compressed;
+
+        if (Arrays.equals(Movie.CWS, signature)) {
+            compressed = true;
+            context.put(Context.COMPRESSED, 1);
+        } else if (Arrays.equals(Movie.FWS, signature)) {
+            compressed = false;
+            context.put(Context.COMPRESSED, 0);
+        } else {
+            throw new DataFormatException();
+        }
+
+        context.put(Context.VERSION, stream.read());
+
+        length = stream.read();
+        length |= stream.read() << Coder.ALIGN_BYTE1;
+        length |= stream.read() << Coder.ALIGN_BYTE2;
+        length |= stream.read() << Coder.ALIGN_BYTE3;
+
+        if (length < HEADER_LENGTH) {
+            throw new DataFormatException("Invalid movie length: " + length);
+        }
+        return compressed;
+    }
+
+    /**
+     * Create the stream used to inflate the body of a compressed movie.
+     *
+     * @param stream the stream containing the movie.
+     * @return an InflaterInputStream for reading the stream.
+     */
+    private InputStream inflate(final InputStream stream) {
+        inflater = new Inflater();
+        return new InflaterInputStream(stream, inflater);
+    }
+
+    /**
+     * Return the decoder to the pool and free the resources used by the
+     * Inflater, if the movie is compressed.
+     */
+    private void release() {
+        if (decoder != null) {
+            CoderPool.release(decoder);
+            decoder = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * Create the decoder used to read the body of a movie from a stream.
+     *
+     * @param stream the stream containing the movie.
+     * @return an SWFDecoder for reading the stream.
+     */
+    private SWFDecoder createDecoder(final InputStream stream) {
+        /*
+         * If the file is shorter than the default buffer size then set the
+         * buffer size to be the file size - this gets around a bug in Java
+         * where the end of ZLIB streams are not detected correctly.
+         */
+        SWFDecoder coder;
+
+        if (length < SWFDecoder.BUFFER_SIZE) {
+            coder = new SWFDecoder(stream, length - HEADER_LENGTH);
+        } else {
+            coder = CoderPool.getDecoder(stream);
+        }
+        return coder;
+    }
+
+    /**
+     * Get the header decoded from the start of the movie.
+     *
+     * @return the MovieHeader containing the Flash version, frame size, frame
+     * rate and number of frames in the movie.
+     */
+    public MovieHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Get the length of the movie, in bytes, when it is uncompressed. This is
+     * the length recorded in the file signature.
+     *
+     * @return the uncompressed length of the movie.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Decode the next object in the movie. The MovieHeader is not returned,
+     * use getHeader() instead.
+     *
+     * @return the next object or null if the end of the movie was reached.
+     *
+     * @throws IOException if an error occurs while decoding the object.
+     */
+    public MovieTag read() throws IOException {
+        while (pending.isEmpty() && !finished) {
+            if (decoder.scanUnsignedShort() >>> Coder.LENGTH_FIELD_SIZE
+                    == MovieTypes.END) {
+                decoder.readUnsignedShort();
+                finished = true;
+            } else {
+                factory.getObject(pending, decoder, context);
+            }
+        }
+        return pending.isEmpty() ? null : pending.remove(0);
+    }
+
+    /**
+     * Decode all the remaining objects in the movie using an ExecutorService
+     * to decode the objects in parallel. The objects are returned in the
+     * order they appear in the movie. If the movie decoder in the registry is
+     * a LazyDecoder then the objects are returned as LazyTags, without being
+     * decoded.
+     *
+     * @param executor the ExecutorService used to decode the objects.
+     *
+     * @return the list of objects decoded. The MovieHeader is not included.
+     *
+     * @throws IOException if an error occurs while decoding the objects.
+     */
+    public List<MovieTag> readAll(final ExecutorService executor)
+            throws IOException {
+
+        if (executor == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final List<MovieTag> list = new ArrayList<MovieTag>(pending);
+        pending.clear();
+
+        final boolean lazy = factory instanceof LazyDecoder;
+        final LazyDecoder scanner = lazy ? (LazyDecoder) factory
+                : new LazyDecoder(factory);
+        /*
+         * Objects that are not selected by a SelectiveDecoder are kept or
+         * skipped while scanning so only the selected ones are decoded by
+         * the tasks.
+         */
+        final SelectiveDecoder selector =
+            scanner.getDecoder() instanceof SelectiveDecoder
+                ? (SelectiveDecoder) scanner.getDecoder() : null;
+        int type;
+
+        while (!finished) {
+            type = decoder.scanUnsignedShort() >>> Coder.LENGTH_FIELD_SIZE;
+            if (type == MovieTypes.END) {
+                decoder.readUnsignedShort();
+                finished = true;
+            } else if (selector == null || selector.isSelected(type)) {
+                scanner.getObject(list, decoder, context);
+            } else {
+                selector.getObject(list, decoder, context);
+            }
+        }
+
+        if (lazy) {
+            return list;
+        }
+
+        final List<Future<List<MovieTag>>> tasks =
+            new ArrayList<Future<List<MovieTag>>>();
+        final List<Integer> starts = new ArrayList<Integer>();
+
+        int start = 0;
+        int size = 0;
+
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) instanceof LazyTag) {
+                size += ((LazyTag) list.get(i)).getLength();
+            }
+            if (size >= TASK_SIZE || i == list.size() - 1) {
+                starts.add(start);
+                tasks.add(executor.submit(new DecodeTask(
+                        list.subList(start, i + 1))));
+                start = i + 1;
+                size = 0;
+            }
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            final List<MovieTag> decoded = waitFor(tasks.get(i));
+            int index = starts.get(i);
+            for (final MovieTag tag : decoded) {
+                list.set(index++, tag);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Wait for a task to finish, rethrowing any exception thrown while the
+     * objects were decoded or encoded.
+     *
+     * @param <T> the type of result returned by the task.
+     * @param task the task decoding or encoding a run of objects.
+     * @return the result of the task.
+     *
+     * @throws IOException if an error occurred while coding the objects.
+     */
+    static <T> T waitFor(final Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while coding movie");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.toString());
+        }
+    }
+
+    /**
+     * DecodeTask decodes a run of consecutive objects scanned by readAll().
+     */
+    private static final class DecodeTask
+            implements Callable<List<MovieTag>> {
+        /** The objects to decode. */
+        private final transient List<MovieTag> objects;
+
+        /**
+         * Create a task to decode a list of objects.
+         *
+         * @param list the objects to decode. The list is copied.
+         */
+        public DecodeTask(final List<MovieTag> list) {
+            objects = new ArrayList<MovieTag>(list);
+        }
+
+        /** {@inheritDoc} */
+        public List<MovieTag> call() throws IOException {
+            final List<MovieTag> list =
+                new ArrayList<MovieTag>(objects.size());
+            for (final MovieTag tag : objects) {
+                if (tag instanceof LazyTag) {
+                    list.add(((LazyTag) tag).getTag());
+                } else {
+                    list.add(tag);
+                }
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if an error occurs closing the stream.
+     */
+    public void close() throws IOException {
+        release();
+        streamIn.close();
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * MovieWriter.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFEncoder;
+
+/**
+ * MovieWriter encodes the objects in a Flash file one at a time.
+ *
+ * <p>
+ * Movie.encodeToStream() needs every object in the movie before it can write
+ * the length of the file in the header. A MovieWriter instead encodes each
+ * object as soon as it is written, so applications that generate large
+ * movies only need to keep the current frame in memory:
+ * </p>
+ *
+ * <ul>
+ * <li>For uncompressed movies written to a File, the length of the movie
+ * and number of frames are patched into the header when the writer is
+ * closed.</li>
+ * <li>For compressed movies only the compressed data is buffered. The header
+ * is added, uncompressed, in front of the compressed objects when the writer
+ * is closed so the result is still a single zlib stream.</li>
+ * <li>For uncompressed movies written to an OutputStream there is no way to
+ * go back and update the header so the encoded objects are buffered until
+ * the writer is closed.</li>
+ * </ul>
+ *
+ * <pre>
+ * MovieWriter writer = new MovieWriter(file, header);
+ *
+ * for (...) {
+ *     writer.write(tag);
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * <p>
+ * The number of frames in the MovieHeader is updated to the number of
+ * ShowFrame objects written when the writer is closed.
+ * </p>
+ */
+public final class MovieWriter implements Closeable {
+
+    /** Length in bytes of the signature, version and length fields. */
+    private static final int HEADER_LENGTH = 8;
+    /** Offset in bytes to the length field in the header. */
+    private static final int LENGTH_OFFSET = 4;
+    /** Length in bytes of the End tag. */
+    private static final int END_LENGTH = 2;
+    /** First byte of a zlib stream: deflate with a 32K window. */
+    private static final int ZLIB_CMF = 0x78;
+    /** Second byte of a zlib stream: default compression, no dictionary. */
+    private static final int ZLIB_FLG = 0x9C;
+    /** Length in bytes of a zlib checksum. */
+    private static final int CHECKSUM_LENGTH = 4;
+    /** Modulus used when calculating Adler-32 checksums. */
+    private static final int ADLER_BASE = 65521;
+    /** Bit mask for accessing the lower 16-bits of a checksum. */
+    private static final int ADLER_MASK = 0xFFFF;
+    /** Number of bits to shift to access the upper 16-bits of a checksum. */
+    private static final int ADLER_SHIFT = 16;
+
+    /** The stream the encoded movie will be written to. */
+    private final transient OutputStream stream;
+    /** The file the movie will be written to, if the movie can be patched. */
+    private final transient RandomAccessFile file;
+    /** The header for the movie. */
+    private final transient MovieHeader header;
+    /** The context used to pass information between objects. */
+    private final transient Context context;
+    /** Buffer used when the body cannot be written directly to the stream. */
+    private final transient ByteArrayOutputStream body;
+    /** The deflater used to compress the body of the movie. */
+    private final transient Deflater deflater;
+    /** Checksum of the uncompressed data written to the deflater. */
+    private final transient Adler32 checksum;
+    /** Stream used to compress the body of the movie. */
+    private final transient OutputStream deflaterStream;
+    /** The encoder used to write each object. */
+    private final transient SWFEncoder coder;
+    /** Offset of the frame count field when the header is patched. */
+    private transient int frameCountOffset;
+    /** The number of bytes in the uncompressed body of the movie. */
+    private transient int length;
+    /** The number of frames written. */
+    private transient int frameCount;
+    /** Flag indicating whether the writer was closed. */
+    private transient boolean closed;
+
+    /**
+     * Creates a MovieWriter that writes the encoded movie to a file. Strings
+     * are encoded using UTF-8.
+     *
+     * @param aFile the file where the movie will be written.
+     * @param movieHeader the header containing the attributes of the movie.
+     *
+     * @throws IOException if the file cannot be created or the header cannot
+     * be written.
+     */
+    public MovieWriter(final File aFile, final MovieHeader movieHeader)
+            throws IOException {
+        this(aFile, movieHeader, CharacterEncoding.UTF8);
+    }
+
+    /**
+     * Creates a MovieWriter that writes the encoded movie to a file.
+     *
+     * @param aFile the file where the movie will be written.
+     * @param movieHeader the header containing the attributes of the movie.
+     * @param encoding the character encoding used for strings.
+     *
+     * @throws IOException if the file cannot be created or the header cannot
+     * be written.
+     */
+    public MovieWriter(final File aFile, final MovieHeader movieHeader,
+            final CharacterEncoding encoding) throws IOException {
+        this(new RandomAccessFile(aFile, "rw"), null, movieHeader, encoding);
+    }
+
+    /**
+     * Creates a MovieWriter that writes the encoded movie to a stream.
+     * Strings are encoded using UTF-8.
+     *
+     * @param streamOut the stream where the movie will be written.
+     * @param movieHeader the header containing the attributes of the movie.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    public MovieWriter(final OutputStream streamOut,
+            final MovieHeader movieHeader) throws IOException {
+        this(streamOut, movieHeader, CharacterEncoding.UTF8);
+    }
+
+    /**
+     * Creates a MovieWriter that writes the encoded movie to a stream.
+     *
+     * @param streamOut the stream where the movie will be written.
+     * @param movieHeader the header containing the attributes of the movie.
+     * @param encoding the character encoding used for strings.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    public MovieWriter(final OutputStream streamOut,
+            final MovieHeader movieHeader, final CharacterEncoding encoding)
+            throws IOException {
+        this(null, streamOut, movieHeader, encoding);
+    }
+
+    /**
+     * Creates a MovieWriter that writes to either a file or a stream.
+     *
+     * @param aFile the file where the movie will be written, or null.
+     * @param streamOut the stream where the movie will be written, if the
+     * file is null.
+     * @param movieHeader the header containing the attributes of the movie.
+     * @param encoding the character encoding used for strings.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    private MovieWriter(final RandomAccessFile aFile,
+            final OutputStream streamOut, final MovieHeader movieHeader,
+            final CharacterEncoding encoding) throws IOException {
+
+        if (movieHeader == null) {
+            throw new IllegalArgumentException();
+        }
+
+        file = aFile;
+        header = movieHeader;
+
+        context = new Context();
+        context.setEncoding(encoding.getEncoding());
+        context.put(Context.VERSION, header.getVersion());
+
+        if (file == null) {
+            stream = streamOut;
+        } else {
+            file.setLength(0);
+            stream = Channels.newOutputStream(file.getChannel());
+        }
+
+        if (header.isCompressed()) {
+            body = new ByteArrayOutputStream();
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            checksum = new Adler32();
+            deflaterStream = new DeflaterOutputStream(body, deflater);
+            coder = new SWFEncoder(new CheckedOutputStream(deflaterStream,
+                    checksum));
+        } else if (file == null) {
+            body = new ByteArrayOutputStream();
+            deflater = null;
+            checksum = null;
+            deflaterStream = null;
+            coder = new SWFEncoder(body);
+        } else {
+            body = null;
+            deflater = null;
+            checksum = null;
+            deflaterStream = null;
+            coder = new SWFEncoder(stream);
+            writeSignature(0);
+            frameCountOffset = HEADER_LENGTH + header.prepareToEncode(context)
+                    - 2;
+            header.encode(coder, context);
+        }
+        coder.setEncoding(encoding);
+    }
+
+    /**
+     * Get the number of ShowFrame objects written so far.
+     *
+     * @return the number of frames in the movie.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Encode an object and add it to the movie.
+     *
+     * @param tag the object to be written. Must not be null.
+     *
+     * @throws IOException if an error occurs while encoding the object.
+     */
+    public void write(final MovieTag tag) throws IOException {
+        if (tag == null) {
+            throw new IllegalArgumentException();
+        }
+        if (closed) {
+            throw new IOException("MovieWriter is closed");
+        }
+        length += tag.prepareToEncode(context);
+        tag.encode(coder, context);
+
+        if (tag instanceof ShowFrame) {
+            frameCount++;
+        }
+    }
+
+    /**
+     * Write the End tag that marks the end of the movie, update the header
+     * and close the underlying file or stream.
+     *
+     * @throws IOException if an error occurs while writing the movie.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            coder.writeShort(0);
+            length += END_LENGTH;
+            coder.flush();
+
+            header.setFrameCount(frameCount);
+
+            if (header.isCompressed()) {
+                writeCompressed();
+            } else if (file == null) {
+                writeBuffered();
+            } else {
+                patchHeader();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (file == null) {
+                stream.close();
+            } else {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Write the signature, version and length fields.
+     *
+     * @param size the length of the movie in bytes.
+     *
+     * @throws IOException if an error occurs writing to the stream.
+     */
+    private void writeSignature(final int size) throws IOException {
+        if (header.isCompressed()) {
+            stream.write(Movie.CWS);
+        } else {
+            stream.write(Movie.FWS);
+        }
+        stream.write(header.getVersion());
+        stream.write(size);
+        stream.write(size >>> Coder.ALIGN_BYTE1);
+        stream.write(size >>> Coder.ALIGN_BYTE2);
+        stream.write(size >>> Coder.ALIGN_BYTE3);
+    }
+
+    /**
+     * Encode the header fields (frame size, rate and count).
+     *
+     * @return the encoded header fields.
+     *
+     * @throws IOException if an error occurs while encoding the header.
+     */
+    private byte[] encodeHeader() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(out);
+        header.prepareToEncode(context);
+        header.encode(encoder, context);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Write an uncompressed movie where the body was buffered.
+     *
+     * @throws IOException if an error occurs writing to the stream.
+     */
+    private void writeBuffered() throws IOException {
+        final byte[] fields = encodeHeader();
+        writeSignature(HEADER_LENGTH + fields.length + length);
+        stream.write(fields);
+        body.writeTo(stream);
+        stream.flush();
+    }
+
+    /**
+     * Update the length and frame count in a movie written to a file.
+     *
+     * @throws IOException if an error occurs writing to the file.
+     */
+    private void patchHeader() throws IOException {
+        final int size = frameCountOffset + 2 + length;
+
+        file.seek(LENGTH_OFFSET);
+        file.write(size);
+        file.write(size >>> Coder.ALIGN_BYTE1);
+        file.write(size >>> Coder.ALIGN_BYTE2);
+        file.write(size >>> Coder.ALIGN_BYTE3);
+
+        file.seek(frameCountOffset);
+        file.write(frameCount);
+        file.write(frameCount >>> Coder.ALIGN_BYTE1);
+    }
+
+    /**
+     * Write a compressed movie. The header fields are stored, uncompressed,
+     * in a single non-final block at the start of the zlib stream. That is
+     * followed by the deflated body of the movie and the checksum for both.
+     *
+     * @throws IOException if an error occurs writing to the stream.
+     */
+    private void writeCompressed() throws IOException {
+        deflaterStream.close();
+
+        final byte[] fields = encodeHeader();
+        final Adler32 fieldsChecksum = new Adler32();
+        fieldsChecksum.update(fields);
+
+        writeSignature(HEADER_LENGTH + fields.length + length);
+
+        stream.write(ZLIB_CMF);
+        stream.write(ZLIB_FLG);
+        // Stored block: BFINAL = 0, BTYPE = 00, padded to a byte boundary.
+        stream.write(0);
+        stream.write(fields.length);
+        stream.write(fields.length >>> Coder.ALIGN_BYTE1);
+        stream.write(~fields.length);
+        stream.write(~fields.length >>> Coder.ALIGN_BYTE1);
+        stream.write(fields);
+
+        body.writeTo(stream);
+
+        final int adler = combine((int) fieldsChecksum.getValue(),
+                (int) checksum.getValue(), length);
+        final byte[] bytes = new byte[CHECKSUM_LENGTH];
+        bytes[0] = (byte) (adler >>> Coder.ALIGN_BYTE3);
+        bytes[1] = (byte) (adler >>> Coder.ALIGN_BYTE2);
+        bytes[2] = (byte) (adler >>> Coder.ALIGN_BYTE1);
+        bytes[3] = (byte) adler;
+        stream.write(bytes);
+        stream.flush();
+    }
+
+    /**
+     * Combine two Adler-32 checksums, giving the checksum of the two blocks
+     * of data concatenated together.
+     *
+     * @param first the checksum of the first block of data.
+     * @param second the checksum of the second block of data.
+     * @param secondLength the length of the second block of data.
+     * @return the checksum for the combined data.
+     */
+    private static int combine(final int first, final int second,
+            final int secondLength) {
+        final int rem = secondLength % ADLER_BASE;
+        int sum1 = first & ADLER_MASK;
+        int sum2 = (int) (((long) rem * sum1) % ADLER_BASE);
+        sum1 += (second & ADLER_MASK) + ADLER_BASE - 1;
+        sum2 += (first >>> ADLER_SHIFT) + (second >>> ADLER_SHIFT)
+                + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return (sum2 << ADLER_SHIFT) | sum1;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * SelectiveDecoder.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFFactory;
+
+/**
+ * SelectiveDecoder is used to decode only selected types of object from a
+ * movie.
+ *
+ * <p>
+ * Objects with a type, from MovieTypes, in the set passed to the constructor
+ * are decoded. All other objects are either kept as MovieObjects, containing
+ * the encoded data, so they are written back out unchanged when the movie is
+ * encoded, or skipped so they are discarded from the movie entirely. To use
+ * a SelectiveDecoder replace the movie decoder in the registry used to decode
+ * the movie:
+ * </p>
+ *
+ * <pre>
+ * Set&lt;Integer&gt; types = new HashSet&lt;Integer&gt;();
+ * types.add(MovieTypes.SYMBOL);
+ * types.add(MovieTypes.EXPORT);
+ * types.add(MovieTypes.DEFINE_BINARY_DATA);
+ *
+ * DecoderRegistry registry = DecoderRegistry.getDefault();
+ * registry.setMovieDecoder(new SelectiveDecoder(types, false));
+ *
+ * Movie movie = new Movie();
+ * movie.setRegistry(registry);
+ * movie.decodeFromFile(file);
+ * </pre>
+ *
+ * <p>
+ * When other objects are kept, objects with no body, such as ShowFrame and
+ * PathsArePostscript, are always decoded since they are used to count frames
+ * or change how later objects are decoded. Since the registry is also used to
+ * decode the objects nested inside a DefineMovieClip, they are selected in
+ * the same way.
+ * </p>
+ *
+ * @see MovieTypes
+ */
+public final class SelectiveDecoder implements SWFFactory<MovieTag> {
+
+    /** The number of different types that can be encoded in a header. */
+    private static final int TYPE_COUNT = Coder.LOWEST10 + 1;
+
+    /** The types of object that are decoded. */
+    private final transient BitSet types;
+    /** Whether other objects are kept as MovieObjects or discarded. */
+    private final transient boolean keep;
+    /** The decoder used for the selected objects. */
+    private final transient SWFFactory<MovieTag> decoder;
+
+    /**
+     * Creates a SelectiveDecoder that uses a MovieDecoder to decode the
+     * selected objects and keeps all other objects as MovieObjects.
+     *
+     * @param set the types of object, from MovieTypes, to decode.
+     */
+    public SelectiveDecoder(final Set<Integer> set) {
+        this(set, true, new MovieDecoder());
+    }
+
+    /**
+     * Creates a SelectiveDecoder that uses a MovieDecoder to decode the
+     * selected objects.
+     *
+     * @param set the types of object, from MovieTypes, to decode.
+     * @param keepOthers true if all other objects are kept as MovieObjects,
+     * false if they are discarded.
+     */
+    public SelectiveDecoder(final Set<Integer> set, final boolean keepOthers) {
+        this(set, keepOthers, new MovieDecoder());
+    }
+
+    /**
+     * Creates a SelectiveDecoder that uses the specified decoder for the
+     * selected objects.
+     *
+     * @param set the types of object, from MovieTypes, to decode.
+     * @param keepOthers true if all other objects are kept as MovieObjects,
+     * false if they are discarded.
+     * @param factory the decoder used to decode the selected objects.
+     */
+    public SelectiveDecoder(final Set<Integer> set, final boolean keepOthers,
+            final SWFFactory<MovieTag> factory) {
+        if (set == null || factory == null) {
+            throw new IllegalArgumentException();
+        }
+        types = new BitSet(TYPE_COUNT);
+        for (final Integer type : set) {
+            if (type == null || type < 0 || type >= TYPE_COUNT) {
+                throw new IllegalArgumentException();
+            }
+            types.set(type);
+        }
+        keep = keepOthers;
+        decoder = factory;
+    }
+
+    /**
+     * Is a type of object decoded.
+     *
+     * @param type the type of object, from MovieTypes.
+     * @return true if objects of this type are decoded, false otherwise.
+     */
+    public boolean isSelected(final int type) {
+        return type >= 0 && type < TYPE_COUNT && types.get(type);
+    }
+
+    /**
+     * Are objects that are not decoded kept in the movie.
+     *
+     * @return true if the objects are kept as MovieObjects, false if they
+     * are discarded.
+     */
+    public boolean isKeepingOthers() {
+        return keep;
+    }
+
+    /** {@inheritDoc} */
+    public void getObject(final List<MovieTag> list, final SWFDecoder coder,
+            final Context context) throws IOException {
+        final int header = coder.scanUnsignedShort();
+
+        if (types.get(header >>> Coder.LENGTH_FIELD_SIZE)) {
+            decoder.getObject(list, coder, context);
+        } else if (keep) {
+            if ((header & Coder.LENGTH_FIELD) == 0) {
+                decoder.getObject(list, coder, context);
+            } else {
+                list.add(new MovieObject(coder));
+            }
+        } else {
+            int length = coder.readUnsignedShort() & Coder.LENGTH_FIELD;
+            if (length == Coder.IS_EXTENDED) {
+                length = coder.readInt();
+            }
+            coder.skip(length);
+        }
+    }
+}
@@ -448,31 +448,36 @@ public final class ExceptionHandler implements Action {
 
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
-        length = EMPTY_LENGTH; // assume thrown object is stored in register.
+        int size = EMPTY_LENGTH; // assume thrown object is stored in register.
 
         if (register == 0) {
-            length += context.strlen(variable) - 1;
+            size += context.strlen(variable) - 1;
         }
 
-        tryLength = 0;
-        catchLength = 0;
-        finalLength = 0;
+        int trySize = 0;
+        int catchSize = 0;
+        int finalSize = 0;
 
         for (final Action action : tryActions) {
-            tryLength += action.prepareToEncode(context);
+            trySize += action.prepareToEncode(context);
         }
 
         for (final Action action : catchActions) {
-            catchLength += action.prepareToEncode(context);
+            catchSize += action.prepareToEncode(context);
         }
 
         for (final Action action : finalActions) {
-            finalLength += action.prepareToEncode(context);
+            finalSize += action.prepareToEncode(context);
         }
 
-        length += tryLength;
-        length += catchLength;
-        length += finalLength;
+        size += trySize;
+        size += catchSize;
+        size += finalSize;
+
+        tryLength = trySize;
+        catchLength = catchSize;
+        finalLength = finalSize;
+        length = size;
 
         return Coder.ACTION_HEADER + length;
     }
@@ -202,8 +202,7 @@ public final class GetUrl implements Action {
 
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
-        length = context.strlen(url);
-        length += context.strlen(target);
+        length = context.strlen(url) + context.strlen(target);
 
         return Coder.ACTION_HEADER + length;
     }
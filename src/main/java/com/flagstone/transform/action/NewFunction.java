@@ -308,19 +308,22 @@ public final class NewFunction implements Action {
 
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
-        length = 2 + context.strlen(name);
+        int size = 2 + context.strlen(name);
 
         for (final String argument : arguments) {
-            length += context.strlen(argument);
+            size += context.strlen(argument);
         }
 
-        length += 2;
-        actionsLength = 0;
+        size += 2;
+        int actionSize = 0;
 
         for (final Action action : actions) {
-            actionsLength += action.prepareToEncode(context);
+            actionSize += action.prepareToEncode(context);
         }
 
+        length = size;
+        actionsLength = actionSize;
+
         return Coder.ACTION_HEADER + length + actionsLength;
     }
 
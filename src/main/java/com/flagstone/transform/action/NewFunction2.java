@@ -534,25 +534,30 @@ public final class NewFunction2 implements Action {
 
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
-        length = INITIAL_LENGTH + context.strlen(name);
+        int size = INITIAL_LENGTH + context.strlen(name);
 
         for (final String arg : arguments.keySet()) {
-            length += arg.getBytes().length + 2;
+            size += arg.getBytes().length + 2;
         }
 
-        length += 2;
+        size += 2;
+
+        int actionSize;
 
         if (actions.isEmpty()) {
-            actionsLength = 1;
+            actionSize = 1;
         } else {
-            actionsLength = 0;
+            actionSize = 0;
         }
 
         for (final Action action : actions) {
-            actionsLength += action.prepareToEncode(context);
+            actionSize += action.prepareToEncode(context);
         }
 
-        length += actionsLength;
+        size += actionSize;
+
+        actionsLength = actionSize;
+        length = size;
 
         return Coder.ACTION_HEADER + length;
     }
@@ -236,7 +236,7 @@ public final class Push implements Action {
 
             switch (dataType) {
             case TYPE_STRING:
-                final String str = coder.readString();
+                final String str = coder.readSharedString();
                 values.add(str);
                 valuesLength -= 1 + context.strlen(str);
                 break;
@@ -342,34 +342,36 @@ public final class Push implements Action {
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
 
-        length = 0;
+        int size = 0;
 
         for (final Object obj : values) {
             if (obj instanceof Boolean) {
-                length += LENGTH_BOOLEAN;
+                size += LENGTH_BOOLEAN;
             } else if (obj instanceof Property) {
-                length += LENGTH_PROPERTY;
+                size += LENGTH_PROPERTY;
             } else if (obj instanceof Integer) {
-                length += LENGTH_INTEGER;
+                size += LENGTH_INTEGER;
             } else if (obj instanceof Double) {
-                length += LENGTH_DOUBLE;
+                size += LENGTH_DOUBLE;
             } else if (obj instanceof String) {
-                length += 1 + context.strlen(obj.toString());
+                size += 1 + context.strlen(obj.toString());
             } else if (obj instanceof Null) {
-                length += LENGTH_NULL;
+                size += LENGTH_NULL;
             } else if (obj instanceof Void) {
-                length += LENGTH_VOID;
+                size += LENGTH_VOID;
             } else if (obj instanceof TableIndex) {
                 if (((TableIndex) obj).getIndex() <= LAST_REGISTER) {
-                    length += LENGTH_TINDEX;
+                    size += LENGTH_TINDEX;
                 } else {
-                    length += LENGTH_LTINDEX;
+                    size += LENGTH_LTINDEX;
                 }
             } else if (obj instanceof RegisterIndex) {
-                length += 2;
+                size += 2;
             }
         }
 
+        length = size;
+
         return Coder.ACTION_HEADER + length;
     }
 
@@ -86,7 +86,7 @@ public final class Table implements Action {
 
         if (tableSize > 0) {
             for (int i = 0; i < tableSize; i++) {
-                values.add(coder.readString());
+                values.add(coder.readSharedString());
             }
         } else {
             /*
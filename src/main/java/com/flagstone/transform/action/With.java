@@ -144,12 +144,14 @@ public final class With implements Action {
 
     /** {@inheritDoc} */
     public int prepareToEncode(final Context context) {
-        length = 2;
+        int size = 2;
 
         for (final Action action : actions) {
-            length += action.prepareToEncode(context);
+            size += action.prepareToEncode(context);
         }
 
+        length = size;
+
         return Coder.ACTION_HEADER + length;
     }
 
@@ -131,7 +131,7 @@ public final class ButtonShape implements SWFEncodeable, Copyable<ButtonShape> {
         layer = coder.readUnsignedShort();
         transform = new CoordTransform(coder);
 
-        if (context.get(Context.TYPE) != null && context.get(Context.TYPE)
+        if (context.contains(Context.TYPE) && context.get(Context.TYPE)
                 == MovieTypes.DEFINE_BUTTON_2) {
             colorTransform = new ColorTransform(coder, context);
         }
@@ -449,7 +449,7 @@ public final class ButtonShape implements SWFEncodeable, Copyable<ButtonShape> {
         // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
         int length = 5 + transform.prepareToEncode(context);
 
-        if (context.get(Context.TYPE) != null && context.get(Context.TYPE)
+        if (context.contains(Context.TYPE) && context.get(Context.TYPE)
                 == MovieTypes.DEFINE_BUTTON_2) {
             length += colorTransform.prepareToEncode(context);
         }
@@ -481,7 +481,7 @@ public final class ButtonShape implements SWFEncodeable, Copyable<ButtonShape> {
         coder.writeShort(layer);
         transform.encode(coder, context);
 
-        if (context.get(Context.TYPE) != null && context.get(Context.TYPE)
+        if (context.contains(Context.TYPE) && context.get(Context.TYPE)
                 == MovieTypes.DEFINE_BUTTON_2) {
             colorTransform.encode(coder, context);
         }
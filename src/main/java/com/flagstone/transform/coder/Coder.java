@@ -137,8 +137,6 @@ public final class Coder {
 
     /** Number of bits in an int. */
     private static final int BITS_PER_INT = 32;
-    /** Bit mask with most significant bit of a 32-bit integer set. */
-    private static final int MSB_MASK = 0x80000000;
 
     /**
      * Calculates the minimum number of bits required to encoded an unsigned
@@ -150,16 +148,8 @@ public final class Coder {
      * @return the number of bits required to encode the value.
      */
     public static int unsignedSize(final int value) {
-
-        final int val = (value < 0) ? -value - 1 : value;
-        int counter = BITS_PER_INT;
-        int mask = MSB_MASK;
-
-        while (((val & mask) == 0) && (counter > 0)) {
-            mask >>>= 1;
-            counter -= 1;
-        }
-        return counter;
+        return BITS_PER_INT - Integer.numberOfLeadingZeros(
+                value ^ (value >> (BITS_PER_INT - 1)));
     }
 
     /**
@@ -172,15 +162,8 @@ public final class Coder {
      * @return the number of bits required to encode the value.
      */
     public static int size(final int value) {
-        int counter = BITS_PER_INT;
-        int mask = MSB_MASK;
-        final int val = (value < 0) ? -value - 1 : value;
-
-        while (((val & mask) == 0) && (counter > 0)) {
-            mask >>>= 1;
-            counter -= 1;
-        }
-        return counter + 1;
+        return BITS_PER_INT + 1 - Integer.numberOfLeadingZeros(
+                value ^ (value >> (BITS_PER_INT - 1)));
     }
 
     /**
@@ -194,14 +177,12 @@ public final class Coder {
      */
     public static int maxSize(final int... values) {
 
-        int max = 0;
-        int size;
+        int bits = 0;
 
         for (final int value : values) {
-            size = size(value);
-            max = (max > size) ? max : size;
+            bits |= value ^ (value >> (BITS_PER_INT - 1));
         }
-        return max;
+        return values.length == 0 ? 0 : size(bits);
     }
 
     /**
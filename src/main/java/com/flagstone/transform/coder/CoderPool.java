@@ -0,0 +1,174 @@
+/*
+ * CoderPool.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.coder;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CoderPool keeps a small number of SWFDecoder and SWFEncoder objects for
+ * each thread so they can be reused rather than allocating new coders, along
+ * with their buffers, each time a movie or an object is decoded or encoded.
+ *
+ * <p>
+ * Coders obtained from the pool should be returned using release() once they
+ * are no longer needed. A coder that is not returned is simply garbage
+ * collected. Since coders are removed from the pool until they are released,
+ * coders can safely be obtained while another one is in use, for example when
+ * a ScreenPacket is decoded while a movie is being decoded.
+ * </p>
+ *
+ * <pre>
+ * SWFDecoder coder = CoderPool.getDecoder(ByteBuffer.wrap(data));
+ * try {
+ *     ...
+ * } finally {
+ *     CoderPool.release(coder);
+ * }
+ * </pre>
+ */
+public final class CoderPool {
+
+    /** The maximum number of each type of coder kept for each thread. */
+    private static final int POOL_SIZE = 4;
+
+    /** The decoders available for each thread. */
+    private static final ThreadLocal<List<SWFDecoder>> DECODERS =
+        new ThreadLocal<List<SWFDecoder>>() {
+            @Override
+            protected List<SWFDecoder> initialValue() {
+                return new ArrayList<SWFDecoder>(POOL_SIZE);
+            }
+        };
+
+    /** The encoders available for each thread. */
+    private static final ThreadLocal<List<SWFEncoder>> ENCODERS =
+        new ThreadLocal<List<SWFEncoder>>() {
+            @Override
+            protected List<SWFEncoder> initialValue() {
+                return new ArrayList<SWFEncoder>(POOL_SIZE);
+            }
+        };
+
+    /**
+     * Get a decoder for reading data from an InputStream.
+     *
+     * @param stream the stream from which data will be read.
+     * @return an SWFDecoder for the stream.
+     */
+    public static SWFDecoder getDecoder(final InputStream stream) {
+        final List<SWFDecoder> pool = DECODERS.get();
+        SWFDecoder coder;
+
+        if (pool.isEmpty()) {
+            coder = new SWFDecoder(stream);
+        } else {
+            coder = pool.remove(pool.size() - 1);
+            coder.setInput(stream);
+        }
+        return coder;
+    }
+
+    /**
+     * Get a decoder for reading the data remaining in a ByteBuffer.
+     *
+     * @param data the ByteBuffer containing the data to be decoded.
+     * @return an SWFDecoder for the ByteBuffer.
+     */
+    public static SWFDecoder getDecoder(final ByteBuffer data) {
+        final List<SWFDecoder> pool = DECODERS.get();
+        SWFDecoder coder;
+
+        if (pool.isEmpty()) {
+            coder = new SWFDecoder(data);
+        } else {
+            coder = pool.remove(pool.size() - 1);
+            coder.setInput(data);
+        }
+        return coder;
+    }
+
+    /**
+     * Get an encoder for writing data to an OutputStream.
+     *
+     * @param stream the stream to which data will be written.
+     * @return an SWFEncoder for the stream.
+     */
+    public static SWFEncoder getEncoder(final OutputStream stream) {
+        final List<SWFEncoder> pool = ENCODERS.get();
+        SWFEncoder coder;
+
+        if (pool.isEmpty()) {
+            coder = new SWFEncoder(stream);
+        } else {
+            coder = pool.remove(pool.size() - 1);
+            coder.setOutput(stream);
+        }
+        return coder;
+    }
+
+    /**
+     * Return a decoder to the pool. The decoder must not be used again by the
+     * caller.
+     *
+     * @param coder the decoder to return to the pool.
+     */
+    public static void release(final SWFDecoder coder) {
+        final List<SWFDecoder> pool = DECODERS.get();
+        if (pool.size() < POOL_SIZE) {
+            coder.clear();
+            pool.add(coder);
+        }
+    }
+
+    /**
+     * Return an encoder to the pool. The encoder must not be used again by the
+     * caller.
+     *
+     * @param coder the encoder to return to the pool.
+     */
+    public static void release(final SWFEncoder coder) {
+        final List<SWFEncoder> pool = ENCODERS.get();
+        if (pool.size() < POOL_SIZE) {
+            coder.clear();
+            pool.add(coder);
+        }
+    }
+
+    /** Private constructor for the utility class. */
+    private CoderPool() {
+        // Utility class
+    }
+}
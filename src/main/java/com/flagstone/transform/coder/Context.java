@@ -31,11 +31,8 @@
 
 package com.flagstone.transform.coder;
 
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 import com.flagstone.transform.CharacterEncoding;
 
@@ -75,19 +72,39 @@ public class Context {
     /** Indicates a definition is for menu button. */
     public static final int MENU_BUTTON = 18;
 
+    /** The number of variables that can be stored in a context. */
+    private static final int SIZE = 32;
+    /** The UTF-8 character set. */
+    private static final Charset UTF_8 = CharacterEncoding.UTF8.getCharset();
+    /** The highest value for an ASCII character. */
+    private static final int MAX_ASCII = 127;
+    /** The highest value for a character encoded as two bytes in UTF-8. */
+    private static final int MAX_TWO_BYTES = 2047;
+
     /** The character encoding used for strings. */
     private String encoding;
+    /** The character set for the encoding, cached for encoding strings. */
+    private Charset charset;
+    /** Whether strings are encoded using UTF-8. */
+    private boolean utf8;
+    /** Whether ASCII characters are encoded as single bytes. */
+    private boolean ascii;
     /** The registry containing the objects that perform the decoding. */
     private DecoderRegistry registry;
     /** A table of variables used to pass information between objects. */
-    private final transient Map<Integer, Integer> variables;
+    private final transient int[] variables;
+    /** Bit set indicating which variables are set. */
+    private transient int present;
 
     /**
      * Create a Context object.
      */
     public Context() {
         encoding = CharacterEncoding.UTF8.toString();
-        variables = new LinkedHashMap<Integer, Integer>();
+        charset = CharacterEncoding.UTF8.getCharset();
+        utf8 = true;
+        ascii = true;
+        variables = new int[SIZE];
     }
 
     /**
@@ -115,6 +132,19 @@ public class Context {
             throw new UnsupportedCharsetException(charSet);
         }
         encoding = charSet;
+        charset = Charset.forName(charSet);
+        utf8 = UTF_8.equals(charset);
+        final CharacterEncoding enc = CharacterEncoding.fromCharSet(charset);
+        ascii = enc != null && enc.isAscii();
+    }
+
+    /**
+     * Get the character set used when encoding or decoding strings.
+     *
+     * @return the character set used for strings.
+     */
+    public final Charset getCharset() {
+        return charset;
     }
 
     /**
@@ -129,11 +159,51 @@ public class Context {
      */
 
     public final int strlen(final String string) {
-        try {
-            return string.getBytes(encoding).length + 1;
-        } catch (final UnsupportedEncodingException e) {
-            throw new AssertionError(e);
+        final int length = string.length();
+        if (utf8) {
+            return utf8Length(string, length) + 1;
+        }
+        if (ascii) {
+            int index = 0;
+            while (index < length && string.charAt(index) <= MAX_ASCII) {
+                index++;
+            }
+            if (index == length) {
+                return length + 1;
+            }
+        }
+        return string.getBytes(charset).length + 1;
+    }
+
+    /**
+     * Calculates the length of a string when encoded using UTF-8 without
+     * encoding it. Unpaired surrogate characters are counted as a single byte
+     * since they are replaced by '?' when the string is encoded.
+     *
+     * @param string the string to be encoded.
+     * @param length the number of characters in the string.
+     * @return the number of bytes required to encode the string.
+     */
+    private static int utf8Length(final String string, final int length) {
+        int count = 0;
+        char chr;
+        for (int i = 0; i < length; i++) {
+            chr = string.charAt(i);
+            if (chr <= MAX_ASCII) {
+                count++;
+            } else if (chr <= MAX_TWO_BYTES) {
+                count += 2;
+            } else if (Character.isHighSurrogate(chr) && i + 1 < length
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                count += 4;
+                i++;
+            } else if (Character.isSurrogate(chr)) {
+                count++;
+            } else {
+                count += 3;
+            }
         }
+        return count;
     }
 
     /**
@@ -157,8 +227,8 @@ public class Context {
      * @param key the name of the variable.
      * @return true if the variable is set, false if not.
      */
-    public final boolean contains(final Integer key) {
-        return variables.containsKey(key);
+    public final boolean contains(final int key) {
+        return (present & (1 << key)) != 0;
     }
 
     /**
@@ -166,17 +236,18 @@ public class Context {
      *
      * @param key the identifier for the variable.
      */
-    public final void remove(final Integer key) {
-        variables.remove(key);
+    public final void remove(final int key) {
+        present &= ~(1 << key);
+        variables[key] = 0;
     }
 
     /**
      * Get the value of a variable.
      * @param key the name of the variable.
-     * @return the variable value.
+     * @return the variable value or zero if the variable is not set.
      */
-    public final Integer get(final Integer key) {
-        return variables.get(key);
+    public final int get(final int key) {
+        return variables[key];
     }
 
     /**
@@ -185,8 +256,9 @@ public class Context {
      * @param value the variable value.
      * @return this object.
      */
-    public final Context put(final Integer key, final Integer value) {
-        variables.put(key, value);
+    public final Context put(final int key, final int value) {
+        variables[key] = value;
+        present |= 1 << key;
         return this;
     }
 }
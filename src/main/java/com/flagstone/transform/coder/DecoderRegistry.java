@@ -31,8 +31,11 @@
 
 package com.flagstone.transform.coder;
 
+import java.util.Set;
+
 import com.flagstone.transform.MovieDecoder;
 import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.SelectiveDecoder;
 import com.flagstone.transform.action.Action;
 import com.flagstone.transform.action.ActionDecoder;
 import com.flagstone.transform.fillstyle.FillStyle;
@@ -225,4 +228,20 @@ public final class DecoderRegistry implements Copyable<DecoderRegistry> {
     public void setMovieDecoder(final SWFFactory<MovieTag> factory) {
         movieDecoder = factory;
     }
+
+    /**
+     * Decode only the selected types of movie object. The current movie
+     * decoder is replaced by a SelectiveDecoder which uses it to decode the
+     * objects with a type in the set. All other objects are either kept,
+     * undecoded, as MovieObjects or discarded.
+     *
+     * @param types the types of object, from MovieTypes, to decode.
+     * @param keepOthers true if all other objects are kept as MovieObjects,
+     * false if they are discarded.
+     */
+    public void selectMovieTypes(final Set<Integer> types,
+            final boolean keepOthers) {
+        movieDecoder = new SelectiveDecoder(types, keepOthers,
+                movieDecoder == null ? new MovieDecoder() : movieDecoder);
+    }
 }
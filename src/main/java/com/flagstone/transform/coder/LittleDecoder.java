@@ -33,7 +33,8 @@ package com.flagstone.transform.coder;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 
 /**
  * LittleDecoder wraps an InputStream with a buffer to reduce the amount of
@@ -46,6 +47,8 @@ import java.util.Stack;
 public final class LittleDecoder {
     /** The default size, in bytes, for the internal buffer. */
     public static final int BUFFER_SIZE = 4096;
+    /** The initial size of the stack used to store locations. */
+    private static final int STACK_SIZE = 16;
 
     /** Bit mask applied to bytes when converting to unsigned integers. */
     private static final int BYTE_MASK = 255;
@@ -72,7 +75,9 @@ public final class LittleDecoder {
     /** The buffer for data read from the stream. */
     private final transient byte[] buffer;
     /** Stack for storing file locations. */
-    private final transient Stack<Integer>locations;
+    private transient int[] locations;
+    /** The number of locations on the stack. */
+    private transient int depth;
     /** The position of the buffer relative to the start of the stream. */
     private transient int pos;
     /** The position from the start of the buffer. */
@@ -92,7 +97,7 @@ public final class LittleDecoder {
     public LittleDecoder(final InputStream streamIn, final int length) {
         stream = streamIn;
         buffer = new byte[length];
-        locations = new Stack<Integer>();
+        locations = new int[STACK_SIZE];
         pos = 0;
     }
 
@@ -105,7 +110,7 @@ public final class LittleDecoder {
     public LittleDecoder(final InputStream streamIn) {
         stream = streamIn;
         buffer = new byte[BUFFER_SIZE];
-        locations = new Stack<Integer>();
+        locations = new int[STACK_SIZE];
         pos = 0;
     }
 
@@ -152,14 +157,33 @@ public final class LittleDecoder {
      * @return the current position.
      */
     public int mark() {
-        return locations.push(pos + index);
+        if (depth == locations.length) {
+            locations = Arrays.copyOf(locations, depth << 1);
+        }
+        locations[depth++] = pos + index;
+        return pos + index;
     }
 
     /**
      * Discard the last saved position.
      */
     public void unmark() {
-        locations.pop();
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        depth--;
+    }
+
+    /**
+     * Get the last saved position.
+     *
+     * @return the position recorded by the last call to mark().
+     */
+    private int peek() {
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        return locations[depth - 1];
     }
 
     /**
@@ -172,10 +196,10 @@ public final class LittleDecoder {
     public void reset() throws IOException {
         int location;
 
-        if (locations.isEmpty()) {
+        if (depth == 0) {
             location = 0;
         } else {
-            location = locations.peek();
+            location = peek();
         }
         if (location - pos < 0) {
             throw new IOException();
@@ -189,7 +213,7 @@ public final class LittleDecoder {
      * @return the number of bytes read since the mark() method was last called.
      */
     public int bytesRead() {
-        return pos + index - locations.peek();
+        return pos + index - peek();
     }
 
     /**
@@ -358,13 +382,52 @@ public final class LittleDecoder {
             index += available;
             dest += available;
 
-            if (index == size) {
-                fill();
+            if (read < wanted && index == size) {
+                if (wanted - read >= buffer.length) {
+                    readDirect(bytes, dest, wanted - read);
+                    read = wanted;
+                } else {
+                    fill();
+                    if (size == 0) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                }
             }
         }
         return bytes;
     }
 
+    /**
+     * Read bytes from the stream directly into an array, rather than copying
+     * them through the internal buffer. All the bytes in the buffer must have
+     * been read.
+     *
+     * @param bytes the array that will contain the bytes read.
+     * @param start the offset in the array where the bytes will be written.
+     * @param length the number of bytes to read.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    private void readDirect(final byte[] bytes, final int start,
+            final int length) throws IOException {
+        int dest = start;
+        int remaining = length;
+        int count;
+
+        while (remaining > 0) {
+            count = stream.read(bytes, dest, remaining);
+            if (count == -1) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            dest += count;
+            remaining -= count;
+        }
+        pos += size + length;
+        index = 0;
+        size = 0;
+    }
+
     /**
      * Read an unsigned 16-bit integer.
      *
@@ -0,0 +1,333 @@
+/*
+ * ParallelDeflaterOutputStream.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.coder;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * ParallelDeflaterOutputStream compresses data in the ZLIB format using an
+ * ExecutorService to compress blocks of data at the same time.
+ *
+ * <p>
+ * The data is divided into blocks which are compressed separately. Each block
+ * is compressed using the last 32KB of the previous block as a dictionary so
+ * there is little loss in the compression ratio. All blocks except the last
+ * are terminated with a sync flush so the compressed blocks can simply be
+ * concatenated to generate a single ZLIB stream that can be decompressed by
+ * any Inflater.
+ * </p>
+ *
+ * <p>
+ * The number of blocks being compressed at any one time is limited so the
+ * amount of memory used is bounded regardless of the amount of data written.
+ * </p>
+ */
+public final class ParallelDeflaterOutputStream extends FilterOutputStream {
+
+    /** The size, in bytes, of the blocks compressed by each task. */
+    public static final int BLOCK_SIZE = 131072;
+
+    /** The size of the dictionary used for each block. */
+    private static final int DICTIONARY_SIZE = 32768;
+    /** The number of blocks that can be compressed for each processor. */
+    private static final int BLOCKS_PER_PROCESSOR = 2;
+    /** ZLIB header: deflate with a 32KB window and default compression. */
+    private static final int[] HEADER = {0x78, 0x9C };
+    /** Bit mask for extracting bytes from an int. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** The executor used to compress the blocks. */
+    private final transient ExecutorService executor;
+    /** The compression level. */
+    private final transient int level;
+    /** The compression strategy. */
+    private final transient int strategy;
+    /** The checksum of the uncompressed data. */
+    private final transient Adler32 checksum;
+    /** The blocks being compressed, in the order they were written. */
+    private final transient LinkedList<Future<byte[]>> pending;
+    /** The maximum number of blocks that can be compressed at once. */
+    private final transient int limit;
+
+    /** The block currently being filled. */
+    private transient byte[] block;
+    /** The number of bytes in the current block. */
+    private transient int count;
+    /** The dictionary for the current block, or null for the first block. */
+    private transient byte[] dictionary;
+    /** Whether the ZLIB header has been written. */
+    private transient boolean started;
+    /** Whether the stream was finished. */
+    private transient boolean finished;
+
+    /**
+     * Creates a ParallelDeflaterOutputStream with the default compression
+     * level and strategy.
+     *
+     * @param stream the stream the compressed data will be written to.
+     * @param service the ExecutorService used to compress the blocks.
+     */
+    public ParallelDeflaterOutputStream(final OutputStream stream,
+            final ExecutorService service) {
+        this(stream, service, Deflater.DEFAULT_COMPRESSION,
+                Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * Creates a ParallelDeflaterOutputStream.
+     *
+     * @param stream the stream the compressed data will be written to.
+     * @param service the ExecutorService used to compress the blocks.
+     * @param compression the compression level, see Deflater.
+     * @param method the compression strategy, see Deflater.
+     */
+    public ParallelDeflaterOutputStream(final OutputStream stream,
+            final ExecutorService service, final int compression,
+            final int method) {
+        super(stream);
+        if (service == null) {
+            throw new IllegalArgumentException();
+        }
+        executor = service;
+        level = compression;
+        strategy = method;
+        checksum = new Adler32();
+        pending = new LinkedList<Future<byte[]>>();
+        limit = BLOCKS_PER_PROCESSOR
+                * Runtime.getRuntime().availableProcessors();
+        block = new byte[BLOCK_SIZE];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int value) throws IOException {
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+        if (count == block.length) {
+            submit(false);
+        }
+        block[count++] = (byte) value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+        int off = offset;
+        int len = length;
+
+        while (len > 0) {
+            if (count == block.length) {
+                submit(false);
+            }
+            final int size = Math.min(len, block.length - count);
+            System.arraycopy(bytes, off, block, count, size);
+            count += size;
+            off += size;
+            len -= size;
+        }
+    }
+
+    /**
+     * Compress the remaining data and write the end of the ZLIB stream
+     * without closing the underlying stream.
+     *
+     * @throws IOException if an error occurs compressing or writing the data.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeBlock();
+            }
+            final int value = (int) checksum.getValue();
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 4 LINES
+            out.write(value >>> 24);
+            out.write((value >>> 16) & BYTE_MASK);
+            out.write((value >>> 8) & BYTE_MASK);
+            out.write(value & BYTE_MASK);
+            finished = true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            for (final Future<byte[]> task : pending) {
+                task.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Submit the current block for compression, writing out any blocks that
+     * are finished.
+     *
+     * @param last true if this is the last block in the stream.
+     *
+     * @throws IOException if an error occurs writing the compressed data.
+     */
+    private void submit(final boolean last) throws IOException {
+        if (!started) {
+            out.write(HEADER[0]);
+            out.write(HEADER[1]);
+            started = true;
+        }
+
+        checksum.update(block, 0, count);
+        pending.add(executor.submit(new DeflateTask(block, count,
+                dictionary, last)));
+
+        if (!last) {
+            dictionary = new byte[DICTIONARY_SIZE];
+            System.arraycopy(block, count - DICTIONARY_SIZE,
+                    dictionary, 0, DICTIONARY_SIZE);
+            block = new byte[BLOCK_SIZE];
+            count = 0;
+        }
+
+        while (!pending.isEmpty() && (pending.size() >= limit
+                || pending.getFirst().isDone())) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Wait for the oldest block to be compressed then write it to the
+     * underlying stream.
+     *
+     * @throws IOException if an error occurs compressing or writing the data.
+     */
+    private void writeBlock() throws IOException {
+        try {
+            out.write(pending.getFirst().get());
+            pending.removeFirst();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing data", e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * DeflateTask compresses a single block of data.
+     */
+    private final class DeflateTask implements Callable<byte[]> {
+        /** The uncompressed data. */
+        private final transient byte[] data;
+        /** The number of bytes of data to compress. */
+        private final transient int length;
+        /** The preset dictionary or null if there is none. */
+        private final transient byte[] preset;
+        /** Whether this is the last block in the stream. */
+        private final transient boolean last;
+
+        /**
+         * Create a task to compress a block of data.
+         *
+         * @param bytes the data to compress.
+         * @param size the number of bytes in the array to compress.
+         * @param dict the preset dictionary, may be null.
+         * @param end true if this is the last block in the stream.
+         */
+        public DeflateTask(final byte[] bytes, final int size,
+                final byte[] dict, final boolean end) {
+            data = bytes;
+            length = size;
+            preset = dict;
+            last = end;
+        }
+
+        /** {@inheritDoc} */
+        public byte[] call() {
+            final Deflater deflater = new Deflater(level, true);
+            try {
+                // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+                byte[] buffer = new byte[length + (length >> 3) + 64];
+                int size;
+
+                /*
+                 * The strategy is only applied on the next call to deflate()
+                 * so it must be applied before the dictionary is set.
+                 */
+                deflater.setStrategy(strategy);
+                size = deflater.deflate(buffer);
+
+                if (preset != null) {
+                    deflater.setDictionary(preset);
+                }
+                deflater.setInput(data, 0, length);
+
+                final int mode;
+                if (last) {
+                    deflater.finish();
+                    mode = Deflater.NO_FLUSH;
+                } else {
+                    mode = Deflater.SYNC_FLUSH;
+                }
+
+                do {
+                    if (size == buffer.length) {
+                        final byte[] larger = new byte[buffer.length << 1];
+                        System.arraycopy(buffer, 0, larger, 0, size);
+                        buffer = larger;
+                    }
+                    size += deflater.deflate(buffer, size,
+                            buffer.length - size, mode);
+                } while (last ? !deflater.finished() : size == buffer.length);
+                final byte[] result = new byte[size];
+                System.arraycopy(buffer, 0, result, 0, size);
+                return result;
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -33,8 +33,11 @@ package com.flagstone.transform.coder;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Stack;
+import java.util.EmptyStackException;
 
 import com.flagstone.transform.CharacterEncoding;
 
@@ -43,14 +46,31 @@ import com.flagstone.transform.CharacterEncoding;
  * SWFDecoder wraps an InputStream with a buffer to reduce the amount of
  * memory required to decode a movie and to improve efficiency by reading
  * data from a file or external source in blocks.
+ *
+ * <p>
+ * An SWFDecoder can also be created for data that is already in memory, or
+ * mapped into memory, using a ByteBuffer. If the ByteBuffer is backed by an
+ * array then the array is used directly and the data is never copied. For
+ * direct buffers, such as a MappedByteBuffer returned by FileChannel.map(),
+ * the internal buffer is filled using bulk transfers and skip() or large
+ * reads go directly to the ByteBuffer.
+ * </p>
  */
 @SuppressWarnings("PMD.TooManyMethods")
 public final class SWFDecoder {
     /** The default size, in bytes, for the internal buffer. */
     public static final int BUFFER_SIZE = 4096;
+    /** The initial size of the stack used to store locations. */
+    private static final int STACK_SIZE = 16;
 
     /** The default size, in bytes, for the reading strings. */
     private static final int STR_BUFFER_SIZE = 1024;
+    /** The number of entries in the table of shared strings. */
+    private static final int STRING_TABLE_SIZE = 256;
+    /** The longest string, in bytes, that is added to the shared strings. */
+    private static final int MAX_SHARED_LENGTH = 64;
+    /** Multiplier used by String.hashCode(). */
+    private static final int HASH_PRIME = 31;
     /** Bit mask applied to bytes when converting to unsigned integers. */
     private static final int BYTE_MASK = 255;
     /** Number of bits to shift when aligning a value to the second byte. */
@@ -59,25 +79,39 @@ public final class SWFDecoder {
     private static final int TO_BYTE2 = 16;
     /** Number of bits to shift when aligning a value to the fourth byte. */
     private static final int TO_BYTE3 = 24;
-    /** Number of bits in an int. */
-    private static final int BITS_PER_INT = 32;
     /** Number of bits in a byte. */
     private static final int BITS_PER_BYTE = 8;
+    /** Number of bits in a long. */
+    private static final int BITS_PER_LONG = 64;
+    /** Number of bytes in a long. */
+    private static final int BYTES_PER_LONG = 8;
+    /** Bit mask applied to bytes when converting to unsigned longs. */
+    private static final long LONG_BYTE_MASK = 255L;
     /** Right shift to convert number of bits to number of bytes. */
     private static final int BITS_TO_BYTES = 3;
     /** Left shift to convert number of bytes to number of bits. */
     private static final int BYTES_TO_BITS = 3;
 
     /** The underlying input stream. */
-    private final transient InputStream stream;
-    /** The buffer for data read from the stream. */
-    private final transient byte[] buffer;
+    private transient InputStream stream;
+    /** The underlying ByteBuffer, if data is not read from a stream. */
+    private transient ByteBuffer source;
+    /** The buffer the data is decoded from. */
+    private transient byte[] buffer;
+    /** The buffer allocated for data read from a stream or ByteBuffer. */
+    private transient byte[] streamBuffer;
     /** A buffer used for reading null terminated strings. */
     private transient byte[] stringBuffer;
-    /** The character encoding used for strings. */
-    private transient String encoding;
+    /** The character set used for strings. */
+    private transient Charset charset;
+    /** Whether ASCII characters are encoded as single bytes. */
+    private transient boolean ascii;
+    /** Table of strings returned by readSharedString(). */
+    private transient String[] strings;
     /** Stack for storing file locations. */
-    private final transient Stack<Integer>locations;
+    private transient int[] locations;
+    /** The number of locations on the stack. */
+    private transient int depth;
     /** The position of the buffer relative to the start of the stream. */
     private transient int pos;
     /** The position from the start of the buffer. */
@@ -86,6 +120,12 @@ public final class SWFDecoder {
     private transient int offset;
     /** The number of bytes available in the current buffer. */
     private transient int size;
+    /** Up to 64 bits from the buffer, used for reading bit fields. */
+    private transient long bits;
+    /** The location in the buffer of the first byte in the bit cache. */
+    private transient int bitIndex;
+    /** The number of bits in the bit cache. */
+    private transient int bitCount;
     /** The starting location from the last check-point. */
     private transient int location;
     /** The expected number number of bytes to be decoded. */
@@ -102,10 +142,12 @@ public final class SWFDecoder {
      */
     public SWFDecoder(final InputStream streamIn, final int length) {
         stream = streamIn;
-        buffer = new byte[length];
+        source = null;
+        streamBuffer = new byte[length];
+        buffer = streamBuffer;
         stringBuffer = new byte[STR_BUFFER_SIZE];
-        encoding = CharacterEncoding.UTF8.getEncoding();
-        locations = new Stack<Integer>();
+        setEncoding(CharacterEncoding.UTF8);
+        locations = new int[STACK_SIZE];
     }
 
     /**
@@ -116,10 +158,92 @@ public final class SWFDecoder {
      */
     public SWFDecoder(final InputStream streamIn) {
         stream = streamIn;
-        buffer = new byte[BUFFER_SIZE];
+        source = null;
+        streamBuffer = new byte[BUFFER_SIZE];
+        buffer = streamBuffer;
         stringBuffer = new byte[BUFFER_SIZE];
-        encoding = CharacterEncoding.UTF8.getEncoding();
-        locations = new Stack<Integer>();
+        setEncoding(CharacterEncoding.UTF8);
+        locations = new int[STACK_SIZE];
+    }
+
+    /**
+     * Create a new SWFDecoder for the data remaining in a ByteBuffer. The
+     * data is decoded from the current position up to the limit. The
+     * position of the ByteBuffer is not changed.
+     *
+     * @param data the ByteBuffer containing the data to be decoded.
+     */
+    public SWFDecoder(final ByteBuffer data) {
+        stringBuffer = new byte[STR_BUFFER_SIZE];
+        setEncoding(CharacterEncoding.UTF8);
+        locations = new int[STACK_SIZE];
+        setInput(data);
+    }
+
+    /**
+     * Reuse the decoder to decode data from an InputStream. The internal
+     * buffers are kept, with the buffer for the stream being at least the
+     * default size. All other state is discarded and the character encoding
+     * is set to UTF-8.
+     *
+     * @param streamIn the stream from which data will be read.
+     */
+    public void setInput(final InputStream streamIn) {
+        if (streamIn == null) {
+            throw new IllegalArgumentException();
+        }
+        clear();
+        stream = streamIn;
+        if (streamBuffer == null || streamBuffer.length < BUFFER_SIZE) {
+            streamBuffer = new byte[BUFFER_SIZE];
+        }
+        buffer = streamBuffer;
+    }
+
+    /**
+     * Reuse the decoder to decode the data remaining in a ByteBuffer. The
+     * internal buffers are kept, all other state is discarded and the
+     * character encoding is set to UTF-8. The position of the ByteBuffer is
+     * not changed.
+     *
+     * @param data the ByteBuffer containing the data to be decoded.
+     */
+    public void setInput(final ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException();
+        }
+        clear();
+        if (data.hasArray()) {
+            buffer = data.array();
+            index = data.arrayOffset() + data.position();
+            size = data.arrayOffset() + data.limit();
+            pos = -index;
+        } else {
+            source = data.slice();
+            if (streamBuffer == null || streamBuffer.length < BUFFER_SIZE) {
+                streamBuffer = new byte[BUFFER_SIZE];
+            }
+            buffer = streamBuffer;
+        }
+    }
+
+    /**
+     * Discard the data source and reset the decoder to its initial state.
+     */
+    void clear() {
+        stream = null;
+        source = null;
+        buffer = streamBuffer;
+        setEncoding(CharacterEncoding.UTF8);
+        depth = 0;
+        pos = 0;
+        index = 0;
+        offset = 0;
+        size = 0;
+        bitCount = 0;
+        location = 0;
+        expected = 0;
+        delta = 0;
     }
 
     /**
@@ -131,13 +255,16 @@ public final class SWFDecoder {
      * input stream.
      */
     public void fill() throws IOException {
+        if (stream == null && source == null) {
+            return;
+        }
+
         final int diff = size - index;
         pos += index;
+        bitCount = 0;
 
         if (index < size) {
-            for (int i = 0; i < diff; i++) {
-                buffer[i] = buffer[index++];
-            }
+            System.arraycopy(buffer, index, buffer, 0, diff);
         }
 
         int bytesRead = 0;
@@ -146,6 +273,14 @@ public final class SWFDecoder {
         index = diff;
         size = diff;
 
+        if (source != null) {
+            bytesRead = Math.min(bytesToRead, source.remaining());
+            source.get(buffer, index, bytesRead);
+            size += bytesRead;
+            index = 0;
+            return;
+        }
+
         do {
             bytesRead = stream.read(buffer, index, bytesToRead);
             if (bytesRead == -1) {
@@ -165,14 +300,33 @@ public final class SWFDecoder {
      * @return the current position.
      */
     public int mark() {
-        return locations.push(pos + index);
+        if (depth == locations.length) {
+            locations = Arrays.copyOf(locations, depth << 1);
+        }
+        locations[depth++] = pos + index;
+        return pos + index;
     }
 
     /**
      * Discard the last saved position.
      */
     public void unmark() {
-        locations.pop();
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        depth--;
+    }
+
+    /**
+     * Get the last saved position.
+     *
+     * @return the position recorded by the last call to mark().
+     */
+    private int peek() {
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        return locations[depth - 1];
     }
 
     /**
@@ -185,10 +339,10 @@ public final class SWFDecoder {
     public void reset() throws IOException {
         int last;
 
-        if (locations.isEmpty()) {
+        if (depth == 0) {
             last = 0;
         } else {
-            last = locations.peek();
+            last = peek();
         }
         if (last - pos < 0) {
             throw new IOException();
@@ -204,7 +358,7 @@ public final class SWFDecoder {
      */
     public void check(final int count) {
         expected = count;
-        location = locations.peek();
+        location = peek();
         delta = count - ((pos + index) - location);
     }
 
@@ -240,7 +394,7 @@ public final class SWFDecoder {
      * @return the number of bytes read since the mark() method was last called.
      */
     public int bytesRead() {
-        return (pos + index) - locations.peek();
+        return (pos + index) - peek();
     }
 
     /**
@@ -262,6 +416,18 @@ public final class SWFDecoder {
      * input stream.
      */
     public void skip(final int count) throws IOException {
+        if (source != null && count > size - index) {
+            final int remainder = count - (size - index);
+            if (remainder > source.remaining()) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            source.position(source.position() + remainder);
+            pos += size + remainder;
+            index = 0;
+            size = 0;
+            bitCount = 0;
+            return;
+        }
         if (size - index == 0) {
             fill();
         }
@@ -304,39 +470,41 @@ public final class SWFDecoder {
     public int readBits(final int numberOfBits, final boolean signed)
             throws IOException {
 
-        int pointer = (index << BYTES_TO_BITS) + offset;
-
-        if (((size << BYTES_TO_BITS) - pointer) < numberOfBits) {
-            fill();
-            pointer = (index << BYTES_TO_BITS) + offset;
+        if (numberOfBits == 0) {
+            return 0;
         }
 
-        int value = 0;
-
-        if (numberOfBits > 0) {
+        final long word = window(numberOfBits);
+        final int value;
 
-            if (pointer + numberOfBits > (size << BYTES_TO_BITS)) {
-                throw new ArrayIndexOutOfBoundsException();
-            }
+        if (signed) {
+            value = (int) (word >> (BITS_PER_LONG - numberOfBits));
+        } else {
+            value = (int) (word >>> (BITS_PER_LONG - numberOfBits));
+        }
 
-            for (int i = BITS_PER_INT; (i > 0)
-                    && (index < buffer.length); i -= BITS_PER_BYTE) {
-                value |= (buffer[index++] & BYTE_MASK) << (i - BITS_PER_BYTE);
-            }
+        offset += numberOfBits;
+        index += offset >>> BITS_TO_BYTES;
+        offset &= Coder.LOWEST3;
 
-            value <<= offset;
+        return value;
+    }
 
-            if (signed) {
-                value >>= BITS_PER_INT - numberOfBits;
-            } else {
-                value >>>= BITS_PER_INT - numberOfBits;
-            }
+    /**
+     * Read a single bit, used for the flags in bit fields.
+     *
+     * @return true if the bit is set, false otherwise.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    public boolean readBit() throws IOException {
+        final boolean value = window(1) < 0;
 
-            pointer += numberOfBits;
-            index = pointer >>> BITS_TO_BYTES;
-            offset = pointer & Coder.LOWEST3;
+        if (++offset == BITS_PER_BYTE) {
+            index++;
+            offset = 0;
         }
-
         return value;
     }
 
@@ -357,39 +525,73 @@ public final class SWFDecoder {
     public int scanBits(final int numberOfBits, final boolean signed)
             throws IOException {
 
-        int pointer = (index << BYTES_TO_BITS) + offset;
+        if (numberOfBits == 0) {
+            return 0;
+        }
+
+        final long word = window(numberOfBits);
+        final int value;
 
-        if (((size << BYTES_TO_BITS) - pointer) < numberOfBits) {
-            fill();
-            pointer = (index << BYTES_TO_BITS) + offset;
+        if (signed) {
+            value = (int) (word >> (BITS_PER_LONG - numberOfBits));
+        } else {
+            value = (int) (word >>> (BITS_PER_LONG - numberOfBits));
         }
+        return value;
+    }
 
-        int value = 0;
+    /**
+     * Get the bits starting at the current location, aligned to the most
+     * significant bit of a long. The bits are taken from the bit cache which
+     * is only reloaded from the buffer when it does not contain all the bits
+     * required.
+     *
+     * @param numberOfBits the number of bits that will be read (1-32).
+     * @return the contents of the cache shifted so the next bit to be read
+     * is the most significant bit.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    private long window(final int numberOfBits) throws IOException {
+        int shift = ((index - bitIndex) << BYTES_TO_BITS) + offset;
 
-        if (numberOfBits > 0) {
+        if (shift < 0 || shift + numberOfBits > bitCount) {
+            loadBits(numberOfBits);
+            shift = offset;
+        }
+        return bits << shift;
+    }
 
-            if (pointer + numberOfBits > (size << BYTES_TO_BITS)) {
+    /**
+     * Load the bit cache with up to 8 bytes starting at the current location
+     * in the buffer, filling the buffer first if it does not contain enough
+     * data.
+     *
+     * @param numberOfBits the number of bits that will be read.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    private void loadBits(final int numberOfBits) throws IOException {
+        if (((size - index) << BYTES_TO_BITS) - offset < numberOfBits) {
+            fill();
+            if (((size - index) << BYTES_TO_BITS) - offset < numberOfBits) {
                 throw new ArrayIndexOutOfBoundsException();
             }
+        }
 
-            for (int i = BITS_PER_INT; (i > 0)
-                    && (index < buffer.length); i -= BITS_PER_BYTE) {
-                value |= (buffer[index++] & BYTE_MASK) << (i - BITS_PER_BYTE);
-            }
-
-            value <<= offset;
+        final int end = Math.min(index + BYTES_PER_LONG, size);
+        long value = 0;
+        int shift = BITS_PER_LONG;
 
-            if (signed) {
-                value >>= BITS_PER_INT - numberOfBits;
-            } else {
-                value >>>= BITS_PER_INT - numberOfBits;
-            }
-
-            index = pointer >>> BITS_TO_BYTES;
-            offset = pointer & Coder.LOWEST3;
+        for (int i = index; i < end; i++) {
+            shift -= BITS_PER_BYTE;
+            value |= (buffer[i] & LONG_BYTE_MASK) << shift;
         }
-
-        return value;
+        bits = value;
+        bitIndex = index;
+        bitCount = (end - index) << BYTES_TO_BITS;
     }
 
     /**
@@ -440,8 +642,27 @@ public final class SWFDecoder {
      * input stream.
      */
     public byte[] readBytes(final byte[] bytes) throws IOException {
-        final int wanted = bytes.length;
-        int dest = 0;
+        return readBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads bytes into part of an array.
+     *
+     * @param bytes
+     *            the array that will contain the bytes read.
+     * @param offset
+     *            the index in the array where the first byte is stored.
+     * @param wanted
+     *            the number of bytes to read.
+     *
+     * @return the array of bytes.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    public byte[] readBytes(final byte[] bytes, final int offset,
+            final int wanted) throws IOException {
+        int dest = offset;
         int read = 0;
 
         int available;
@@ -458,7 +679,21 @@ public final class SWFDecoder {
             index += available;
             dest += available;
 
-            if (index == size) {
+            if (source != null && wanted - read > buffer.length) {
+                remaining = wanted - read;
+                if (remaining > source.remaining()) {
+                    throw new ArrayIndexOutOfBoundsException();
+                }
+                source.get(bytes, dest, remaining);
+                pos += size + remaining;
+                index = 0;
+                size = 0;
+                bitCount = 0;
+                read += remaining;
+            } else if (index == size) {
+                if (stream == null && source == null && read < wanted) {
+                    throw new ArrayIndexOutOfBoundsException();
+                }
                 fill();
             }
         }
@@ -473,7 +708,8 @@ public final class SWFDecoder {
      *            the CharacterEncoding that identifies how strings are encoded.
      */
     public void setEncoding(final CharacterEncoding enc) {
-        encoding = enc.getEncoding();
+        charset = enc.getCharset();
+        ascii = enc.isAscii();
     }
 
     /**
@@ -491,15 +727,43 @@ public final class SWFDecoder {
         if (length == 0) {
             return "";
         }
-        final byte[] bytes = new byte[length];
-        readBytes(bytes);
+        final byte[] bytes;
+        final int start;
+        if (size - index >= length) {
+            bytes = buffer;
+            start = index;
+            index += length;
+        } else {
+            if (stringBuffer.length < length) {
+                stringBuffer = new byte[length];
+            }
+            bytes = stringBuffer;
+            start = 0;
+            int read = 0;
+            int count;
+            while (read < length) {
+                if (index == size) {
+                    if (stream == null && source == null) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    fill();
+                    if (index == size) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                }
+                count = Math.min(size - index, length - read);
+                System.arraycopy(buffer, index, bytes, read, count);
+                index += count;
+                read += count;
+            }
+        }
         int len;
-        if (bytes[length - 1] == 0) {
+        if (bytes[start + length - 1] == 0) {
             len = length - 1;
         } else {
             len = length;
         }
-        return new String(bytes, 0, len, encoding);
+        return decode(bytes, start, len, false);
     }
 
     /**
@@ -512,7 +776,47 @@ public final class SWFDecoder {
      * input stream.
      */
     public String readString() throws IOException {
+        return readString(false);
+    }
+
+    /**
+     * Read a null-terminated string using the default character set defined in
+     * the decoder. Short ASCII strings are kept in a table so if the same
+     * string is read again, for example the names in the constant pools used
+     * by actions, then the same String object is returned rather than
+     * creating a new one. The table is kept when the decoder is reused.
+     *
+     * @return the decoded string.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    public String readSharedString() throws IOException {
+        return readString(true);
+    }
+
+    /**
+     * Read a null-terminated string using the default character set defined in
+     * the decoder.
+     *
+     * @param shared look up the string in the table of shared strings.
+     * @return the decoded string.
+     *
+     * @throws IOException if an error occurs reading from the underlying
+     * input stream.
+     */
+    private String readString(final boolean shared) throws IOException {
         int start = index;
+        int end = start;
+
+        while (end < size && buffer[end] != 0) {
+            end++;
+        }
+        if (end < size) {
+            index = end + 1;
+            return decode(buffer, start, end - start, shared);
+        }
+
         int length = 0;
         int available;
         int dest = 0;
@@ -540,9 +844,76 @@ public final class SWFDecoder {
                 stringBuffer = Arrays.copyOf(stringBuffer, length << 2);
             }
             System.arraycopy(buffer, start, stringBuffer, dest, count);
-            dest += length;
+            dest += count;
+        }
+        return decode(stringBuffer, 0, length, shared);
+    }
+
+    /**
+     * Convert bytes to a string using the character set defined in the
+     * decoder. Strings containing only ASCII characters are converted
+     * directly.
+     *
+     * @param bytes the array containing the encoded string.
+     * @param start the offset of the first byte of the string.
+     * @param length the number of bytes in the string.
+     * @param shared look up the string in the table of shared strings.
+     * @return the decoded string.
+     */
+    private String decode(final byte[] bytes, final int start,
+            final int length, final boolean shared) {
+        if (!ascii) {
+            return new String(bytes, start, length, charset);
+        }
+        final int end = start + length;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, start, length, charset);
+            }
+            hash = HASH_PRIME * hash + bytes[i];
+        }
+        if (!shared || length > MAX_SHARED_LENGTH) {
+            return new String(bytes, start, length,
+                    StandardCharsets.ISO_8859_1);
+        }
+        if (strings == null) {
+            strings = new String[STRING_TABLE_SIZE];
+        }
+        final int slot = (hash ^ (hash >>> TO_BYTE2))
+                & (STRING_TABLE_SIZE - 1);
+        final String str = strings[slot];
+        if (str != null && str.hashCode() == hash
+                && matches(str, bytes, start, length)) {
+            return str;
+        }
+        final String value = new String(bytes, start, length,
+                StandardCharsets.ISO_8859_1);
+        strings[slot] = value;
+        return value;
+    }
+
+    /**
+     * Compare a string containing only ASCII characters with a sequence of
+     * bytes.
+     *
+     * @param str the string.
+     * @param bytes the array containing the encoded string.
+     * @param start the offset of the first byte of the string.
+     * @param length the number of bytes in the string.
+     * @return true if each character matches the corresponding byte.
+     */
+    private static boolean matches(final String str, final byte[] bytes,
+            final int start, final int length) {
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != bytes[start + i]) {
+                return false;
+            }
         }
-        return new String(stringBuffer, 0, length, encoding);
+        return true;
     }
 
     /**
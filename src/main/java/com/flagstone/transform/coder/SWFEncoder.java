@@ -33,7 +33,9 @@ package com.flagstone.transform.coder;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Stack;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 
 import com.flagstone.transform.CharacterEncoding;
 
@@ -46,11 +48,13 @@ import com.flagstone.transform.CharacterEncoding;
 public final class SWFEncoder {
     /** The default size, in bytes, for the internal buffer. */
     public static final int BUFFER_SIZE = 4096;
+    /** The initial size of the stack used to store locations. */
+    private static final int STACK_SIZE = 16;
 
     /** Bit mask applied to bytes when converting to unsigned integers. */
     private static final int BYTE_MASK = 255;
-    /** Number of bits in an int. */
-    private static final int BITS_PER_INT = 32;
+    /** Number of bits in a long. */
+    private static final int BITS_PER_LONG = 64;
     /** Number of bits in a byte. */
     private static final int BITS_PER_BYTE = 8;
     /** Offset to add to number of bits when calculating number of bytes. */
@@ -65,20 +69,28 @@ public final class SWFEncoder {
     private static final int TO_BYTE2 = 16;
     /** Number of bits to shift when aligning a value to the fourth byte. */
     private static final int TO_BYTE3 = 24;
+    /** Number of bits to shift when aligning a value to the eighth byte. */
+    private static final int TO_BYTE7 = 56;
+    /** The highest value for an ASCII character. */
+    private static final int MAX_ASCII = 127;
 
 
     /** The underlying input stream. */
-    private final transient OutputStream stream;
+    private transient OutputStream stream;
     /** The buffer for data read from the stream. */
     private final transient byte[] buffer;
     /** The index in bytes to the current location in the buffer. */
     private transient int index;
     /** The offset in bits to the location in the current byte. */
     private transient int offset;
-    /** The character encoding used for strings. */
-    private transient String encoding;
+    /** The character set used for strings. */
+    private transient Charset charset;
+    /** Whether ASCII characters are encoded as single bytes. */
+    private transient boolean ascii;
     /** Stack for storing file locations. */
-    private final transient Stack<Integer>locations;
+    private transient int[] locations;
+    /** The number of locations on the stack. */
+    private transient int depth;
     /** The position of the buffer relative to the start of the stream. */
     private transient int pos;
 
@@ -92,8 +104,8 @@ public final class SWFEncoder {
     public SWFEncoder(final OutputStream streamOut, final int length) {
         stream = streamOut;
         buffer = new byte[length];
-        encoding = CharacterEncoding.UTF8.getEncoding();
-        locations = new Stack<Integer>();
+        setEncoding(CharacterEncoding.UTF8);
+        locations = new int[STACK_SIZE];
     }
 
     /**
@@ -105,8 +117,36 @@ public final class SWFEncoder {
     public SWFEncoder(final OutputStream streamOut) {
         stream = streamOut;
         buffer = new byte[BUFFER_SIZE];
-        encoding = CharacterEncoding.UTF8.getEncoding();
-        locations = new Stack<Integer>();
+        setEncoding(CharacterEncoding.UTF8);
+        locations = new int[STACK_SIZE];
+    }
+
+    /**
+     * Reuse the encoder to write data to another OutputStream. The internal
+     * buffer is kept, all other state is discarded and the character
+     * encoding is set to UTF-8.
+     *
+     * @param streamOut the stream to which data will be written.
+     */
+    public void setOutput(final OutputStream streamOut) {
+        if (streamOut == null) {
+            throw new IllegalArgumentException();
+        }
+        clear();
+        stream = streamOut;
+    }
+
+    /**
+     * Discard the stream and reset the encoder to its initial state.
+     */
+    void clear() {
+        stream = null;
+        setEncoding(CharacterEncoding.UTF8);
+        depth = 0;
+        Arrays.fill(buffer, (byte) 0);
+        index = 0;
+        offset = 0;
+        pos = 0;
     }
 
     /**
@@ -117,7 +157,8 @@ public final class SWFEncoder {
      *            the CharacterEncoding that identifies how strings are encoded.
      */
     public void setEncoding(final CharacterEncoding enc) {
-        encoding = enc.getEncoding();
+        charset = enc.getCharset();
+        ascii = enc.isAscii();
     }
 
     /**
@@ -125,14 +166,33 @@ public final class SWFEncoder {
      * @return the current position.
      */
     public int mark() {
-        return locations.push(pos + index);
+        if (depth == locations.length) {
+            locations = Arrays.copyOf(locations, depth << 1);
+        }
+        locations[depth++] = pos + index;
+        return pos + index;
     }
 
     /**
      * Discard the last saved position.
      */
     public void unmark() {
-        locations.pop();
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        depth--;
+    }
+
+    /**
+     * Get the last saved position.
+     *
+     * @return the position recorded by the last call to mark().
+     */
+    private int peek() {
+        if (depth == 0) {
+            throw new EmptyStackException();
+        }
+        return locations[depth - 1];
     }
 
     /**
@@ -145,9 +205,9 @@ public final class SWFEncoder {
      * expected number.
      */
     public void check(final int expected) throws CoderException {
-        final int actual = (pos + index) - locations.peek();
+        final int actual = (pos + index) - peek();
         if (actual != expected) {
-            throw new CoderException(locations.peek(), expected,
+            throw new CoderException(peek(), expected,
                     actual - expected);
         }
     }
@@ -200,32 +260,29 @@ public final class SWFEncoder {
     public void writeBits(final int value, final int numberOfBits)
                 throws IOException {
 
+        if (numberOfBits == 0) {
+            return;
+        }
+
         final int ptr = (index << BYTES_TO_BITS) + offset + numberOfBits;
 
         if (ptr >= (buffer.length << BYTES_TO_BITS)) {
             flush();
         }
 
-        final int val = ((value << (BITS_PER_INT - numberOfBits)) >>> offset)
-                | (buffer[index] << TO_BYTE3);
-        int base = BITS_PER_INT - (((offset + numberOfBits
-                + ROUND_TO_BYTES) >>> BITS_TO_BYTES) << BYTES_TO_BITS);
-        base = base < 0 ? 0 : base;
-
-        int pointer = (index << BYTES_TO_BITS) + offset;
-
-        for (int i = 24; i >= base; i -= BITS_PER_BYTE) {
-            buffer[index++] = (byte) (val >>> i);
-        }
+        final int end = offset + numberOfBits;
+        final long word = ((long) buffer[index] << TO_BYTE7)
+                | (((long) value << (BITS_PER_LONG - numberOfBits)) >>> offset);
+        final int count = (end + ROUND_TO_BYTES) >>> BITS_TO_BYTES;
 
-        if (offset + numberOfBits > BITS_PER_INT) {
-            buffer[index] = (byte) (value << (BITS_PER_BYTE
-                    - (offset + numberOfBits - BITS_PER_INT)));
+        int shift = TO_BYTE7;
+        for (int i = 0; i < count; i++) {
+            buffer[index + i] = (byte) (word >>> shift);
+            shift -= BITS_PER_BYTE;
         }
 
-        pointer += numberOfBits;
-        index = pointer >>> BITS_TO_BYTES;
-        offset = pointer & Coder.LOWEST3;
+        index += end >>> BITS_TO_BYTES;
+        offset = end & Coder.LOWEST3;
     }
 
     /**
@@ -275,12 +332,25 @@ public final class SWFEncoder {
      * stream.
      */
     public void writeString(final String str) throws IOException {
-        try {
-            writeBytes(str.getBytes(encoding));
-            buffer[index++] = 0;
-        } catch (final java.io.UnsupportedEncodingException e) {
-            throw new AssertionError(e);
+        final int length = str.length();
+        if (ascii && index + length < buffer.length) {
+            final int start = index;
+            char chr;
+            for (int i = 0; i < length; i++) {
+                chr = str.charAt(i);
+                if (chr > MAX_ASCII) {
+                    index = start;
+                    break;
+                }
+                buffer[index++] = (byte) chr;
+            }
+            if (index - start == length) {
+                buffer[index++] = 0;
+                return;
+            }
         }
+        writeBytes(str.getBytes(charset));
+        buffer[index++] = 0;
     }
 
     /**
@@ -185,8 +185,8 @@ public final class ColorTransform implements SWFEncodeable {
             throws IOException {
 
         hasAlpha = context.contains(Context.TRANSPARENT);
-        hasAdd = coder.readBits(1, false) != 0;
-        hasMultiply = coder.readBits(1, false) != 0;
+        hasAdd = coder.readBit();
+        hasMultiply = coder.readBit();
         size = coder.readBits(FIELD_SIZE, false);
 
         if (hasMultiply) {
@@ -255,7 +255,7 @@ public final class CoordTransform implements SWFEncodeable {
 
         coder.alignToByte();
 
-        hasScale = coder.readBits(1, false) != 0;
+        hasScale = coder.readBit();
 
         if (hasScale) {
             scaleSize = coder.readBits(FIELD_SIZE, false);
@@ -266,7 +266,7 @@ public final class CoordTransform implements SWFEncodeable {
             scaleY = DEFAULT_INT_SCALE;
         }
 
-        hasShear = coder.readBits(1, false) != 0;
+        hasShear = coder.readBit();
 
         if (hasShear) {
             shearSize = coder.readBits(FIELD_SIZE, false);
@@ -76,8 +76,8 @@ public final class Line implements ShapeRecord {
         // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
         size = coder.readBits(4, false) + 2;
 
-        if (coder.readBits(1, false) == 0) {
-            if (coder.readBits(1, false) == 0) {
+        if (!coder.readBit()) {
+            if (!coder.readBit()) {
                 xCoord = coder.readBits(size, true);
                 yCoord = 0;
             } else {
@@ -0,0 +1,346 @@
+/*
+ * PackedRecords.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.shape;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.Copyable;
+import com.flagstone.transform.coder.SWFEncoder;
+
+/**
+ * PackedRecords holds the records decoded for a Shape in arrays rather than
+ * as a list of separate objects. The type of each record is stored in one
+ * array and the coordinates of each Line and Curve are stored consecutively
+ * in another. ShapeStyle and ShapeStyle2 records, which are much less common,
+ * are kept as objects. The records are only converted to ShapeRecord objects
+ * if the list of objects in the Shape is accessed.
+ */
+final class PackedRecords implements Copyable<PackedRecords> {
+    /** Type used to identify a Line. */
+    private static final byte LINE = 0;
+    /** Type used to identify a Curve. */
+    private static final byte CURVE = 1;
+    /** Type used to identify a ShapeStyle or ShapeStyle2. */
+    private static final byte STYLE = 2;
+
+    /** The initial number of records that can be stored. */
+    private static final int INITIAL_SIZE = 64;
+    /** Number of coordinates stored for a Line. */
+    private static final int LINE_COORDS = 2;
+    /** Number of coordinates stored for a Curve. */
+    private static final int CURVE_COORDS = 4;
+    /** Number of bits used to encode the type, size and flag for a Line. */
+    private static final int LINE_BITS = 7;
+    /** Number of bits used to encode the type and size for a Curve. */
+    private static final int CURVE_BITS = 6;
+    /** Number of bits used to encode the type of a Line or Curve. */
+    private static final int TYPE_WIDTH = 2;
+    /** Number of bits used to encode the size of the coordinates. */
+    private static final int SIZE_WIDTH = 4;
+    /** The minimum number of bits used to encode a coordinate. */
+    private static final int MIN_SIZE = 2;
+    /** Number of bits to shift to get the sign of an int. */
+    private static final int SIGN_SHIFT = 31;
+
+    /** The type of each record. */
+    private byte[] types;
+    /** The number of records. */
+    private int count;
+    /** The coordinates for the lines and curves. */
+    private int[] coords;
+    /** The number of coordinates. */
+    private int coordCount;
+    /** The ShapeStyle and ShapeStyle2 records. */
+    private ShapeRecord[] styles;
+    /** The number of style records. */
+    private int styleCount;
+    /** The number of bits used to encode the coordinates of each record. */
+    private transient byte[] sizes;
+
+    /**
+     * Creates an empty table of records.
+     */
+    PackedRecords() {
+        types = new byte[INITIAL_SIZE];
+        coords = new int[INITIAL_SIZE * LINE_COORDS];
+        styles = new ShapeRecord[1];
+    }
+
+    /**
+     * Creates a PackedRecords object with a copy of the records from another
+     * PackedRecords object.
+     *
+     * @param object
+     *            a PackedRecords object from which the records will be
+     *            copied.
+     */
+    PackedRecords(final PackedRecords object) {
+        count = object.count;
+        types = Arrays.copyOf(object.types, count);
+        coordCount = object.coordCount;
+        coords = Arrays.copyOf(object.coords, coordCount);
+        styleCount = object.styleCount;
+        styles = new ShapeRecord[styleCount];
+        for (int i = 0; i < styleCount; i++) {
+            styles[i] = object.styles[i].copy();
+        }
+    }
+
+    /**
+     * Add a Line.
+     *
+     * @param xCoord the x-coordinate of the end of the line.
+     * @param yCoord the y-coordinate of the end of the line.
+     */
+    void addLine(final int xCoord, final int yCoord) {
+        ensureCapacity(LINE_COORDS);
+        types[count++] = LINE;
+        coords[coordCount++] = xCoord;
+        coords[coordCount++] = yCoord;
+    }
+
+    /**
+     * Add a Curve.
+     *
+     * @param controlX the x-coordinate of the control point.
+     * @param controlY the y-coordinate of the control point.
+     * @param anchorX the x-coordinate of the anchor point.
+     * @param anchorY the y-coordinate of the anchor point.
+     */
+    void addCurve(final int controlX, final int controlY,
+            final int anchorX, final int anchorY) {
+        ensureCapacity(CURVE_COORDS);
+        types[count++] = CURVE;
+        coords[coordCount++] = controlX;
+        coords[coordCount++] = controlY;
+        coords[coordCount++] = anchorX;
+        coords[coordCount++] = anchorY;
+    }
+
+    /**
+     * Add a ShapeStyle or ShapeStyle2 record.
+     *
+     * @param style the record.
+     */
+    void addStyle(final ShapeRecord style) {
+        ensureCapacity(0);
+        if (styleCount == styles.length) {
+            styles = Arrays.copyOf(styles, styleCount << 1);
+        }
+        types[count++] = STYLE;
+        styles[styleCount++] = style;
+    }
+
+    /**
+     * Make sure there is space for another record and its coordinates.
+     *
+     * @param length the number of coordinates in the record.
+     */
+    private void ensureCapacity(final int length) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count << 1);
+        }
+        if (coordCount + length > coords.length) {
+            coords = Arrays.copyOf(coords, coords.length << 1);
+        }
+    }
+
+    /**
+     * Release any unused space in the arrays once all the records have been
+     * added.
+     */
+    void trim() {
+        types = Arrays.copyOf(types, count);
+        coords = Arrays.copyOf(coords, coordCount);
+        styles = Arrays.copyOf(styles, styleCount);
+    }
+
+    /**
+     * Create the list of ShapeRecord objects for the records.
+     *
+     * @return a list of Line, Curve, ShapeStyle and ShapeStyle2 objects.
+     */
+    List<ShapeRecord> getObjects() {
+        final List<ShapeRecord> list = new ArrayList<ShapeRecord>(count);
+        int coord = 0;
+        int style = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (types[i] == LINE) {
+                list.add(new Line(coords[coord], coords[coord + 1]));
+                coord += LINE_COORDS;
+            } else if (types[i] == CURVE) {
+                list.add(new Curve(coords[coord], coords[coord + 1],
+                        coords[coord + 2], coords[coord + 3]));
+                coord += CURVE_COORDS;
+            } else {
+                list.add(styles[style++]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the ShapeStyle and ShapeStyle2 records.
+     *
+     * @return a list of the style records in the order they were added.
+     */
+    List<ShapeRecord> getStyles() {
+        return Arrays.asList(styles).subList(0, styleCount);
+    }
+
+    /** {@inheritDoc} */
+    public PackedRecords copy() {
+        return new PackedRecords(this);
+    }
+
+    /**
+     * Prepare the records to be encoded. This is the same as calling
+     * prepareToEncode() on each record in turn.
+     *
+     * @param context
+     *            a Context object used to pass information between objects.
+     * @return the number of bits required to encode the records.
+     */
+    int prepareToEncode(final Context context) {
+        if (sizes == null || sizes.length < count) {
+            sizes = new byte[count];
+        }
+
+        int shapeBits = context.get(Context.SHAPE_SIZE);
+        int numberOfBits = 0;
+        int coord = 0;
+        int style = 0;
+        int size;
+        int bits;
+
+        for (int i = 0; i < count; i++) {
+            if (types[i] == STYLE) {
+                context.put(Context.SHAPE_SIZE, shapeBits);
+                numberOfBits += styles[style++].prepareToEncode(context);
+                shapeBits = context.get(Context.SHAPE_SIZE);
+            } else {
+                if (types[i] == LINE) {
+                    final int xCoord = coords[coord++];
+                    final int yCoord = coords[coord++];
+                    size = Coder.size(magnitude(xCoord)
+                            | magnitude(yCoord) | 1);
+                    if (xCoord != 0 && yCoord != 0) {
+                        bits = LINE_BITS + (size << 1);
+                    } else {
+                        bits = LINE_BITS + 1 + size;
+                    }
+                } else {
+                    size = Coder.size(magnitude(coords[coord])
+                            | magnitude(coords[coord + 1])
+                            | magnitude(coords[coord + 2])
+                            | magnitude(coords[coord + 3]) | 1);
+                    coord += CURVE_COORDS;
+                    bits = CURVE_BITS + (size << 2);
+                }
+                sizes[i] = (byte) size;
+                shapeBits += bits;
+                numberOfBits += bits;
+            }
+        }
+        context.put(Context.SHAPE_SIZE, shapeBits);
+        return numberOfBits;
+    }
+
+    /**
+     * Encode the records. This is the same as calling encode() on each record
+     * in turn.
+     *
+     * @param coder
+     *            an SWFEncoder object.
+     * @param context
+     *            a Context object used to pass information between objects.
+     * @throws IOException
+     *             if an error occurs while encoding the records.
+     */
+    void encode(final SWFEncoder coder, final Context context)
+            throws IOException {
+        int coord = 0;
+        int style = 0;
+        int size;
+
+        for (int i = 0; i < count; i++) {
+            if (types[i] == LINE) {
+                final int xCoord = coords[coord++];
+                final int yCoord = coords[coord++];
+                size = sizes[i];
+                coder.writeBits(Coder.BIT0 | Coder.BIT1, TYPE_WIDTH);
+                coder.writeBits(size - MIN_SIZE, SIZE_WIDTH);
+                if (xCoord != 0 && yCoord != 0) {
+                    coder.writeBits(1, 1);
+                    coder.writeBits(xCoord, size);
+                    coder.writeBits(yCoord, size);
+                } else if (xCoord == 0) {
+                    coder.writeBits(0, 1);
+                    coder.writeBits(1, 1);
+                    coder.writeBits(yCoord, size);
+                } else {
+                    coder.writeBits(0, 1);
+                    coder.writeBits(0, 1);
+                    coder.writeBits(xCoord, size);
+                }
+            } else if (types[i] == CURVE) {
+                size = sizes[i];
+                coder.writeBits(Coder.BIT1, TYPE_WIDTH);
+                coder.writeBits(size - MIN_SIZE, SIZE_WIDTH);
+                coder.writeBits(coords[coord++], size);
+                coder.writeBits(coords[coord++], size);
+                coder.writeBits(coords[coord++], size);
+                coder.writeBits(coords[coord++], size);
+            } else {
+                styles[style++].encode(coder, context);
+            }
+        }
+    }
+
+    /**
+     * Get the magnitude of a signed value, used when calculating the number
+     * of bits required to encode a set of values.
+     *
+     * @param value a signed integer.
+     * @return the value if it is positive, otherwise -value - 1.
+     */
+    private static int magnitude(final int value) {
+        return value ^ (value >> SIGN_SHIFT);
+    }
+}
@@ -31,8 +31,8 @@
 
 package com.flagstone.transform.shape;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,6 +48,14 @@ import com.flagstone.transform.coder.*;
  * simplify the design of these classes and provides no added functionality
  * other than acting as a container class.
  * </p>
+ *
+ * <p>
+ * When a Shape is decoded using the default ShapeDecoder the Line and Curve
+ * records are stored in arrays rather than as separate objects, which uses
+ * much less memory for complex shapes. The list of ShapeRecord objects is
+ * only created when getObjects() is called. Shapes that are not modified are
+ * encoded directly from the arrays.
+ * </p>
  */
 public final class Shape implements SWFEncodeable, Copyable<Shape> {
 
@@ -73,16 +81,21 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
     public static Shape shapeFromData(final ShapeData shapeData)
                 throws IOException {
         final byte[] data = shapeData.getData();
-        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
-        final SWFDecoder coder = new SWFDecoder(stream);
+        final SWFDecoder coder = CoderPool.getDecoder(ByteBuffer.wrap(data));
         final Context context = new Context();
         context.setRegistry(DecoderRegistry.getDefault());
         context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE);
-        return new Shape(coder, context);
+        try {
+            return new Shape(coder, context);
+        } finally {
+            CoderPool.release(coder);
+        }
     }
 
     /** List of ShapeRecords that draws the shape. */
     private List<ShapeRecord> objects;
+    /** The decoded records, if the list of objects has not been created. */
+    private PackedRecords records;
     /** Indicates whether the ShapeRecords are already encoded. */
     private transient boolean isEncoded;
 
@@ -104,8 +117,6 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
     @SuppressWarnings("PMD.AssignmentInOperand")
     public Shape(final SWFDecoder coder, final Context context)
             throws IOException {
-        objects = new ArrayList<ShapeRecord>();
-
         final int sizes = coder.readByte();
         context.put(Context.FILL_SIZE, (sizes & Coder.NIB1)
                 >> Coder.TO_LOWER_NIB);
@@ -114,8 +125,18 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
         final SWFFactory<ShapeRecord> decoder = context.getRegistry()
             .getShapeDecoder();
 
-        while (coder.scanBits(6, false) != 0) {
-            decoder.getObject(objects, coder, context);
+        if (decoder instanceof ShapeDecoder) {
+            final ShapeDecoder shapeDecoder = (ShapeDecoder) decoder;
+            records = new PackedRecords();
+            while (coder.scanBits(6, false) != 0) {
+                shapeDecoder.getRecord(records, coder, context);
+            }
+            records.trim();
+        } else {
+            objects = new ArrayList<ShapeRecord>();
+            while (coder.scanBits(6, false) != 0) {
+                decoder.getObject(objects, coder, context);
+            }
         }
         coder.readBits(6, false);
         coder.alignToByte();
@@ -147,10 +168,14 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
      *            a Shape object from which the values will be copied.
      */
     public Shape(final Shape object) {
-        objects = new ArrayList<ShapeRecord>(object.objects.size());
+        if (object.records == null) {
+            objects = new ArrayList<ShapeRecord>(object.objects.size());
 
-        for (final ShapeRecord record : object.objects) {
-            objects.add(record.copy());
+            for (final ShapeRecord record : object.objects) {
+                objects.add(record.copy());
+            }
+        } else {
+            records = object.records.copy();
         }
     }
 
@@ -165,7 +190,7 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
         if (anObject == null) {
             throw new IllegalArgumentException();
         }
-        objects.add(anObject);
+        getObjects().add(anObject);
         return this;
     }
 
@@ -175,9 +200,33 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
      * @return the list of shape records.
      */
     public List<ShapeRecord> getObjects() {
+        if (records != null) {
+            objects = records.getObjects();
+            records = null;
+        }
         return objects;
     }
 
+    /**
+     * Get the ShapeStyle and ShapeStyle2 records that change the styles used
+     * to draw the shape. Unlike getObjects() the list of Lines and Curves is
+     * not created for a decoded shape.
+     *
+     * @return the list of ShapeStyle and ShapeStyle2 records.
+     */
+    public List<ShapeRecord> getStyles() {
+        if (records != null) {
+            return records.getStyles();
+        }
+        final List<ShapeRecord> list = new ArrayList<ShapeRecord>();
+        for (final ShapeRecord record : objects) {
+            if (record instanceof ShapeStyle || record instanceof ShapeStyle2) {
+                list.add(record);
+            }
+        }
+        return list;
+    }
+
     /**
      * Sets the list of shape records.
      *
@@ -189,6 +238,7 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
             throw new IllegalArgumentException();
         }
         objects = list;
+        records = null;
     }
 
     /** {@inheritDoc} */
@@ -198,7 +248,8 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
 
     @Override
     public String toString() {
-        return String.format(FORMAT, objects);
+        return String.format(FORMAT, records == null ? objects
+                : records.getObjects());
     }
 
     /** {@inheritDoc} */
@@ -206,7 +257,8 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
 
         int length = 0;
 
-        isEncoded = objects.size() == 1 && objects.get(0) instanceof ShapeData;
+        isEncoded = records == null && objects.size() == 1
+                && objects.get(0) instanceof ShapeData;
 
         if (isEncoded) {
             length += objects.get(0).prepareToEncode(context);
@@ -216,8 +268,12 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
             // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 6 LINES
             int numberOfBits = 21; // Includes end of shape and align to byte
 
-            for (final ShapeRecord record : objects) {
-                numberOfBits += record.prepareToEncode(context);
+            if (records == null) {
+                for (final ShapeRecord record : objects) {
+                    numberOfBits += record.prepareToEncode(context);
+                }
+            } else {
+                numberOfBits += records.prepareToEncode(context);
             }
             length += (numberOfBits >>> 3);
         }
@@ -235,8 +291,12 @@ public final class Shape implements SWFEncodeable, Copyable<Shape> {
             bits |= context.get(Context.LINE_SIZE);
             coder.writeByte(bits);
 
-            for (final ShapeRecord record : objects) {
-                record.encode(coder, context);
+            if (records == null) {
+                for (final ShapeRecord record : objects) {
+                    record.encode(coder, context);
+                }
+            } else {
+                records.encode(coder, context);
             }
             // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
             coder.writeBits(0, 6); // End of shape
@@ -45,6 +45,11 @@ import com.flagstone.transform.coder.SWFFactory;
  * Shape is drawn.
  */
 public final class ShapeDecoder implements SWFFactory<ShapeRecord> {
+    /** Number of bits used to encode the size of the coordinates. */
+    private static final int SIZE_WIDTH = 4;
+    /** The minimum number of bits used to encode a coordinate. */
+    private static final int MIN_SIZE = 2;
+
     /** {@inheritDoc} */
     public void getObject(final List<ShapeRecord> list, final SWFDecoder coder,
             final Context context) throws IOException {
@@ -57,18 +62,81 @@ public final class ShapeDecoder implements SWFFactory<ShapeRecord> {
         } else if (type == (Coder.BIT0 | Coder.BIT1)) {
             record = new Line(coder);
         } else {
-            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 2 LINES
-            final int flags = (type << Coder.TO_UPPER_NIB)
-                    + coder.readBits(4, false);
+            record = getStyle(type, coder, context);
+        }
+       list.add(record);
+    }
 
-            final int tag = context.get(Context.TYPE);
-            if (tag == MovieTypes.DEFINE_SHAPE_4
-                    || tag == MovieTypes.DEFINE_MORPH_SHAPE_2) {
-                record = new ShapeStyle2(flags, coder, context);
+    /**
+     * Decode a ShapeRecord and add it to a PackedRecords object. Lines and
+     * Curves are added directly to the arrays without creating objects.
+     *
+     * @param records
+     *            the PackedRecords object the record is added to.
+     * @param coder
+     *            an SWFDecoder object that contains the encoded Flash data.
+     * @param context
+     *            a Context object used to pass information between objects.
+     *
+     * @throws IOException
+     *             if an error occurs while decoding the data.
+     */
+    void getRecord(final PackedRecords records, final SWFDecoder coder,
+            final Context context) throws IOException {
+
+        final int type = coder.readBits(2, false);
+
+        if (type == Coder.BIT1) {
+            final int size = coder.readBits(SIZE_WIDTH, false) + MIN_SIZE;
+            final int controlX = coder.readBits(size, true);
+            final int controlY = coder.readBits(size, true);
+            final int anchorX = coder.readBits(size, true);
+            final int anchorY = coder.readBits(size, true);
+            records.addCurve(controlX, controlY, anchorX, anchorY);
+        } else if (type == (Coder.BIT0 | Coder.BIT1)) {
+            final int size = coder.readBits(SIZE_WIDTH, false) + MIN_SIZE;
+            if (coder.readBit()) {
+                final int xCoord = coder.readBits(size, true);
+                final int yCoord = coder.readBits(size, true);
+                records.addLine(xCoord, yCoord);
+            } else if (coder.readBit()) {
+                records.addLine(0, coder.readBits(size, true));
             } else {
-                record = new ShapeStyle(flags, coder, context);
+                records.addLine(coder.readBits(size, true), 0);
             }
+        } else {
+            records.addStyle(getStyle(type, coder, context));
         }
-       list.add(record);
+    }
+
+    /**
+     * Decode a ShapeStyle or ShapeStyle2 record.
+     *
+     * @param type
+     *            the first two bits of the flags for the record.
+     * @param coder
+     *            an SWFDecoder object that contains the encoded Flash data.
+     * @param context
+     *            a Context object used to pass information between objects.
+     * @return the decoded record.
+     *
+     * @throws IOException
+     *             if an error occurs while decoding the data.
+     */
+    private ShapeRecord getStyle(final int type, final SWFDecoder coder,
+            final Context context) throws IOException {
+        // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 2 LINES
+        final int flags = (type << Coder.TO_UPPER_NIB)
+                + coder.readBits(4, false);
+
+        final ShapeRecord record;
+        final int tag = context.get(Context.TYPE);
+        if (tag == MovieTypes.DEFINE_SHAPE_4
+                || tag == MovieTypes.DEFINE_MORPH_SHAPE_2) {
+            record = new ShapeStyle2(flags, coder, context);
+        } else {
+            record = new ShapeStyle(flags, coder, context);
+        }
+        return record;
     }
 }
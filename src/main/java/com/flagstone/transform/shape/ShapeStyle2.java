@@ -86,6 +86,8 @@ public final class ShapeStyle2 implements ShapeRecord {
     private transient boolean hasFill;
     /** Indicates whether a relative move is specified. */
     private transient boolean hasMove;
+    /** Number of bits used to encode the move coordinates. */
+    private transient int moveSize;
 
     /**
      * Creates and initialises a ShapeStyle object using values encoded
@@ -477,9 +479,8 @@ public final class ShapeStyle2 implements ShapeRecord {
         int numberOfBits = 6;
 
         if (hasMove) {
-            final int fieldSize = Math.max(Coder.size(moveX), Coder
-                    .size(moveY));
-            numberOfBits += 5 + fieldSize * 2;
+            moveSize = Coder.maxSize(moveX, moveY);
+            numberOfBits += 5 + moveSize * 2;
         }
 
         numberOfBits += hasFill ? context.get(Context.FILL_SIZE) : 0;
@@ -552,12 +553,10 @@ public final class ShapeStyle2 implements ShapeRecord {
         coder.writeBits(hasMove ? 1 : 0, 1);
 
         if (hasMove) {
-            final int fieldSize = Math.max(Coder.size(moveX), Coder
-                    .size(moveY));
             // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
-            coder.writeBits(fieldSize, 5);
-            coder.writeBits(moveX, fieldSize);
-            coder.writeBits(moveY, fieldSize);
+            coder.writeBits(moveSize, 5);
+            coder.writeBits(moveX, moveSize);
+            coder.writeBits(moveY, moveSize);
         }
 
         if (hasFill) {
@@ -39,6 +39,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 
@@ -53,7 +54,8 @@ import com.flagstone.transform.image.ImageTag;
  * BMPDecoder decodes Bitmap images (BMP) so they can be used in a Flash file.
  */
 @SuppressWarnings("PMD.TooManyMethods")
-public final class BMPDecoder implements ImageProvider, ImageDecoder {
+public final class BMPDecoder
+        implements ImageProvider, ImageDecoder, ZipDecoder {
 
     /** Level used to indicate an opaque colour. */
     private static final int OPAQUE = 255;
@@ -141,6 +143,10 @@ public final class BMPDecoder implements ImageProvider, ImageDecoder {
     private transient byte[] table;
     /** The image data. */
     private transient byte[] image;
+    /** The executor used to compress the image in parallel. */
+    private transient ExecutorService executor;
+    /** The level used to compress the image. */
+    private transient int level = Deflater.DEFAULT_COMPRESSION;
 
     /** The number of bits per pixel. */
     private transient int bitDepth;
@@ -229,6 +235,24 @@ public final class BMPDecoder implements ImageProvider, ImageDecoder {
     @Override
 	public ImageDecoder newDecoder() {
         return new BMPDecoder();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCompressionLevel(final int compression) {
+        level = ImageDeflater.checkLevel(compression);
     }
 
     /** {@inheritDoc} */
@@ -780,14 +804,6 @@ public final class BMPDecoder implements ImageProvider, ImageDecoder {
      * @return the compressed image.
      */
     private byte[] zip(final byte[] img) {
-        final Deflater deflater = new Deflater();
-        deflater.setInput(img);
-        deflater.finish();
-
-        final byte[] compressedData = new byte[img.length * 2];
-        final int bytesCompressed = deflater.deflate(compressedData);
-        final byte[] newData = Arrays.copyOf(compressedData, bytesCompressed);
-
-        return newData;
+        return ImageDeflater.zip(executor, level, img);
     }
 }
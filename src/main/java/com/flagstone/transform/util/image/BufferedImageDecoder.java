@@ -47,6 +47,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 
@@ -66,7 +67,8 @@ import com.flagstone.transform.image.ImageTag;
  * be extracted from a Flash movie.
  */
 @SuppressWarnings("PMD.TooManyMethods")
-public final class BufferedImageDecoder implements ImageProvider, ImageDecoder {
+public final class BufferedImageDecoder
+        implements ImageProvider, ImageDecoder, ZipDecoder {
     /** Message used to signal that the image cannot be decoded. */
     private static final String BAD_FORMAT = "Unsupported format";
     /** The number of bytes per pixel in a RGBA format image. */
@@ -132,12 +134,34 @@ public final class BufferedImageDecoder implements ImageProvider, ImageDecoder {
     private transient byte[] table;
     /** The image data. */
     private transient byte[] image;
+    /** The executor used to compress the image in parallel. */
+    private transient ExecutorService executor;
+    /** The level used to compress the image. */
+    private transient int level = Deflater.DEFAULT_COMPRESSION;
 
     /** {@inheritDoc} */
     public ImageDecoder newDecoder() {
         return new BufferedImageDecoder();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCompressionLevel(final int compression) {
+        level = ImageDeflater.checkLevel(compression);
+    }
+
     /** {@inheritDoc} */
     public void read(final File file) throws IOException, DataFormatException {
          read(new FileInputStream(file));
@@ -865,15 +889,7 @@ public final class BufferedImageDecoder implements ImageProvider, ImageDecoder {
      * @return the compressed image.
      */
     private byte[] zip(final byte[] img) {
-        final Deflater deflater = new Deflater();
-        deflater.setInput(img);
-        deflater.finish();
-
-        final byte[] compressedData = new byte[img.length * 2];
-        final int bytesCompressed = deflater.deflate(compressedData);
-        final byte[] newData = Arrays.copyOf(compressedData, bytesCompressed);
-
-        return newData;
+        return ImageDeflater.zip(executor, level, img);
     }
 
     /**
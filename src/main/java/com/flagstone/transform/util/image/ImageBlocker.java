@@ -31,7 +31,6 @@
 
 package com.flagstone.transform.util.image;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.zip.Deflater;
 
@@ -41,8 +40,11 @@ import com.flagstone.transform.video.ImageBlock;
  * ImageBlocker is used to sub-divide an image into a set of blocks so they can
  * be streamed using Screen Video. Image blocks are compared so only pixel
  * information for the portions of the image that change are sent.
+ * ScreenVideoEncoder performs the comparison with the previous image and
+ * generates the ScreenPacket for each frame.
  *
  * @see ImageBlock
+ * @see ScreenVideoEncoder
  */
 public final class ImageBlocker {
 
@@ -124,14 +126,9 @@ public final class ImageBlocker {
      * @return the compressed image.
      */
     private byte[] zip(final byte[] image, final int length) {
-        final Deflater deflater = new Deflater();
-        deflater.setInput(image, 0, length);
-        deflater.finish();
-
-        final byte[] compressedData = new byte[image.length];
-        final int bytesCompressed = deflater.deflate(compressedData);
-        final byte[] newData = Arrays.copyOf(compressedData, bytesCompressed);
-
-        return newData;
+        final ImageDeflater zip = new ImageDeflater(null,
+                Deflater.DEFAULT_COMPRESSION, length);
+        zip.write(image, 0, length);
+        return zip.finish();
     }
 }
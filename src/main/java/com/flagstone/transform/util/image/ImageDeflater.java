@@ -0,0 +1,160 @@
+/*
+ * ImageDeflater.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.flagstone.transform.coder.ParallelDeflaterOutputStream;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+/**
+ * ImageDeflater compresses the image data for DefineImage and DefineImage2
+ * objects using the ZLIB format. If an ExecutorService is supplied the data
+ * is divided into blocks which are compressed in parallel using a
+ * ParallelDeflaterOutputStream, otherwise a single Deflater is used. In both
+ * cases the result is a single ZLIB stream.
+ */
+final class ImageDeflater {
+
+    /** Size of the buffer used when compressing with a single Deflater. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Expected compression ratio used to size the output buffer. */
+    private static final int RATIO = 4;
+
+    /** The Deflater used if the data is not compressed in parallel. */
+    private final transient Deflater deflater;
+    /** The buffer holding the compressed data. */
+    private final transient ByteArrayOutputStream buffer;
+    /** The stream used to compress the data. */
+    private final transient OutputStream stream;
+
+    /**
+     * Check that a compression level is supported by Deflater.
+     *
+     * @param level the compression level, in the range 0..9 or
+     * Deflater.DEFAULT_COMPRESSION (-1).
+     * @return the compression level.
+     */
+    static int checkLevel(final int level) {
+        if ((level < Deflater.DEFAULT_COMPRESSION)
+                || (level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentRangeException(
+                    Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION,
+                    level);
+        }
+        return level;
+    }
+
+    /**
+     * Compress an image.
+     *
+     * @param service the ExecutorService used to compress the data in
+     * parallel, may be null.
+     * @param level the compression level, see Deflater.
+     * @param img the image data.
+     * @return the compressed image.
+     */
+    public static byte[] zip(final ExecutorService service, final int level,
+            final byte[] img) {
+        final ImageDeflater zip = new ImageDeflater(service, level, img.length);
+        zip.write(img, 0, img.length);
+        return zip.finish();
+    }
+
+    /**
+     * Create an ImageDeflater.
+     *
+     * @param service the ExecutorService used to compress the data in
+     * parallel, may be null.
+     * @param level the compression level, see Deflater.
+     * @param length the number of bytes that will be compressed, used to
+     * estimate the size of the compressed data.
+     */
+    public ImageDeflater(final ExecutorService service, final int level,
+            final int length) {
+        buffer = new ByteArrayOutputStream(length / RATIO + BUFFER_SIZE);
+        if (service == null) {
+            deflater = new Deflater(level);
+            stream = new DeflaterOutputStream(buffer, deflater, BUFFER_SIZE);
+        } else {
+            deflater = null;
+            stream = new ParallelDeflaterOutputStream(buffer, service, level,
+                    Deflater.DEFAULT_STRATEGY);
+        }
+    }
+
+    /**
+     * Add data to be compressed.
+     *
+     * @param data the array containing the data.
+     * @param offset the offset in the array to the first byte to compress.
+     * @param length the number of bytes to compress.
+     */
+    public void write(final byte[] data, final int offset, final int length) {
+        try {
+            stream.write(data, offset, length);
+        } catch (final IOException e) {
+            end();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Finish compressing the data.
+     *
+     * @return the compressed data.
+     */
+    public byte[] finish() {
+        try {
+            stream.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            end();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Release the resources used by the Deflater.
+     */
+    private void end() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+}
@@ -39,7 +39,9 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 
 import com.flagstone.transform.image.ImageTag;
 
@@ -120,11 +122,54 @@ import com.flagstone.transform.image.ImageTag;
  * centre of the shape. Other points may be defined to suit the alignment of the
  * shape when it is placed on the display list.
  * </P>
+ *
+ * <P>
+ * The image data for DefineImage and DefineImage2 objects is compressed
+ * using the ZLIB format. If an ExecutorService is set using setExecutor()
+ * then large images are divided into blocks which are compressed in
+ * parallel. The result is still a single ZLIB stream.
+ * </P>
  */
 public final class ImageFactory {
 
     /** The object used to decode the image. */
     private transient ImageDecoder decoder;
+    /** The executor used to compress images in parallel. */
+    private transient ExecutorService executor;
+    /** The level used to compress images. */
+    private transient int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Sets the ExecutorService used to compress the image data in parallel
+     * when the image definition is created.
+     *
+     * @param service the ExecutorService used to compress blocks of the
+     * image. May be null in which case the image is compressed using the
+     * current thread.
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /**
+     * Get the compression level used for the image data.
+     *
+     * @return the compression level in the range -1..9.
+     */
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level passed to the decoder when the image
+     * definition is created.
+     *
+     * @param compression the compression level, in the range 0..9 or
+     * Deflater.DEFAULT_COMPRESSION (-1).
+     */
+    public void setCompressionLevel(final int compression) {
+        level = ImageDeflater.checkLevel(compression);
+    }
 
     /**
      * Create an image definition for the image located in the specified file.
@@ -214,6 +259,10 @@ public final class ImageFactory {
      * in Flash.
      */
     public ImageTag defineImage(final int identifier) {
+        if (decoder instanceof ZipDecoder) {
+            ((ZipDecoder) decoder).setExecutor(executor);
+            ((ZipDecoder) decoder).setCompressionLevel(level);
+        }
         return decoder.defineImage(identifier);
     }
 
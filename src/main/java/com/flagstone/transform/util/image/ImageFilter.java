@@ -102,7 +102,7 @@ public final class ImageFilter {
         int src = 0;
 
         for (int row = height - 1; row >= 0; row--) {
-            src = row * width;
+            src = row * width * RGB_CHANNELS;
 
             for (int col = 0; col < width; col++, src += RGB_CHANNELS) {
                 out[dst++] = image[src];
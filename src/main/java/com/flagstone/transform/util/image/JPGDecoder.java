@@ -41,7 +41,6 @@ import java.net.URLConnection;
 import java.util.Arrays;
 import java.util.zip.DataFormatException;
 
-import com.flagstone.transform.coder.BigDecoder;
 import com.flagstone.transform.coder.Coder;
 import com.flagstone.transform.image.DefineJPEGImage2;
 import com.flagstone.transform.image.ImageTag;
@@ -54,6 +53,22 @@ public final class JPGDecoder implements ImageProvider, ImageDecoder {
 
     /** Message used to signal that the image cannot be decoded. */
     private static final String BAD_FORMAT = "Unsupported format";
+    /** Size of the buffer used when the length of an image is not known. */
+    private static final int BUFFER_SIZE = 65536;
+    /** Bit mask applied to bytes when converting to unsigned integers. */
+    private static final int BYTE_MASK = 255;
+    /** The byte that starts every marker. */
+    private static final byte MARKER = (byte) 0xFF;
+    /** A fill byte, which may precede any marker. */
+    private static final int FILL = 0xFFFF;
+    /** The marker for temporary use in arithmetic coding. */
+    private static final int TEM = 0xFF01;
+    /** The number of restart markers. */
+    private static final int RST_COUNT = 8;
+    /** The second byte of the first restart marker. */
+    private static final int RST_FIRST = 0xD0;
+    /** The second byte of the last restart marker. */
+    private static final int RST_LAST = 0xD7;
 
     /** The width of the image in pixels. */
     private transient int width;
@@ -65,7 +80,12 @@ public final class JPGDecoder implements ImageProvider, ImageDecoder {
     /** {@inheritDoc} */
     @Override
 	public void read(final File file) throws IOException, DataFormatException {
-        read(new FileInputStream(file));
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            read(stream, (int) file.length());
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -73,7 +93,7 @@ public final class JPGDecoder implements ImageProvider, ImageDecoder {
 	public void read(final URL url) throws IOException, DataFormatException {
         final URLConnection connection = url.openConnection();
 
-        if (!connection.getContentType().equals("image/bmp")) {
+        if (!connection.getContentType().equals("image/jpeg")) {
             throw new DataFormatException(BAD_FORMAT);
         }
 
@@ -83,7 +103,12 @@ public final class JPGDecoder implements ImageProvider, ImageDecoder {
             throw new FileNotFoundException(url.getFile());
         }
 
-        read(url.openStream());
+        final InputStream stream = url.openStream();
+        try {
+            read(stream, length);
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -99,133 +124,137 @@ public final class JPGDecoder implements ImageProvider, ImageDecoder {
     }
 
     /** {@inheritDoc} */
-     @Override
+    @Override
 	public void read(final InputStream stream)
-                 throws DataFormatException, IOException {
-
-         final BigDecoder coder = new BigDecoder(stream);
-
-         int marker;
-         int length;
-
-         do {
-             marker = coder.readUnsignedShort();
-             switch (marker) {
-                 case JPEGInfo.SOI:
-                 case JPEGInfo.EOI:
-                     copyTag(marker, 0, coder);
-                     break;
-                 case JPEGInfo.SOF0:
-                 case JPEGInfo.SOF2:
-                 case JPEGInfo.DHT:
-                 case JPEGInfo.DQT:
-                 case JPEGInfo.COM:
-                     length = coder.readUnsignedShort();
-                     copyTag(marker, length, coder);
-                     break;
-                 case JPEGInfo.SOS:
-                     length = coder.readUnsignedShort();
-                     copyTag(marker, length, coder);
-                     readEntropyData(coder);
-                     break;
-                 case JPEGInfo.DRI:
-                     copyTag(marker, 0, coder);
-                     readEntropyData(coder);
-                     break;
-                 default:
-                     if ((marker & JPEGInfo.APP) == JPEGInfo.APP) {
-                         length = coder.readUnsignedShort();
-                         copyTag(marker, length, coder);
-                     } else {
-                         copyTag(marker, 0, coder);
-                     }
-                     break;
-             }
-         } while (marker != JPEGInfo.EOI);
-
-         final JPEGInfo info = new JPEGInfo();
-         info.decode(image);
-         width = info.getWidth();
-         height = info.getHeight();
+            throws DataFormatException, IOException {
+        read(stream, stream.available());
     }
 
     /**
-     * Copy a JPEG tag.
-     * @param marker the identifier for the tag.
-     * @param length the length of the tag data.
-     * @param coder the decoder containing the JPEG image data.
+     * Read a JPEG image from a stream. The image is read into a single array
+     * then the markers are checked to make sure the image is complete.
+     *
+     * @param stream the stream containing the image.
+     * @param size the length of the image, if known, otherwise zero. The
+     * length is used to set the size of the array for the image.
+     *
+     * @throws DataFormatException if the image is not in JPEG format.
      * @throws IOException if there is an error reading the image data.
      */
-    private void copyTag(final int marker, final int length,
-            final BigDecoder coder) throws IOException {
-        byte[] bytes;
-        if (length > 0) {
-            bytes = new byte[length + 2];
-        } else {
-            bytes = new byte[2];
-        }
-        bytes[0] = (byte) (marker >> Coder.TO_LOWER_BYTE);
-        bytes[1] = (byte) marker;
+    private void read(final InputStream stream, final int size)
+            throws DataFormatException, IOException {
+        byte[] data = new byte[size > 0 ? size : BUFFER_SIZE];
+        int count = 0;
+        int read;
 
-        if (length > 0) {
-            bytes[2] = (byte) (length >> Coder.TO_LOWER_BYTE);
-            bytes[3] = (byte) length;
-            coder.readBytes(bytes, 4, length - 2);
+        while (true) {
+            if (count == data.length) {
+                read = stream.read();
+                if (read == -1) {
+                    break;
+                }
+                data = Arrays.copyOf(data, data.length << 1);
+                data[count++] = (byte) read;
+            }
+            read = stream.read(data, count, data.length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
         }
-        final int imgLength = image.length;
-        image = Arrays.copyOf(image, imgLength + bytes.length);
-        System.arraycopy(bytes, 0, image, imgLength, bytes.length);
+
+        final int length = scanMarkers(data, count);
+        image = length == data.length ? data : Arrays.copyOf(data, length);
+
+        final JPEGInfo info = new JPEGInfo();
+        info.decode(image);
+        width = info.getWidth();
+        height = info.getHeight();
     }
 
     /**
-     * Read the encoded image data from a JPEG image.
-     * @param coder the decoder containing the JPEG image data.
-     * @throws IOException if there is an error reading the image data.
+     * Check the markers in a JPEG image and find the end of the image.
+     *
+     * @param data the array containing the image.
+     * @param count the number of bytes in the array.
+     * @return the number of bytes up to and including the end of image marker.
+     *
+     * @throws DataFormatException if the image does not start with a start of
+     * image marker or the end of image marker is not found.
+     */
+    private int scanMarkers(final byte[] data, final int count)
+            throws DataFormatException {
+        if (count < 2 || readMarker(data, 0) != JPEGInfo.SOI) {
+            throw new DataFormatException(BAD_FORMAT);
+        }
+
+        int index = 2;
+        int marker;
+
+        while (index + 2 <= count) {
+            if (data[index] != MARKER) {
+                throw new DataFormatException(BAD_FORMAT);
+            }
+            marker = readMarker(data, index);
+
+            if (marker == FILL) {
+                index++;
+            } else if (marker == JPEGInfo.EOI) {
+                return index + 2;
+            } else if (marker == TEM || (marker >= JPEGInfo.RST
+                    && marker < JPEGInfo.RST + RST_COUNT)) {
+                index += 2;
+            } else if (index + 4 > count) {
+                break;
+            } else {
+                index += 2 + readMarker(data, index + 2);
+                if (marker == JPEGInfo.SOS) {
+                    index = scanEntropyData(data, index, count);
+                }
+            }
+        }
+        throw new DataFormatException(BAD_FORMAT);
+    }
+
+    /**
+     * Find the end of the entropy coded data that follows a start of scan
+     * marker. Stuffed zero bytes and restart markers are part of the data.
+     *
+     * @param data the array containing the image.
+     * @param start the offset of the first byte of entropy coded data.
+     * @param count the number of bytes in the array.
+     * @return the offset of the marker following the data.
      */
-    private void readEntropyData(final BigDecoder coder) throws IOException {
-        byte[] bytes = new byte[2048];
-        int index = 0;
-        int current;
+    private int scanEntropyData(final byte[] data, final int start,
+            final int count) {
+        final int limit = count - 1;
+        int index = start;
         int next;
 
-        do {
-        	coder.mark();
-        	current = coder.readByte();
-
-        	if (current == 255) {
-        		next = coder.readByte();
-
-        		if (next == 0) {
-            		if (index + 2 >= bytes.length) {
-                        final int imgLength = image.length;
-                        image = Arrays.copyOf(image, imgLength + index);
-                        System.arraycopy(bytes, 0, image, imgLength, index);
-                        index = 0;
-            		}
-            		bytes[index++] = (byte) current;
-            		bytes[index++] = (byte) next;
-        		} else {
-            		if (index > 0) {
-                        final int imgLength = image.length;
-                        image = Arrays.copyOf(image, imgLength + index);
-                        System.arraycopy(bytes, 0, image, imgLength, index);
-                        index = 0;
-            		}
-        			coder.reset();
-        			break;
-        		}
-        	} else {
-        		if (index >= bytes.length) {
-                    final int imgLength = image.length;
-                    image = Arrays.copyOf(image, imgLength + bytes.length);
-                    System.arraycopy(bytes, 0, image, imgLength, bytes.length);
-                    index = 0;
-        		}
-        		bytes[index++] = (byte) current;
-        	}
-        	coder.unmark();
-
-        } while (true);
+        while (index < limit) {
+            if (data[index] == MARKER) {
+                next = data[index + 1] & BYTE_MASK;
+                if (next != 0 && (next < RST_FIRST || next > RST_LAST)) {
+                    return index;
+                }
+                index += 2;
+            } else {
+                index++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read a 16-bit big-endian value, either a marker or a length.
+     *
+     * @param data the array containing the image.
+     * @param index the offset of the value in the array.
+     * @return the value.
+     */
+    private static int readMarker(final byte[] data, final int index) {
+        return ((data[index] & BYTE_MASK) << Coder.TO_UPPER_BYTE)
+                | (data[index + 1] & BYTE_MASK);
     }
 
     /** {@inheritDoc} */
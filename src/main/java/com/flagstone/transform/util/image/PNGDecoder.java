@@ -31,7 +31,6 @@
 
 package com.flagstone.transform.util.image;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -41,6 +40,7 @@ import java.io.RandomAccessFile;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -57,7 +57,8 @@ import com.flagstone.transform.image.ImageTag;
  * be used in a Flash file.
  */
 @SuppressWarnings("PMD.TooManyMethods")
-public final class PNGDecoder implements ImageProvider, ImageDecoder {
+public final class PNGDecoder
+        implements ImageProvider, ImageDecoder, ZipDecoder {
 
     /** Alpha channel value for opaque colours. */
     private static final int OPAQUE = 255;
@@ -190,6 +191,28 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /** Binary data taken directly from encoded image. */
     private transient byte[] chunkData = new byte[0];
+    /** Decompresses the image data as each IDAT block is read. */
+    private transient Inflater inflater;
+    /** The encoded pixels for the row being decoded. */
+    private transient byte[] current;
+    /** The decoded pixels for the previous row in the same pass. */
+    private transient byte[] previous;
+    /** The filter for the row being decoded, or -1 if not yet read. */
+    private transient int filter;
+    /** The number of bytes read for the row being decoded. */
+    private transient int rowBytes;
+    /** The number of bytes in each row in the current pass. */
+    private transient int scanLength;
+    /** The number of bits in each pixel. */
+    private transient int bitsPerPixel;
+    /** The number of bytes in each pixel, rounded up to one byte. */
+    private transient int bytesPerPixel;
+    /** The current pass for interlaced images, zero otherwise. */
+    private transient int pass;
+    /** The row in the image being decoded. */
+    private transient int row;
+    /** The offset in bits to the next sample in the current row. */
+    private transient int bitOffset;
 
     /** The format of the decoded image. */
     private transient ImageFormat format;
@@ -201,6 +224,10 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     private transient byte[] table;
     /** The image data. */
     private transient byte[] image;
+    /** The executor used to compress the image in parallel. */
+    private transient ExecutorService executor;
+    /** The level used to compress the image. */
+    private transient int level = Deflater.DEFAULT_COMPRESSION;
 
     /** {@inheritDoc} */
     @Override
@@ -208,18 +235,46 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         return new PNGDecoder();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCompressionLevel(final int compression) {
+        level = ImageDeflater.checkLevel(compression);
+    }
+
     /** {@inheritDoc} */
     @Override
 	public void read(final File file) throws IOException, DataFormatException {
         final ImageInfo info = new ImageInfo();
-        info.setInput(new RandomAccessFile(file, "r"));
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            info.setInput(input);
 //        info.setDetermineImageNumber(true);
 
-        if (!info.check()) {
-            throw new DataFormatException(BAD_FORMAT);
+            if (!info.check()) {
+                throw new DataFormatException(BAD_FORMAT);
+            }
+        } finally {
+            input.close();
         }
 
-        read(new FileInputStream(file));
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            read(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -232,7 +287,12 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
             throw new FileNotFoundException(url.getFile());
         }
 
-        read(url.openStream());
+        final InputStream stream = url.openStream();
+        try {
+            read(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -244,15 +304,11 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         switch (format) {
         case IDX8:
             object = new DefineImage(identifier, width, height,
-                    table.length / RGBA_CHANNELS,
-                    zip(filter.merge(
-                            filter.adjustScan(width, height, image), table)));
+                    table.length / RGBA_CHANNELS, zipIndexed(colours(table)));
             break;
         case IDXA:
             object = new DefineImage2(identifier, width, height,
-                    table.length / RGBA_CHANNELS,
-                    zip(filter.mergeAlpha(
-                            filter.adjustScan(width, height, image), table)));
+                    table.length / RGBA_CHANNELS, zipIndexed(table));
             break;
         case RGB5:
             object = new DefineImage(identifier, width, height,
@@ -273,6 +329,25 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         return object;
     }
 
+    /**
+     * Convert the colour table for an opaque indexed image to the format used
+     * in a DefineImage object, with blue, green and red channels only.
+     * @param colors the colour table.
+     * @return the colour table in BGR format.
+     */
+    private byte[] colours(final byte[] colors) {
+        final byte[] entries = new byte[colors.length / RGBA_CHANNELS
+                                        * RGB_CHANNELS];
+        int dst = 0;
+
+        for (int i = 0; i < colors.length; i += RGBA_CHANNELS) {
+            entries[dst++] = colors[i + BLUE];
+            entries[dst++] = colors[i + GREEN];
+            entries[dst++] = colors[i + RED];
+        }
+        return entries;
+    }
+
     /**
      * Apply the level for the alpha channel to the red, green and blue colour
      * channels for encoding the image so it can be added to a Flash movie.
@@ -305,9 +380,9 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         int chunkType = 0;
         boolean moreChunks = true;
 
-        chunkData = new byte[0];
         transparentGrey = -1;
         transparentRed = -1;
+        image = null;
 
         for (int i = 0; i < 8; i++) {
             if (coder.readByte() != SIGNATURE[i]) {
@@ -315,33 +390,44 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
             }
         }
 
-        while (moreChunks) {
-            length = coder.readInt();
-            chunkType = coder.readInt();
-            coder.mark();
-            switch (chunkType) {
-            case IHDR:
-                decodeIHDR(coder);
-                break;
-            case PLTE:
-                decodePLTE(coder, length);
-                break;
-            case TRNS:
-                decodeTRNS(coder, length);
-                break;
-            case IDAT:
-                decodeIDAT(coder, length);
-                break;
-            case IEND:
-                moreChunks = false;
-                coder.skip(length + 4);
-                break;
-            default:
-                coder.skip(length + 4);
-                break;
+        inflater = new Inflater();
+        try {
+            while (moreChunks) {
+                length = coder.readInt();
+                chunkType = coder.readInt();
+                switch (chunkType) {
+                case IHDR:
+                    decodeIHDR(coder);
+                    break;
+                case PLTE:
+                    decodePLTE(coder, length);
+                    break;
+                case TRNS:
+                    decodeTRNS(coder, length);
+                    break;
+                case IDAT:
+                    decodeIDAT(coder, length);
+                    break;
+                case IEND:
+                    moreChunks = false;
+                    coder.skip(length + 4);
+                    break;
+                default:
+                    coder.skip(length + 4);
+                    break;
+                }
+            }
+            if (image == null) {
+                startImage();
             }
+            finishImage();
+        } finally {
+            inflater.end();
+            inflater = null;
+            chunkData = new byte[0];
+            current = null;
+            previous = null;
         }
-        decodeImage();
     }
 
     /**
@@ -464,145 +550,153 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
     }
 
     /**
-     * Decode the image data, IDAT, block from a PNG image.
+     * Decode the image data, IDAT, block from a PNG image. The block is
+     * uncompressed and each row of pixels is decoded as soon as all its data
+     * is available.
      * @param coder the decoder containing the image data.
      * @param length the length of the block in bytes.
      * @throws IOException if there is an error decoding the data.
+     * @throws DataFormatException if the image data cannot be uncompressed
+     * or is in an unsupported format.
      */
     private void decodeIDAT(final BigDecoder coder, final int length)
-            throws IOException {
-        final int currentLength = chunkData.length;
-        final int newLength = currentLength + length;
-
-        final byte[] data = new byte[newLength];
-
-        System.arraycopy(chunkData, 0, data, 0, currentLength);
-
-        for (int i = currentLength; i < newLength; i++) {
-            data[i] = (byte) coder.readByte();
+            throws IOException, DataFormatException {
+        if (image == null) {
+            startImage();
         }
-
-        chunkData = data;
-
+        if (chunkData.length < length) {
+            chunkData = new byte[length];
+        }
+        coder.readBytes(chunkData, 0, length);
         coder.readInt(); // crc
+
+        inflater.setInput(chunkData, 0, length);
+        decodeRows();
     }
 
     /**
-     * Decode a PNG encoded image.
-     * @throws IOException if there is an error decoding the data.
-     * @throws DataFormatException if the image cannot be decoded.
+     * Allocate the image and the buffers used to decode each row.
      */
-    private void decodeImage() throws IOException, DataFormatException {
-
+    private void startImage() {
         if ((format == ImageFormat.IDX8) || (format == ImageFormat.IDXA)) {
             image = new byte[height * width];
         } else {
             image = new byte[height * width * RGBA_CHANNELS];
         }
 
+        bitsPerPixel = bitDepth * colorComponents;
+        bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
+
+        final int rowWidth = (width * bitsPerPixel + 7) >> 3;
+        current = new byte[rowWidth];
+        previous = new byte[rowWidth];
+
+        pass = 0;
+        row = 0;
+        filter = -1;
+        rowBytes = 0;
+
         if (interlaceMethod == 1) {
-            decodeInterlaced();
+            row = START_ROW[0];
+            findPass();
         } else {
-            decodeProgressive();
+            scanLength = rowWidth;
         }
     }
 
     /**
-     * Decode an interlaced image.
+     * Uncompress the image data that is available and decode each row that
+     * is complete.
      * @throws IOException if there is an error reading the image data.
-     * @throws DataFormatException if the image is in an unsupported format.
+     * @throws DataFormatException if the image data cannot be uncompressed
+     * or is in an unsupported format.
      */
-    private void decodeInterlaced() throws IOException, DataFormatException {
-
-        final byte[] encodedImage = unzip(chunkData);
-        final int bitsPerPixel = bitDepth * colorComponents;
-        final int bitsPerRow = width * bitsPerPixel;
-        final int rowWidth = (bitsPerRow + 7) >> 3;
-        final int bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
-
-        final byte[] current = new byte[rowWidth];
-        final byte[] previous = new byte[rowWidth];
-
-        for (int i = 0; i < rowWidth; i++) {
-            previous[i] = (byte) 0;
-        }
-
-        int imageIndex = 0;
-
-        int row = 0;
-        int col = 0;
-        int filter = 0;
+    private void decodeRows() throws IOException, DataFormatException {
+        int count;
 
-        int scanBits = 0;
-        int scanLength = 0;
-
-        for (int pass = 0; pass < 7; pass++) {
-            for (row = START_ROW[pass]; (row < height)
-                    && (imageIndex < encodedImage.length);
-                    row += ROW_STEP[pass]) {
-                for (col = START_COLUMN[pass], scanBits = 0; col < width;
-                        col += COLUMN_STEP[pass]) {
-                    scanBits += bitsPerPixel;
+        while (row < height) {
+            if (filter == -1) {
+                if (inflater.inflate(current, 0, 1) == 0) {
+                    break;
                 }
-
-                scanLength = (scanBits + 7) >> 3;
-                filter = encodedImage[imageIndex++];
-
-                for (int i = 0; i < scanLength; i++, imageIndex++) {
-                    current[i] = (imageIndex < encodedImage.length)
-                            ? encodedImage[imageIndex] : previous[i];
+                filter = current[0];
+                rowBytes = 0;
+            }
+            if (rowBytes < scanLength) {
+                count = inflater.inflate(current, rowBytes,
+                        scanLength - rowBytes);
+                rowBytes += count;
+                if (rowBytes < scanLength) {
+                    break;
                 }
-
-                defilter(filter, bytesPerPixel, scanLength, current, previous);
-                deblock(row, current, START_COLUMN[pass], COLUMN_STEP[pass]);
-                System.arraycopy(current, 0, previous, 0, scanLength);
             }
+            decodeRow();
         }
     }
 
     /**
-     * Decode a progressive-scan image.
+     * Decode a row once all the data has been uncompressed then move to the
+     * next row in the image.
      * @throws IOException if there is an error reading the image data.
      * @throws DataFormatException if the image is in an unsupported format.
      */
-    private void decodeProgressive() throws IOException, DataFormatException {
+    private void decodeRow() throws IOException, DataFormatException {
+        defilter(filter, bytesPerPixel, scanLength, current, previous);
 
-        final byte[] data = unzip(chunkData);
-        final int bitsPerPixel = bitDepth * colorComponents;
-        final int bitsPerRow = width * bitsPerPixel;
-        final int rowWidth = (bitsPerRow + 7) >> 3;
-        final int bytesPerPixel = (bitsPerPixel < 8) ? 1 : bitsPerPixel / 8;
-
-        final byte[] current = new byte[rowWidth];
-        final byte[] previous = new byte[rowWidth];
-
-        for (int i = 0; i < rowWidth; i++) {
-            previous[i] = (byte) 0;
+        if (interlaceMethod == 1) {
+            deblock(row, current, START_COLUMN[pass], COLUMN_STEP[pass]);
+            row += ROW_STEP[pass];
+        } else {
+            deblock(row, current, 0, 1);
+            row++;
         }
+        final byte[] swap = previous;
+        previous = current;
+        current = swap;
+        filter = -1;
+
+        if (interlaceMethod == 1 && row >= height) {
+            pass++;
+            findPass();
+        }
+    }
 
-        int index = 0;
-        int row = 0;
-        int col = 0;
-        int filter = 0;
-        int scanBits = 0;
-        int scanLength = 0;
-
-        for (row = 0; (row < height) && (index < data.length); row++) {
-            for (col = 0, scanBits = 0; col < width; col++) {
-                 scanBits += bitsPerPixel;
+    /**
+     * Move to the first pass of an interlaced image, starting with the
+     * current one, that contains pixels and set the length of each row.
+     */
+    private void findPass() {
+        int columns = 0;
+
+        while (pass < START_ROW.length) {
+            row = START_ROW[pass];
+            columns = (width - START_COLUMN[pass] + COLUMN_STEP[pass] - 1)
+                    / COLUMN_STEP[pass];
+            if (row < height && columns > 0) {
+                break;
             }
+            pass++;
+        }
 
-            scanLength = (scanBits + 7) >> 3;
-            filter = data[index++];
-
-            for (int i = 0; i < scanLength; i++, index++) {
-                current[i] = (index < data.length)
-                        ? data[index] : previous[i];
-            }
+        if (pass == START_ROW.length) {
+            row = height;
+        } else {
+            scanLength = (columns * bitsPerPixel + 7) >> 3;
+            Arrays.fill(previous, (byte) 0);
+        }
+    }
 
-            defilter(filter, bytesPerPixel, scanLength, current, previous);
-            deblock(row, current, 0, 1);
-            System.arraycopy(current, 0, previous, 0, scanLength);
+    /**
+     * Decode the last row if the image data ended part way through it. The
+     * missing pixels are taken from the previous row.
+     * @throws IOException if there is an error reading the image data.
+     * @throws DataFormatException if the image is in an unsupported format.
+     */
+    private void finishImage() throws IOException, DataFormatException {
+        if (filter != -1 && row < height) {
+            System.arraycopy(previous, rowBytes, current, rowBytes,
+                    scanLength - rowBytes);
+            decodeRow();
         }
     }
 
@@ -753,37 +847,34 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a block of image data.
-     * @param row the current row in the decoded image.
-     * @param current the encoded block data.
+     * @param line the current row in the decoded image.
+     * @param pixels the encoded block data.
      * @param start the offset in the image row.
      * @param inc the size of each pixel.
-     * @throws IOException if there is an error reading the data.
      * @throws DataFormatException if the image is encoded in an unsupported
      * format.
      */
-    private void deblock(final int row, final byte[] current,
-            final int start, final int inc)
-            throws IOException, DataFormatException {
+    private void deblock(final int line, final byte[] pixels,
+            final int start, final int inc) throws DataFormatException {
 
-        final ByteArrayInputStream stream = new ByteArrayInputStream(current);
-        final BigDecoder coder = new BigDecoder(stream);
+        bitOffset = 0;
 
         for (int col = start; col < width; col += inc) {
             switch (colorType) {
             case GREYSCALE:
-                decodeGreyscale(coder, row, col);
+                decodeGreyscale(pixels, line, col);
                 break;
             case TRUE_COLOUR:
-                decodeTrueColour(coder, row, col);
+                decodeTrueColour(pixels, line, col);
                 break;
             case INDEXED_COLOUR:
-                decodeIndexedColour(coder, row, col);
+                decodeIndexedColour(pixels, line, col);
                 break;
             case ALPHA_GREYSCALE:
-                decodeAlphaGreyscale(coder, row, col);
+                decodeAlphaGreyscale(pixels, line, col);
                 break;
             case ALPHA_TRUECOLOUR:
-                decodeAlphaTrueColour(coder, row, col);
+                decodeAlphaTrueColour(pixels, line, col);
                 break;
             default:
                 throw new DataFormatException(BAD_FORMAT);
@@ -791,162 +882,157 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         }
     }
 
+    /**
+     * Read the next sample from a row of pixels.
+     * @param pixels the decoded row.
+     * @return the value of the sample, using bitDepth bits.
+     */
+    private int readSample(final byte[] pixels) {
+        final int index = bitOffset >>> 3;
+        final int value;
+
+        if (bitDepth == DEPTH_16) {
+            value = ((pixels[index] & UNSIGNED_BYTE) << Coder.TO_UPPER_BYTE)
+                    | (pixels[index + 1] & UNSIGNED_BYTE);
+        } else if (bitDepth == DEPTH_8) {
+            value = pixels[index] & UNSIGNED_BYTE;
+        } else {
+            value = ((pixels[index] & UNSIGNED_BYTE)
+                    >>> (8 - bitDepth - (bitOffset & 7)))
+                    & ((1 << bitDepth) - 1);
+        }
+        bitOffset += bitDepth;
+        return value;
+    }
+
     /**
      * Decode a grey-scale pixel with no transparency.
-     * @param coder the decode containing the image data.
-     * @param row the row number of the pixel in the image.
+     * @param pixels the decoded row containing the image data.
+     * @param line the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeGreyscale(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
-        int pixel = 0;
-        byte colour = 0;
+    private void decodeGreyscale(final byte[] pixels, final int line,
+            final int col) throws DataFormatException {
+        final byte colour = greyLevel(readSample(pixels));
+
+        int index = line * (width << 2) + (col << 2);
+
+        image[index++] = colour;
+        image[index++] = colour;
+        image[index++] = colour;
+        image[index++] = (byte) transparentGrey;
+    }
+
+    /**
+     * Convert a grey-scale sample to an 8-bit colour level.
+     * @param pixel the sample.
+     * @return the level for the red, green and blue channels.
+     * @throws DataFormatException if the bit depth is not supported.
+     */
+    private byte greyLevel(final int pixel) throws DataFormatException {
+        final byte colour;
 
         switch (bitDepth) {
         case DEPTH_1:
-            pixel = coder.readBits(bitDepth, false);
             colour = (byte) MONOCHROME[pixel];
             break;
         case DEPTH_2:
-            pixel = coder.readBits(bitDepth, false);
             colour = (byte) GREYCSALE2[pixel];
             break;
         case DEPTH_4:
-            pixel = coder.readBits(bitDepth, false);
             colour = (byte) GREYCSALE4[pixel];
             break;
         case DEPTH_8:
-            pixel = coder.readByte();
             colour = (byte) pixel;
             break;
         case DEPTH_16:
-            pixel = coder.readUnsignedShort();
             colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
             break;
         default:
             throw new DataFormatException(BAD_FORMAT);
         }
-
-        int index = row * (width << 2) + (col << 2);
-
-        image[index++] = colour;
-        image[index++] = colour;
-        image[index++] = colour;
-        image[index++] = (byte) transparentGrey;
+        return colour;
     }
 
     /**
      * Decode a true colour pixel with no transparency.
-     * @param coder the decode containing the image data.
-     * @param row the row number of the pixel in the image.
+     * @param pixels the decoded row containing the image data.
+     * @param line the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeTrueColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
-        int pixel = 0;
-        byte colour = 0;
-
-        final int index = row * (width << 2) + (col << 2);
-
-        for (int i = 0; i < colorComponents; i++) {
-            if (bitDepth == DEPTH_8) {
-                pixel = coder.readByte();
-                colour = (byte) pixel;
-            } else if (bitDepth == DEPTH_16) {
-                pixel = coder.readUnsignedShort();
-                colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
-            } else {
-                throw new DataFormatException(BAD_FORMAT);
-            }
+    private void decodeTrueColour(final byte[] pixels, final int line,
+            final int col) throws DataFormatException {
+        final int index = line * (width << 2) + (col << 2);
 
-            image[index + i] = colour;
-        }
+        decodeColours(pixels, index);
         image[index + ALPHA] = (byte) transparentRed;
     }
 
+    /**
+     * Decode the colour channels of a true colour pixel.
+     * @param pixels the decoded row containing the image data.
+     * @param index the offset in the image where the pixel is written.
+     * @throws DataFormatException if the pixel data cannot be decoded.
+     */
+    private void decodeColours(final byte[] pixels, final int index)
+            throws DataFormatException {
+        if (bitDepth == DEPTH_8) {
+            for (int i = 0; i < colorComponents; i++) {
+                image[index + i] = (byte) readSample(pixels);
+            }
+        } else if (bitDepth == DEPTH_16) {
+            for (int i = 0; i < colorComponents; i++) {
+                image[index + i] = (byte) (readSample(pixels)
+                        >> Coder.TO_LOWER_BYTE);
+            }
+        } else {
+            throw new DataFormatException(BAD_FORMAT);
+        }
+    }
+
     /**
      * Decode an index colour pixel.
-     * @param coder the decode containing the image data.
-     * @param row the row number of the pixel in the image.
+     * @param pixels the decoded row containing the image data.
+     * @param line the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeIndexedColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
-        int index = 0;
-
+    private void decodeIndexedColour(final byte[] pixels, final int line,
+            final int col) throws DataFormatException {
         switch (bitDepth) {
         case DEPTH_1:
-            index = coder.readBits(bitDepth, false);
-            break;
         case DEPTH_2:
-            index = coder.readBits(bitDepth, false);
-            break;
         case DEPTH_4:
-            index = coder.readBits(bitDepth, false);
-            break;
         case DEPTH_8:
-            index = coder.readByte();
-            break;
         case DEPTH_16:
-            index = coder.readUnsignedShort();
+            image[line * width + col] = (byte) readSample(pixels);
             break;
         default:
             throw new DataFormatException(BAD_FORMAT);
         }
-        image[row * width + col] = (byte) index;
     }
 
     /**
      * Decode a grey-scale pixel with transparency.
-     * @param coder the decode containing the image data.
-     * @param row the row number of the pixel in the image.
+     * @param pixels the decoded row containing the image data.
+     * @param line the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeAlphaGreyscale(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
-        int pixel = 0;
-        byte colour = 0;
-        int alpha = 0;
+    private void decodeAlphaGreyscale(final byte[] pixels, final int line,
+            final int col) throws DataFormatException {
+        final byte colour = greyLevel(readSample(pixels));
+        final int alpha;
 
-        switch (bitDepth) {
-        case DEPTH_1:
-            pixel = coder.readBits(bitDepth, false);
-            colour = (byte) MONOCHROME[pixel];
-            alpha = coder.readBits(bitDepth, false);
-            break;
-        case DEPTH_2:
-            pixel = coder.readBits(bitDepth, false);
-            colour = (byte) GREYCSALE2[pixel];
-            alpha = coder.readBits(bitDepth, false);
-            break;
-        case DEPTH_4:
-            pixel = coder.readBits(bitDepth, false);
-            colour = (byte) GREYCSALE4[pixel];
-            alpha = coder.readBits(bitDepth, false);
-            break;
-        case DEPTH_8:
-            pixel = coder.readByte();
-            colour = (byte) pixel;
-            alpha = coder.readByte();
-            break;
-        case DEPTH_16:
-            pixel = coder.readUnsignedShort();
-            colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
-            alpha = coder.readUnsignedShort() >> Coder.TO_LOWER_BYTE;
-            break;
-        default:
-            throw new DataFormatException(BAD_FORMAT);
+        if (bitDepth == DEPTH_16) {
+            alpha = readSample(pixels) >> Coder.TO_LOWER_BYTE;
+        } else {
+            alpha = readSample(pixels);
         }
 
-        int index = row * (width << 2) + (col << 2);
+        int index = line * (width << 2) + (col << 2);
 
         image[index++] = colour;
         image[index++] = colour;
@@ -956,54 +1042,14 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
 
     /**
      * Decode a true colour pixel with transparency.
-     * @param coder the decode containing the image data.
-     * @param row the row number of the pixel in the image.
+     * @param pixels the decoded row containing the image data.
+     * @param line the row number of the pixel in the image.
      * @param col the column number of the pixel in the image.
-     * @throws IOException if there is an error decoding the data.
      * @throws DataFormatException if the pixel data cannot be decoded.
      */
-    private void decodeAlphaTrueColour(final BigDecoder coder, final int row,
-            final int col) throws IOException, DataFormatException {
-        int pixel = 0;
-        byte colour = 0;
-
-        final int index = row * (width << 2) + (col << 2);
-
-        for (int i = 0; i < colorComponents; i++) {
-            if (bitDepth == DEPTH_8) {
-                pixel = coder.readByte();
-                colour = (byte) pixel;
-            } else if (bitDepth == DEPTH_16) {
-                pixel = coder.readUnsignedShort();
-                colour = (byte) (pixel >> Coder.TO_LOWER_BYTE);
-            } else {
-                throw new DataFormatException(BAD_FORMAT);
-            }
-
-            image[index + i] = colour;
-        }
-    }
-
-    /**
-     * Uncompress the image using the ZIP format.
-     * @param bytes the compressed image data.
-     * @return the uncompressed image.
-     * @throws DataFormatException if the compressed image is not in the ZIP
-     * format or cannot be uncompressed.
-     */
-    private byte[] unzip(final byte[] bytes) throws DataFormatException {
-        final byte[] data = new byte[width * height * 8];
-        int count = 0;
-
-        final Inflater inflater = new Inflater();
-        inflater.setInput(bytes);
-        count = inflater.inflate(data);
-
-        final byte[] uncompressedData = new byte[count];
-
-        System.arraycopy(data, 0, uncompressedData, 0, count);
-
-        return uncompressedData;
+    private void decodeAlphaTrueColour(final byte[] pixels, final int line,
+            final int col) throws DataFormatException {
+        decodeColours(pixels, line * (width << 2) + (col << 2));
     }
 
     /**
@@ -1012,15 +1058,28 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
      * @return the compressed image.
      */
     private byte[] zip(final byte[] img) {
-        final Deflater deflater = new Deflater();
-        deflater.setInput(img);
-        deflater.finish();
-
-        final byte[] compressedData = new byte[img.length * 2];
-        final int bytesCompressed = deflater.deflate(compressedData);
-        final byte[] newData = Arrays.copyOf(compressedData, bytesCompressed);
+        return ImageDeflater.zip(executor, level, img);
+    }
 
-        return newData;
+    /**
+     * Compress an indexed image using the ZIP format. The colour table is
+     * followed by the rows of the image, each padded to a multiple of four
+     * bytes, without creating a copy of the image.
+     * @param colors the colour table.
+     * @return the compressed colour table and image.
+     */
+    private byte[] zipIndexed(final byte[] colors) {
+        final ImageDeflater zip = new ImageDeflater(executor, level,
+                image.length);
+        final byte[] padding = new byte[3];
+        final int pad = ((width + 3) & ~3) - width;
+
+        zip.write(colors, 0, colors.length);
+        for (int i = 0; i < height; i++) {
+            zip.write(image, i * width, width);
+            zip.write(padding, 0, pad);
+        }
+        return zip.finish();
     }
 
     /** {@inheritDoc} */
@@ -1049,7 +1108,7 @@ public final class PNGDecoder implements ImageProvider, ImageDecoder {
         	int tableIndex;
 
         	for (int i = 0, index = 0; i < image.length; i++) {
-        		tableIndex = image[i] * RGBA_CHANNELS;
+        		tableIndex = (image[i] & UNSIGNED_BYTE) * RGBA_CHANNELS;
         		copy[index++] = table[tableIndex + RED];
         		copy[index++] = table[tableIndex + GREEN];
         		copy[index++] = table[tableIndex + BLUE];
@@ -0,0 +1,462 @@
+/*
+ * ScreenVideoDecoder.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.video.VideoFrame;
+
+/**
+ * <p>
+ * ScreenVideoDecoder reconstructs the images in a Screen Video stream. Each
+ * packet is scanned to find where the data for each block starts but the
+ * blocks are not copied or decompressed. Instead the decoder records the
+ * most recent data for each block, so blocks that are replaced in later
+ * frames are never decompressed and empty blocks simply keep the data from
+ * an earlier frame. When getImage() is called only the blocks that changed
+ * since the last image was generated are decompressed, in parallel if an
+ * ExecutorService was set using setExecutor().
+ * </p>
+ *
+ * <p>
+ * To extract a single frame from a video, pass all the frames up to and
+ * including the one required to decode() then call getImage():
+ * </p>
+ *
+ * <pre>
+ * ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+ *
+ * for (VideoFrame frame : frames) {
+ *     decoder.decode(frame);
+ * }
+ * byte[] image = decoder.getImage();
+ * </pre>
+ *
+ * @see ScreenVideoEncoder
+ */
+public final class ScreenVideoDecoder {
+
+    /** Message used to signal that the packet cannot be decoded. */
+    private static final String BAD_FORMAT = "Unsupported format";
+    /** Number of colour channels in an RGBA pixel. */
+    private static final int RGBA_CHANNELS = 4;
+    /** Number of colour channels in an RGB pixel. */
+    private static final int RGB_CHANNELS = 3;
+    /** Byte offset to red channel. */
+    private static final int RED = 0;
+    /** Byte offset to green channel. */
+    private static final int GREEN = 1;
+    /** Byte offset to blue channel. */
+    private static final int BLUE = 2;
+    /** Byte offset to alpha channel. */
+    private static final int ALPHA = 3;
+    /** Alpha channel value for opaque colours. */
+    private static final int OPAQUE = 255;
+    /** Mask for reading unsigned 8-bit values. */
+    private static final int UNSIGNED_BYTE = 255;
+    /** Multiplier for the encoded value representing the block size. */
+    private static final int PIXELS_PER_BLOCK = 16;
+    /** The number of bytes in the packet header. */
+    private static final int HEADER_LENGTH = 5;
+    /** Frame type used to identify key frames. */
+    private static final int KEY_FRAME = 1;
+    /** Codec identifier for Screen Video. */
+    private static final int SCREEN_VIDEO = 3;
+
+    /** Inflaters and buffers that can be used to decompress a block. */
+    private final transient ConcurrentLinkedQueue<Expander> pool;
+
+    /** The executor used to decompress blocks in parallel. */
+    private transient ExecutorService executor;
+    /** The width of the image in pixels. */
+    private transient int imageWidth;
+    /** The height of the image in pixels. */
+    private transient int imageHeight;
+    /** The width of the blocks in pixels. */
+    private transient int blockWidth;
+    /** The height of the blocks in pixels. */
+    private transient int blockHeight;
+    /** The number of blocks in each row. */
+    private transient int columns;
+    /** The number of rows of blocks. */
+    private transient int rows;
+    /** Whether the last packet decoded was a key frame. */
+    private transient boolean keyFrame;
+    /** The packet containing the latest data for each block. */
+    private transient byte[][] sources;
+    /** The offset of the compressed data for each block in its packet. */
+    private transient int[] offsets;
+    /** The length of the compressed data for each block. */
+    private transient int[] lengths;
+    /** The blocks that changed since the image was last generated. */
+    private transient BitSet changed;
+    /** The decoded image. */
+    private transient byte[] image;
+
+    /**
+     * Creates a ScreenVideoDecoder.
+     */
+    public ScreenVideoDecoder() {
+        pool = new ConcurrentLinkedQueue<Expander>();
+        changed = new BitSet();
+    }
+
+    /**
+     * Sets the ExecutorService used to decompress the blocks in parallel.
+     *
+     * @param service the ExecutorService used to decompress the blocks. May
+     * be null in which case the blocks are decompressed using the current
+     * thread.
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /**
+     * Get the width of the video.
+     * @return the width of the image in pixels.
+     */
+    public int getWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Get the height of the video.
+     * @return the height of the image in pixels.
+     */
+    public int getHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Was the last packet decoded a key frame.
+     * @return true if the last packet contained all the blocks in the image.
+     */
+    public boolean isKeyFrame() {
+        return keyFrame;
+    }
+
+    /**
+     * Decode the next frame in a Screen Video stream.
+     *
+     * @param frame the VideoFrame containing a ScreenPacket.
+     * @throws DataFormatException if the frame does not contain a valid
+     * Screen Video packet.
+     */
+    public void decode(final VideoFrame frame) throws DataFormatException {
+        decode(frame.getData());
+    }
+
+    /**
+     * Decode the next packet in a Screen Video stream. The packet is not
+     * copied so the array must not be changed afterwards.
+     *
+     * @param packet the encoded ScreenPacket.
+     * @throws DataFormatException if the array does not contain a valid
+     * Screen Video packet.
+     */
+    public void decode(final byte[] packet) throws DataFormatException {
+        if ((packet == null) || (packet.length < HEADER_LENGTH)
+                || (packet[0] & Coder.NIB0) != SCREEN_VIDEO) {
+            throw new DataFormatException(BAD_FORMAT);
+        }
+        keyFrame = ((packet[0] & Coder.NIB1) >> Coder.ALIGN_NIB1) == KEY_FRAME;
+
+        int info = readShort(packet, 1);
+        final int blkWidth = (((info & Coder.NIB3) >> Coder.ALIGN_NIB3) + 1)
+                * PIXELS_PER_BLOCK;
+        final int imgWidth = info & Coder.LOWEST12;
+        // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+        info = readShort(packet, 3);
+        final int blkHeight = (((info & Coder.NIB3) >> Coder.ALIGN_NIB3) + 1)
+                * PIXELS_PER_BLOCK;
+        final int imgHeight = info & Coder.LOWEST12;
+
+        if ((sources == null) || (imgWidth != imageWidth)
+                || (imgHeight != imageHeight) || (blkWidth != blockWidth)
+                || (blkHeight != blockHeight)) {
+            start(imgWidth, imgHeight, blkWidth, blkHeight);
+        }
+
+        int offset = HEADER_LENGTH;
+        int length;
+
+        for (int i = 0; i < sources.length; i++) {
+            if (offset + 2 > packet.length) {
+                throw new DataFormatException(BAD_FORMAT);
+            }
+            length = readShort(packet, offset);
+            offset += 2;
+
+            if (length > 0) {
+                if (offset + length > packet.length) {
+                    throw new DataFormatException(BAD_FORMAT);
+                }
+                sources[i] = packet;
+                offsets[i] = offset;
+                lengths[i] = length;
+                changed.set(i);
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * Get the image for the last frame decoded. Only the blocks that changed
+     * since the last time the image was generated are decompressed.
+     *
+     * @return a copy of the image containing 32-bit RGBA pixels with the top
+     * row first, in the same format as ImageDecoder.getImage().
+     * @throws DataFormatException if the data for a block could not be
+     * decompressed.
+     */
+    public byte[] getImage() throws DataFormatException {
+        if (sources == null) {
+            return new byte[0];
+        }
+        if (image == null) {
+            image = new byte[imageWidth * imageHeight * RGBA_CHANNELS];
+        }
+
+        final List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+        for (int i = changed.nextSetBit(0); i >= 0;
+                i = changed.nextSetBit(i + 1)) {
+            final BlockTask task = new BlockTask(i, sources[i], offsets[i],
+                    lengths[i]);
+            if (executor == null) {
+                task.call();
+            } else {
+                tasks.add(executor.submit(task));
+            }
+        }
+
+        for (final Future<Void> task : tasks) {
+            waitFor(task);
+        }
+        changed.clear();
+
+        return Arrays.copyOf(image, image.length);
+    }
+
+    /**
+     * Release the Inflaters used to decompress the blocks.
+     */
+    public void end() {
+        Expander expander = pool.poll();
+        while (expander != null) {
+            expander.inflater.end();
+            expander = pool.poll();
+        }
+    }
+
+    /**
+     * Set the dimensions of the video, discarding any blocks decoded so far.
+     *
+     * @param imgWidth the width of the image in pixels.
+     * @param imgHeight the height of the image in pixels.
+     * @param blkWidth the width of the blocks in pixels.
+     * @param blkHeight the height of the blocks in pixels.
+     * @throws DataFormatException if the image has no pixels.
+     */
+    private void start(final int imgWidth, final int imgHeight,
+            final int blkWidth, final int blkHeight)
+            throws DataFormatException {
+        if ((imgWidth == 0) || (imgHeight == 0)) {
+            throw new DataFormatException(BAD_FORMAT);
+        }
+        if ((blkWidth != blockWidth) || (blkHeight != blockHeight)) {
+            end();
+        }
+        imageWidth = imgWidth;
+        imageHeight = imgHeight;
+        blockWidth = blkWidth;
+        blockHeight = blkHeight;
+        columns = (imageWidth + blockWidth - 1) / blockWidth;
+        rows = (imageHeight + blockHeight - 1) / blockHeight;
+        sources = new byte[rows * columns][];
+        offsets = new int[rows * columns];
+        lengths = new int[rows * columns];
+        changed.clear();
+        image = null;
+    }
+
+    /**
+     * Read an unsigned 16-bit big-endian value.
+     *
+     * @param data the array containing the value.
+     * @param offset the offset of the first byte.
+     * @return the value.
+     */
+    private int readShort(final byte[] data, final int offset) {
+        return ((data[offset] & UNSIGNED_BYTE) << Coder.TO_UPPER_BYTE)
+                | (data[offset + 1] & UNSIGNED_BYTE);
+    }
+
+    /**
+     * Wait for a block to be decompressed.
+     *
+     * @param task the task decompressing the block.
+     * @throws DataFormatException if the block could not be decompressed.
+     */
+    private void waitFor(final Future<Void> task) throws DataFormatException {
+        try {
+            task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof DataFormatException) {
+                throw (DataFormatException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Expander holds an Inflater and the buffer used to decompress a block
+     * so they can be reused for later blocks.
+     */
+    private final class Expander {
+        /** The Inflater used to decompress the block. */
+        private final transient Inflater inflater;
+        /** The pixels in the block. */
+        private final transient byte[] pixels;
+
+        /**
+         * Create an Expander with a buffer large enough for a full block.
+         */
+        Expander() {
+            inflater = new Inflater();
+            pixels = new byte[blockWidth * blockHeight * RGB_CHANNELS];
+        }
+    }
+
+    /**
+     * BlockTask decompresses a block and copies the pixels into the image,
+     * converting them from the bottom-up BGR format used in Screen Video.
+     */
+    private final class BlockTask implements Callable<Void> {
+        /** The index of the block. */
+        private final transient int index;
+        /** The packet containing the block. */
+        private final transient byte[] data;
+        /** The offset of the compressed data in the packet. */
+        private final transient int offset;
+        /** The length of the compressed data. */
+        private final transient int length;
+
+        /**
+         * Create a task to decompress a block.
+         *
+         * @param block the index of the block.
+         * @param packet the packet containing the block.
+         * @param start the offset of the compressed data in the packet.
+         * @param size the length of the compressed data.
+         */
+        BlockTask(final int block, final byte[] packet, final int start,
+                final int size) {
+            index = block;
+            data = packet;
+            offset = start;
+            length = size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Void call() throws DataFormatException {
+            final int xOffset = (index % columns) * blockWidth;
+            final int yOffset = (index / columns) * blockHeight;
+            final int xSpan = Math.min(blockWidth, imageWidth - xOffset);
+            final int ySpan = Math.min(blockHeight, imageHeight - yOffset);
+            final int size = xSpan * ySpan * RGB_CHANNELS;
+
+            Expander expander = pool.poll();
+            if (expander == null) {
+                expander = new Expander();
+            }
+            final Inflater inflater = expander.inflater;
+            final byte[] pixels = expander.pixels;
+
+            try {
+                inflater.setInput(data, offset, length);
+                int count = 0;
+                int bytes;
+                while (count < size && !inflater.finished()) {
+                    bytes = inflater.inflate(pixels, count, size - count);
+                    if (bytes == 0 && (inflater.needsInput()
+                            || inflater.needsDictionary())) {
+                        break;
+                    }
+                    count += bytes;
+                }
+                if (count != size) {
+                    throw new DataFormatException(BAD_FORMAT);
+                }
+
+                int src = 0;
+                int dst;
+
+                for (int k = 0; k < ySpan; k++) {
+                    dst = ((imageHeight - 1 - yOffset - k) * imageWidth
+                            + xOffset) * RGBA_CHANNELS;
+                    for (int l = 0; l < xSpan; l++, dst += RGBA_CHANNELS) {
+                        image[dst + BLUE] = pixels[src++];
+                        image[dst + GREEN] = pixels[src++];
+                        image[dst + RED] = pixels[src++];
+                        image[dst + ALPHA] = (byte) OPAQUE;
+                    }
+                }
+            } finally {
+                inflater.reset();
+                pool.offer(expander);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * ScreenVideoEncoder.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+import com.flagstone.transform.exception.IllegalArgumentValueException;
+import com.flagstone.transform.video.ImageBlock;
+import com.flagstone.transform.video.ScreenPacket;
+import com.flagstone.transform.video.VideoFrame;
+
+/**
+ * <p>
+ * ScreenVideoEncoder encodes a sequence of images as ScreenPackets so they
+ * can be displayed using the Screen Video codec. The encoder keeps a copy of
+ * the last image it encoded so only the blocks that changed are included in
+ * each frame. The blocks that did not change are encoded as empty blocks.
+ * A key frame, containing all the blocks in the image, is generated for the
+ * first frame then at regular intervals set using setKeyFrameInterval().
+ * </p>
+ *
+ * <p>
+ * Images are passed to the encoder in the same format as returned by
+ * ImageDecoder.getImage() - 32-bit RGBA pixels with the top row first. If an
+ * ExecutorService is set using setExecutor() then the blocks are compressed
+ * in parallel. The Deflater objects used to compress the blocks are reused
+ * so end() should be called when the encoder is no longer needed.
+ * </p>
+ *
+ * <pre>
+ * ScreenVideoEncoder encoder = new ScreenVideoEncoder(width, height, 64, 64);
+ *
+ * for (int i = 1; i &lt;= frames; i++) {
+ *     movie.add(encoder.encode(identifier, i, image[i]));
+ *     ...
+ * }
+ * encoder.end();
+ * </pre>
+ *
+ * @see ImageBlocker
+ */
+public final class ScreenVideoEncoder {
+
+    /** The default number of frames between key frames. */
+    public static final int DEFAULT_INTERVAL = 30;
+
+    /** Number of colour channels in an RGBA pixel. */
+    private static final int RGBA_CHANNELS = 4;
+    /** Number of colour channels in an RGB pixel. */
+    private static final int RGB_CHANNELS = 3;
+    /** Byte offset to red channel. */
+    private static final int RED = 0;
+    /** Byte offset to green channel. */
+    private static final int GREEN = 1;
+    /** Byte offset to blue channel. */
+    private static final int BLUE = 2;
+    /** The sizes, in pixels, that can be used for the blocks. */
+    private static final int[] BLOCK_SIZES = {16, 32, 48, 64, 80, 96, 112,
+        128, 144, 160, 176, 192, 208, 224, 240, 256 };
+    /** Block used for the areas of the image that did not change. */
+    private static final ImageBlock EMPTY = new ImageBlock(0, 0, new byte[0]);
+
+    /** The width of the images in pixels. */
+    private final transient int imageWidth;
+    /** The height of the images in pixels. */
+    private final transient int imageHeight;
+    /** The width of the blocks in pixels. */
+    private final transient int blockWidth;
+    /** The height of the blocks in pixels. */
+    private final transient int blockHeight;
+    /** The number of blocks in each row. */
+    private final transient int columns;
+    /** The number of rows of blocks. */
+    private final transient int rows;
+    /** Deflaters and buffers that can be used to compress a block. */
+    private final transient ConcurrentLinkedQueue<Compressor> pool;
+
+    /** The executor used to compress blocks in parallel. */
+    private transient ExecutorService executor;
+    /** The level used to compress the blocks. */
+    private transient int level = Deflater.DEFAULT_COMPRESSION;
+    /** The number of frames between key frames. */
+    private transient int interval = DEFAULT_INTERVAL;
+    /** The number of frames encoded. */
+    private transient int count;
+    /** The last image that was encoded. */
+    private transient byte[] previous;
+
+    /**
+     * Creates a ScreenVideoEncoder.
+     *
+     * @param imgWidth the width of the images in pixels, in the range
+     * 1..4095.
+     * @param imgHeight the height of the images in pixels, in the range
+     * 1..4095.
+     * @param blkWidth the width of the blocks in pixels, a multiple of 16 in
+     * the range 16..256.
+     * @param blkHeight the height of the blocks in pixels, a multiple of 16
+     * in the range 16..256.
+     */
+    public ScreenVideoEncoder(final int imgWidth, final int imgHeight,
+            final int blkWidth, final int blkHeight) {
+        checkImageSize(imgWidth);
+        checkImageSize(imgHeight);
+        checkBlockSize(blkWidth);
+        checkBlockSize(blkHeight);
+        imageWidth = imgWidth;
+        imageHeight = imgHeight;
+        blockWidth = blkWidth;
+        blockHeight = blkHeight;
+        columns = (imageWidth + blockWidth - 1) / blockWidth;
+        rows = (imageHeight + blockHeight - 1) / blockHeight;
+        pool = new ConcurrentLinkedQueue<Compressor>();
+    }
+
+    /**
+     * Check the width or height of an image.
+     * @param size the width or height in pixels.
+     */
+    private void checkImageSize(final int size) {
+        if ((size < 1) || (size > Coder.LOWEST12)) {
+            throw new IllegalArgumentRangeException(1, Coder.LOWEST12, size);
+        }
+    }
+
+    /**
+     * Check the width or height of a block.
+     * @param size the width or height in pixels.
+     */
+    private void checkBlockSize(final int size) {
+        if (Arrays.binarySearch(BLOCK_SIZES, size) < 0) {
+            throw new IllegalArgumentValueException(BLOCK_SIZES, size);
+        }
+    }
+
+    /**
+     * Sets the ExecutorService used to compress the blocks in parallel.
+     *
+     * @param service the ExecutorService used to compress the blocks. May be
+     * null in which case the blocks are compressed using the current thread.
+     */
+    public void setExecutor(final ExecutorService service) {
+        executor = service;
+    }
+
+    /**
+     * Get the compression level used for the blocks.
+     *
+     * @return the compression level in the range -1..9.
+     */
+    public int getCompressionLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level used for the blocks.
+     *
+     * @param compression the compression level, in the range 0..9 or
+     * Deflater.DEFAULT_COMPRESSION (-1).
+     */
+    public void setCompressionLevel(final int compression) {
+        level = ImageDeflater.checkLevel(compression);
+    }
+
+    /**
+     * Get the number of frames between key frames.
+     *
+     * @return the key frame interval.
+     */
+    public int getKeyFrameInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of frames between key frames. An interval of 1
+     * generates a key frame for every image.
+     *
+     * @param frames the key frame interval, in the range 1..65535.
+     */
+    public void setKeyFrameInterval(final int frames) {
+        if ((frames < 1) || (frames > Coder.USHORT_MAX)) {
+            throw new IllegalArgumentRangeException(
+                    1, Coder.USHORT_MAX, frames);
+        }
+        interval = frames;
+    }
+
+    /**
+     * Encode an image as the next frame in a video stream.
+     *
+     * @param identifier the unique identifier of the DefineVideo object for
+     * the video stream.
+     * @param frame the number of the frame in the video.
+     * @param image the image containing 32-bit RGBA pixels.
+     * @return the VideoFrame containing the encoded image.
+     * @throws IOException if an error occurs compressing or encoding the
+     * blocks.
+     */
+    public VideoFrame encode(final int identifier, final int frame,
+            final byte[] image) throws IOException {
+        return new VideoFrame(identifier, frame, encode(image).encode());
+    }
+
+    /**
+     * Encode an image as the next packet in a video stream.
+     *
+     * @param image the image containing 32-bit RGBA pixels.
+     * @return the ScreenPacket containing the blocks that changed since the
+     * last image was encoded, or all the blocks for a key frame.
+     * @throws IOException if an error occurs compressing the blocks.
+     */
+    public ScreenPacket encode(final byte[] image) throws IOException {
+        if ((image == null) || (image.length
+                != imageWidth * imageHeight * RGBA_CHANNELS)) {
+            throw new IllegalArgumentException();
+        }
+
+        final boolean key = (previous == null) || (count % interval == 0);
+        final ImageBlock[] blocks = new ImageBlock[rows * columns];
+        final List<Future<ImageBlock>> tasks =
+            new ArrayList<Future<ImageBlock>>();
+        final List<Integer> indices = new ArrayList<Integer>();
+
+        int index = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++, index++) {
+                final int xOffset = j * blockWidth;
+                final int yOffset = i * blockHeight;
+                final int xSpan = Math.min(blockWidth, imageWidth - xOffset);
+                final int ySpan = Math.min(blockHeight,
+                        imageHeight - yOffset);
+
+                if (!key && !changed(image, xOffset, yOffset, xSpan, ySpan)) {
+                    blocks[index] = EMPTY;
+                } else if (executor == null) {
+                    blocks[index] = new BlockTask(image, xOffset, yOffset,
+                            xSpan, ySpan).call();
+                } else {
+                    tasks.add(executor.submit(new BlockTask(image, xOffset,
+                            yOffset, xSpan, ySpan)));
+                    indices.add(index);
+                }
+            }
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            blocks[indices.get(i)] = waitFor(tasks.get(i));
+        }
+
+        if (previous == null) {
+            previous = new byte[image.length];
+        }
+        System.arraycopy(image, 0, previous, 0, image.length);
+        count++;
+
+        return new ScreenPacket(key, imageWidth, imageHeight, blockWidth,
+                blockHeight, Arrays.asList(blocks));
+    }
+
+    /**
+     * Release the Deflaters used to compress the blocks.
+     */
+    public void end() {
+        Compressor compressor = pool.poll();
+        while (compressor != null) {
+            compressor.deflater.end();
+            compressor = pool.poll();
+        }
+    }
+
+    /**
+     * Compare an area of an image with the last image encoded. Blocks are
+     * tiled from the bottom of the image so the offset of the first row is
+     * measured upwards from the last row in the image.
+     *
+     * @param image the image being encoded.
+     * @param xOffset the column of the first pixel in the block.
+     * @param yOffset the row of the first pixel, counting up from the bottom.
+     * @param xSpan the width of the block.
+     * @param ySpan the height of the block.
+     * @return true if any of the pixels in the block changed.
+     */
+    private boolean changed(final byte[] image, final int xOffset,
+            final int yOffset, final int xSpan, final int ySpan) {
+        final int length = xSpan * RGBA_CHANNELS;
+        int start;
+
+        for (int k = 0; k < ySpan; k++) {
+            start = ((imageHeight - 1 - yOffset - k) * imageWidth + xOffset)
+                    * RGBA_CHANNELS;
+            for (int i = start; i < start + length; i++) {
+                if (image[i] != previous[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait for a block to be compressed.
+     *
+     * @param task the task compressing the block.
+     * @return the compressed block.
+     * @throws IOException if the block could not be compressed.
+     */
+    private ImageBlock waitFor(final Future<ImageBlock> task)
+            throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing blocks");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.toString());
+        }
+    }
+
+    /**
+     * Compressor holds a Deflater and the buffers used to compress a block
+     * so they can be reused for later blocks.
+     */
+    private final class Compressor {
+        /** The Deflater used to compress the block. */
+        private final transient Deflater deflater;
+        /** The pixels in the block. */
+        private final transient byte[] pixels;
+        /** The compressed pixels. */
+        private transient byte[] buffer;
+
+        /**
+         * Create a Compressor with buffers large enough for a full block.
+         */
+        Compressor() {
+            final int size = blockWidth * blockHeight * RGB_CHANNELS;
+            deflater = new Deflater(level);
+            pixels = new byte[size];
+            // CHECKSTYLE IGNORE MagicNumberCheck FOR NEXT 1 LINES
+            buffer = new byte[size + (size >> 3) + 64];
+        }
+    }
+
+    /**
+     * BlockTask copies the pixels for a block from an image, converting them
+     * to the BGR format used in Screen Video, then compresses them.
+     */
+    private final class BlockTask implements Callable<ImageBlock> {
+        /** The image being encoded. */
+        private final transient byte[] image;
+        /** The column of the first pixel in the block. */
+        private final transient int xOffset;
+        /** The row of the first pixel, counting up from the bottom. */
+        private final transient int yOffset;
+        /** The width of the block. */
+        private final transient int xSpan;
+        /** The height of the block. */
+        private final transient int ySpan;
+
+        /**
+         * Create a task to compress a block.
+         *
+         * @param img the image being encoded.
+         * @param xOff the column of the first pixel in the block.
+         * @param yOff the row of the first pixel, counting up from the bottom.
+         * @param width the width of the block.
+         * @param height the height of the block.
+         */
+        BlockTask(final byte[] img, final int xOff, final int yOff,
+                final int width, final int height) {
+            image = img;
+            xOffset = xOff;
+            yOffset = yOff;
+            xSpan = width;
+            ySpan = height;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public ImageBlock call() {
+            Compressor compressor = pool.poll();
+            if (compressor == null) {
+                compressor = new Compressor();
+            }
+            final Deflater deflater = compressor.deflater;
+            final byte[] pixels = compressor.pixels;
+
+            try {
+                int length = 0;
+                int src;
+
+                for (int k = 0; k < ySpan; k++) {
+                    src = ((imageHeight - 1 - yOffset - k) * imageWidth
+                            + xOffset) * RGBA_CHANNELS;
+                    for (int l = 0; l < xSpan; l++, src += RGBA_CHANNELS) {
+                        pixels[length++] = image[src + BLUE];
+                        pixels[length++] = image[src + GREEN];
+                        pixels[length++] = image[src + RED];
+                    }
+                }
+
+                deflater.setLevel(level);
+                deflater.setInput(pixels, 0, length);
+                deflater.finish();
+
+                int size = 0;
+                while (!deflater.finished()) {
+                    if (size == compressor.buffer.length) {
+                        compressor.buffer = Arrays.copyOf(compressor.buffer,
+                                compressor.buffer.length << 1);
+                    }
+                    size += deflater.deflate(compressor.buffer, size,
+                            compressor.buffer.length - size);
+                }
+                return new ImageBlock(xSpan, ySpan,
+                        Arrays.copyOf(compressor.buffer, size));
+            } finally {
+                deflater.reset();
+                pool.offer(compressor);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * ZipDecoder.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * ZipDecoder is implemented by the image decoders that compress the image
+ * data in the ZLIB format when the image definition is created. It allows
+ * the ImageFactory to pass on the settings used for the compression.
+ */
+interface ZipDecoder {
+    /**
+     * Sets the ExecutorService used to compress the image data in parallel.
+     *
+     * @param service the ExecutorService used to compress blocks of the
+     * image. May be null in which case the image is compressed using the
+     * current thread.
+     */
+    void setExecutor(ExecutorService service);
+
+    /**
+     * Get the compression level used for the image data.
+     *
+     * @return the compression level in the range -1..9.
+     */
+    int getCompressionLevel();
+
+    /**
+     * Sets the compression level used for the image data. Higher levels
+     * generate smaller images but take longer to compress.
+     *
+     * @param compression the compression level, in the range 0..9 or
+     * Deflater.DEFAULT_COMPRESSION (-1).
+     */
+    void setCompressionLevel(int compression);
+}
@@ -0,0 +1,558 @@
+/*
+ * Deduplicator.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.movie;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.flagstone.transform.DefineTag;
+import com.flagstone.transform.Event;
+import com.flagstone.transform.Export;
+import com.flagstone.transform.Free;
+import com.flagstone.transform.LazyTag;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.MovieTypes;
+import com.flagstone.transform.Place;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Place3;
+import com.flagstone.transform.Remove;
+import com.flagstone.transform.SymbolClass;
+import com.flagstone.transform.button.ButtonShape;
+import com.flagstone.transform.button.ButtonSound;
+import com.flagstone.transform.button.DefineButton;
+import com.flagstone.transform.button.DefineButton2;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.MorphBitmapFill;
+import com.flagstone.transform.font.DefineFont2;
+import com.flagstone.transform.font.DefineFont3;
+import com.flagstone.transform.font.DefineFont4;
+import com.flagstone.transform.font.FontAlignment;
+import com.flagstone.transform.font.FontInfo;
+import com.flagstone.transform.font.FontInfo2;
+import com.flagstone.transform.font.FontName;
+import com.flagstone.transform.image.ImageTag;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle2;
+import com.flagstone.transform.linestyle.MorphLineStyle2;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeStyle2;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.sound.DefineSound;
+import com.flagstone.transform.sound.SoundInfo;
+import com.flagstone.transform.sound.StartSound;
+import com.flagstone.transform.text.DefineText;
+import com.flagstone.transform.text.DefineText2;
+import com.flagstone.transform.text.DefineTextField;
+import com.flagstone.transform.text.TextSpan;
+
+/**
+ * Deduplicator removes image, sound and font definitions which are
+ * identical to one defined earlier in a movie.
+ *
+ * <p>
+ * Movies assembled from several sources often contain the same image, sound
+ * or font defined several times with different identifiers. Deduplicator
+ * encodes the body of each definition, excluding the identifier, and
+ * calculates a SHA-256 digest of the data. When a definition has the same
+ * type and digest as an earlier one it is removed from the movie and all the
+ * references to it are changed to refer to the earlier definition instead:
+ * </p>
+ *
+ * <ul>
+ * <li>Place, Place2, Place3, Remove and Free objects.</li>
+ * <li>ButtonShapes in DefineButton and DefineButton2 and the sounds in
+ * ButtonSound and StartSound.</li>
+ * <li>BitmapFills in the fill and line styles of shapes.</li>
+ * <li>Fonts used in DefineText, DefineText2 and DefineTextField.</li>
+ * <li>Export and SymbolClass tables.</li>
+ * </ul>
+ *
+ * <p>
+ * The FontInfo, FontInfo2, FontAlignment and FontName objects for a font that
+ * is removed are also removed. The objects inside DefineMovieClips are updated
+ * and any LazyTags in the movie are decoded. A definition is not removed if
+ * both it and the earlier definition are listed under different names in an
+ * Export or SymbolClass table, since the tables only allow one name for each
+ * identifier.
+ * </p>
+ *
+ * <pre>
+ * Deduplicator deduplicator = new Deduplicator();
+ * Map&lt;Integer, Integer&gt; removed = deduplicator.merge(movie);
+ * </pre>
+ *
+ * <p>
+ * The movie is processed in two passes so the time taken increases linearly
+ * with the size of the movie.
+ * </p>
+ */
+public final class Deduplicator {
+
+    /** The algorithm used to identify the contents of a definition. */
+    private static final String DIGEST = "SHA-256";
+    /** Size of the buffer used to encode definitions. */
+    private static final int BUFFER_SIZE = 4096;
+    /** Length in bytes of the identifier at the start of a definition. */
+    private static final int ID_LENGTH = 2;
+
+    /** Digests for the definitions, mapped to identifiers. */
+    private final transient Map<ByteBuffer, Integer> contents;
+    /** Identifiers of the removed definitions, mapped to the ones kept. */
+    private final transient Map<Integer, Integer> table;
+    /** Identifiers listed in Export and SymbolClass tables. */
+    private final transient Set<Integer> named;
+    /** Digest used to identify the contents of each definition. */
+    private final transient MessageDigest digest;
+    /** Buffer used to encode each definition. */
+    private final transient ByteArrayOutputStream buffer;
+    /** Context used to encode each definition. */
+    private transient Context context;
+    /** Whether any images were removed. */
+    private transient boolean images;
+
+    /**
+     * Creates a Deduplicator.
+     */
+    public Deduplicator() {
+        contents = new HashMap<ByteBuffer, Integer>();
+        table = new HashMap<Integer, Integer>();
+        named = new HashSet<Integer>();
+        buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+        try {
+            digest = MessageDigest.getInstance(DIGEST);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Remove the duplicate image, sound and font definitions from a movie and
+     * update all the references to them.
+     *
+     * @param movie the movie to update.
+     * @return a table that maps the identifiers of the definitions that were
+     * removed to the identifiers of the definitions that replaced them.
+     *
+     * @throws IOException if an error occurs decoding a LazyTag or encoding a
+     * definition.
+     */
+    public Map<Integer, Integer> merge(final Movie movie) throws IOException {
+        if (movie == null) {
+            throw new IllegalArgumentException();
+        }
+        return merge(movie.getObjects());
+    }
+
+    /**
+     * Remove the duplicate image, sound and font definitions from a list of
+     * objects and update all the references to them.
+     *
+     * @param objects the list of objects from a movie.
+     * @return a table that maps the identifiers of the definitions that were
+     * removed to the identifiers of the definitions that replaced them.
+     *
+     * @throws IOException if an error occurs decoding a LazyTag or encoding a
+     * definition.
+     */
+    public Map<Integer, Integer> merge(final List<MovieTag> objects)
+            throws IOException {
+        if (objects == null) {
+            throw new IllegalArgumentException();
+        }
+        contents.clear();
+        table.clear();
+        named.clear();
+        images = false;
+
+        context = new Context();
+        if (!objects.isEmpty() && objects.get(0) instanceof MovieHeader) {
+            context.put(Context.VERSION,
+                    ((MovieHeader) objects.get(0)).getVersion());
+        } else {
+            context.put(Context.VERSION, Movie.VERSION);
+        }
+
+        final ListIterator<MovieTag> iter = objects.listIterator();
+        MovieTag object;
+
+        while (iter.hasNext()) {
+            object = iter.next();
+            if (object instanceof LazyTag) {
+                object = ((LazyTag) object).getTag();
+                iter.set(object);
+            }
+            if (object instanceof Export) {
+                named.addAll(((Export) object).getObjects().keySet());
+            } else if (object instanceof SymbolClass) {
+                named.addAll(((SymbolClass) object).getObjects().keySet());
+            }
+        }
+
+        for (final MovieTag tag : objects) {
+            if (isMergeable(tag)) {
+                find((DefineTag) tag);
+            }
+        }
+
+        if (!table.isEmpty()) {
+            update(objects);
+        }
+        return new HashMap<Integer, Integer>(table);
+    }
+
+    /**
+     * Can a definition be merged with an identical one.
+     *
+     * @param object the object.
+     * @return true if the object is an image, sound or font definition.
+     */
+    private boolean isMergeable(final MovieTag object) {
+        return object instanceof ImageTag
+            || object instanceof DefineSound
+            || object instanceof DefineFont2
+            || object instanceof DefineFont3
+            || object instanceof DefineFont4;
+    }
+
+    /**
+     * Look for an earlier definition with the same contents. If one is found
+     * then the identifier is added to the table of removed definitions.
+     *
+     * @param object the definition.
+     * @throws IOException if an error occurs encoding the definition.
+     */
+    private void find(final DefineTag object) throws IOException {
+        final int identifier = object.getIdentifier();
+        final ByteBuffer key = ByteBuffer.wrap(hash(object));
+        final Integer existing = contents.get(key);
+
+        if (existing == null) {
+            contents.put(key, identifier);
+        } else if (existing != identifier && !table.containsKey(identifier)) {
+            if (named.contains(identifier) && named.contains(existing)) {
+                return;
+            }
+            if (named.contains(identifier)) {
+                named.add(existing);
+            }
+            table.put(identifier, existing);
+            images |= object instanceof ImageTag;
+        }
+    }
+
+    /**
+     * Calculate the digest of a definition using its type and the encoded
+     * body, excluding the identifier.
+     *
+     * @param object the definition.
+     * @return the digest.
+     * @throws IOException if an error occurs encoding the definition.
+     */
+    private byte[] hash(final MovieTag object) throws IOException {
+        buffer.reset();
+        final SWFEncoder coder = new SWFEncoder(buffer);
+        object.prepareToEncode(context);
+        object.encode(coder, context);
+        coder.flush();
+
+        final byte[] data = buffer.toByteArray();
+        final int header = (data[0] & Coder.LENGTH_FIELD)
+                == Coder.IS_EXTENDED ? Coder.LONG_HEADER : Coder.SHORT_HEADER;
+        final int type = ((data[1] & 0xFF) << Coder.TO_UPPER_BYTE
+                | (data[0] & 0xFF)) >>> Coder.LENGTH_FIELD_SIZE;
+
+        digest.reset();
+        digest.update((byte) (type >>> Coder.TO_LOWER_BYTE));
+        digest.update((byte) type);
+        digest.update(data, header + ID_LENGTH,
+                data.length - header - ID_LENGTH);
+        return digest.digest();
+    }
+
+    /**
+     * Remove the duplicate definitions and the objects that only describe
+     * them, then update the references in the remaining objects.
+     *
+     * @param objects the list of objects.
+     */
+    private void update(final List<MovieTag> objects) {
+        final Iterator<MovieTag> iter = objects.iterator();
+        MovieTag object;
+
+        while (iter.hasNext()) {
+            object = iter.next();
+            if (isRemoved(object)) {
+                iter.remove();
+            } else {
+                updateReferences(object);
+            }
+        }
+    }
+
+    /**
+     * Is an object a duplicate definition or one that describes a font that
+     * was removed or releases a definition that was removed.
+     *
+     * @param object the object.
+     * @return true if the object should be removed from the movie.
+     */
+    private boolean isRemoved(final MovieTag object) {
+        final int identifier;
+
+        if (object instanceof DefineTag && isMergeable(object)) {
+            identifier = ((DefineTag) object).getIdentifier();
+        } else if (object instanceof FontInfo) {
+            identifier = ((FontInfo) object).getIdentifier();
+        } else if (object instanceof FontInfo2) {
+            identifier = ((FontInfo2) object).getIdentifier();
+        } else if (object instanceof FontAlignment) {
+            identifier = ((FontAlignment) object).getIdentifier();
+        } else if (object instanceof FontName) {
+            identifier = ((FontName) object).getIdentifier();
+        } else if (object instanceof Free) {
+            identifier = ((Free) object).getIdentifier();
+        } else {
+            return false;
+        }
+        return table.containsKey(identifier);
+    }
+
+    /**
+     * Update the identifiers of the definitions referenced by an object.
+     *
+     * @param object the object.
+     */
+    @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.NPathComplexity" })
+    private void updateReferences(final MovieTag object) {
+        if (object instanceof Place2) {
+            final Place2 place = (Place2) object;
+            if (table.containsKey(place.getIdentifier())) {
+                place.setIdentifier(table.get(place.getIdentifier()));
+            }
+        } else if (object instanceof Place3) {
+            final Place3 place = (Place3) object;
+            if (table.containsKey(place.getIdentifier())) {
+                place.setIdentifier(table.get(place.getIdentifier()));
+            }
+        } else if (object instanceof Place) {
+            final Place place = (Place) object;
+            if (table.containsKey(place.getIdentifier())) {
+                place.setIdentifier(table.get(place.getIdentifier()));
+            }
+        } else if (object instanceof Remove) {
+            final Remove remove = (Remove) object;
+            if (table.containsKey(remove.getIdentifier())) {
+                remove.setIdentifier(table.get(remove.getIdentifier()));
+            }
+        } else if (object instanceof StartSound) {
+            updateSound(((StartSound) object).getSound());
+        } else if (object instanceof ButtonSound) {
+            final ButtonSound sound = (ButtonSound) object;
+            for (final Event event : Event.values()) {
+                updateSound(sound.getSoundInfo(event));
+            }
+        } else if (object instanceof DefineButton) {
+            updateButton(((DefineButton) object).getShapes());
+        } else if (object instanceof DefineButton2) {
+            updateButton(((DefineButton2) object).getShapes());
+        } else if (object instanceof DefineText) {
+            updateText(((DefineText) object).getSpans());
+        } else if (object instanceof DefineText2) {
+            updateText(((DefineText2) object).getSpans());
+        } else if (object instanceof DefineTextField) {
+            final DefineTextField field = (DefineTextField) object;
+            if (table.containsKey(field.getFontIdentifier())) {
+                field.setFontIdentifier(table.get(field.getFontIdentifier()));
+            }
+        } else if (object instanceof ShapeTag) {
+            if (images) {
+                updateShape((ShapeTag) object);
+            }
+        } else if (object instanceof Export) {
+            updateNames(((Export) object).getObjects());
+        } else if (object instanceof SymbolClass) {
+            updateNames(((SymbolClass) object).getObjects());
+        } else if (object instanceof DefineMovieClip) {
+            for (final MovieTag tag : ((DefineMovieClip) object).getObjects()) {
+                updateReferences(tag);
+            }
+        }
+    }
+
+    /**
+     * Update the identifier of the sound played.
+     *
+     * @param info the SoundInfo, which may be null.
+     */
+    private void updateSound(final SoundInfo info) {
+        if (info != null && table.containsKey(info.getIdentifier())) {
+            info.setIdentifier(table.get(info.getIdentifier()));
+        }
+    }
+
+    /**
+     * Update the identifiers of the objects displayed in a button.
+     *
+     * @param shapes the list of objects displayed for each button state.
+     */
+    private void updateButton(final List<ButtonShape> shapes) {
+        for (final ButtonShape shape : shapes) {
+            if (table.containsKey(shape.getIdentifier())) {
+                shape.setIdentifier(table.get(shape.getIdentifier()));
+            }
+        }
+    }
+
+    /**
+     * Update the identifiers of the fonts used in a block of text.
+     *
+     * @param spans the list of TextSpans.
+     */
+    private void updateText(final List<TextSpan> spans) {
+        for (final TextSpan span : spans) {
+            if (span.getIdentifier() != null
+                    && table.containsKey(span.getIdentifier())) {
+                span.setIdentifier(table.get(span.getIdentifier()));
+            }
+        }
+    }
+
+    /**
+     * Update the identifiers of the images used in the styles of a shape.
+     *
+     * @param shape the shape definition.
+     */
+    private void updateShape(final ShapeTag shape) {
+        updateFills(shape.getFillStyles());
+        updateLines(shape.getLineStyles());
+
+        for (final ShapeRecord record : shape.getShape().getStyles()) {
+            if (record instanceof ShapeStyle) {
+                updateFills(((ShapeStyle) record).getFillStyles());
+            } else if (record instanceof ShapeStyle2) {
+                updateFills(((ShapeStyle2) record).getFillStyles());
+                updateLines(((ShapeStyle2) record).getLineStyles());
+            }
+        }
+    }
+
+    /**
+     * Update the identifiers of the images used in a list of fill styles.
+     *
+     * @param styles the fill styles.
+     */
+    private void updateFills(final List<FillStyle> styles) {
+        for (final FillStyle style : styles) {
+            updateFill(style);
+        }
+    }
+
+    /**
+     * Update the identifiers of the images used in a list of line styles.
+     *
+     * @param styles the line styles.
+     */
+    private void updateLines(final List<? extends LineStyle> styles) {
+        for (final LineStyle style : styles) {
+            if (style instanceof LineStyle2) {
+                updateFill(((LineStyle2) style).getFillStyle());
+            } else if (style instanceof MorphLineStyle2) {
+                updateFill(((MorphLineStyle2) style).getFillStyle());
+            }
+        }
+    }
+
+    /**
+     * Update the identifier of the image used in a fill style.
+     *
+     * @param style the fill style, which may be null.
+     */
+    private void updateFill(final FillStyle style) {
+        if (style instanceof BitmapFill) {
+            final BitmapFill fill = (BitmapFill) style;
+            if (table.containsKey(fill.getIdentifier())) {
+                fill.setIdentifier(table.get(fill.getIdentifier()));
+            }
+        } else if (style instanceof MorphBitmapFill) {
+            final MorphBitmapFill fill = (MorphBitmapFill) style;
+            if (table.containsKey(fill.getIdentifier())) {
+                fill.setIdentifier(table.get(fill.getIdentifier()));
+            }
+        }
+    }
+
+    /**
+     * Update the identifiers in an Export or SymbolClass table. Entries for
+     * a removed definition are moved to the one that replaced it, unless it
+     * already has a name in the table.
+     *
+     * @param names the table mapping identifiers to names.
+     */
+    private void updateNames(final Map<Integer, String> names) {
+        final Map<Integer, String> moved = new LinkedHashMap<Integer, String>();
+        final Iterator<Map.Entry<Integer, String>> iter =
+            names.entrySet().iterator();
+        Map.Entry<Integer, String> entry;
+
+        while (iter.hasNext()) {
+            entry = iter.next();
+            if (table.containsKey(entry.getKey())) {
+                moved.put(table.get(entry.getKey()), entry.getValue());
+                iter.remove();
+            }
+        }
+        for (final Map.Entry<Integer, String> name : moved.entrySet()) {
+            if (!names.containsKey(name.getKey())) {
+                names.put(name.getKey(), name.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Pruner.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.movie;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.flagstone.transform.DefineTag;
+import com.flagstone.transform.Event;
+import com.flagstone.transform.Export;
+import com.flagstone.transform.Free;
+import com.flagstone.transform.LazyTag;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieObject;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.Place3;
+import com.flagstone.transform.Remove;
+import com.flagstone.transform.SymbolClass;
+import com.flagstone.transform.button.ButtonColorTransform;
+import com.flagstone.transform.button.ButtonShape;
+import com.flagstone.transform.button.ButtonSound;
+import com.flagstone.transform.button.DefineButton;
+import com.flagstone.transform.button.DefineButton2;
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.fillstyle.MorphBitmapFill;
+import com.flagstone.transform.font.FontAlignment;
+import com.flagstone.transform.font.FontInfo;
+import com.flagstone.transform.font.FontInfo2;
+import com.flagstone.transform.font.FontName;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.linestyle.LineStyle2;
+import com.flagstone.transform.linestyle.MorphLineStyle2;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.movieclip.InitializeMovieClip;
+import com.flagstone.transform.shape.ShapeRecord;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.shape.ShapeStyle2;
+import com.flagstone.transform.shape.ShapeTag;
+import com.flagstone.transform.sound.SoundInfo;
+import com.flagstone.transform.sound.StartSound;
+import com.flagstone.transform.text.DefineTextField;
+import com.flagstone.transform.text.StaticTextTag;
+import com.flagstone.transform.text.TextSettings;
+import com.flagstone.transform.text.TextSpan;
+import com.flagstone.transform.video.VideoFrame;
+
+/**
+ * Pruner removes the definitions from a movie that are never used.
+ *
+ * <p>
+ * A definition is used if it is displayed on the main timeline, a sound is
+ * played, it is listed in an Export or SymbolClass table, so it can be
+ * accessed by name from ActionScript, or it has a DoInitAction
+ * (InitializeMovieClip) object. Any definition referenced by a definition
+ * that is used is also used:
+ * </p>
+ *
+ * <ul>
+ * <li>the objects displayed and the sounds played in a DefineMovieClip.</li>
+ * <li>the objects displayed for each state of a button and the sounds played
+ * in the ButtonSound for the button.</li>
+ * <li>the images used in BitmapFills in the styles of shapes and morphing
+ * shapes.</li>
+ * <li>the fonts used in DefineText, DefineText2 and DefineTextField.</li>
+ * </ul>
+ *
+ * <p>
+ * All other definitions are removed along with the objects that only describe
+ * them: FontInfo, FontInfo2, FontAlignment, FontName, ButtonSound,
+ * ButtonColorTransform, ScalingGrid, TextSettings, VideoFrame, Remove and Free
+ * objects. Any LazyTags in the movie are decoded. A MovieObject could refer
+ * to any definition so no definitions are removed from a movie that contains
+ * them. Definitions used only by ActionScript, for example fonts selected by
+ * name, should be listed in the set of identifiers to keep.
+ * </p>
+ *
+ * <pre>
+ * Pruner pruner = new Pruner();
+ * Set&lt;Integer&gt; removed = pruner.prune(movie);
+ * </pre>
+ *
+ * <p>
+ * The references in each definition are only followed the first time it is
+ * found to be used and the movie is rebuilt without the unused objects in a
+ * single pass so the time taken increases linearly with the size of the
+ * movie.
+ * </p>
+ */
+public final class Pruner {
+
+    /** The number of identifiers that can be assigned to definitions. */
+    private static final int ID_COUNT = Coder.USHORT_MAX + 1;
+
+    /** The objects for each identifier: definitions and their attributes. */
+    private final transient Map<Integer, List<MovieTag>> table;
+    /** The identifiers of the definitions that are used. */
+    private final transient BitSet used;
+    /** The identifiers of used definitions not yet searched for references. */
+    private final transient int[] pending;
+    /** The number of identifiers waiting to be searched. */
+    private transient int count;
+    /** Whether the movie contains objects that could not be searched. */
+    private transient boolean opaque;
+
+    /**
+     * Creates a Pruner.
+     */
+    public Pruner() {
+        table = new HashMap<Integer, List<MovieTag>>();
+        used = new BitSet(ID_COUNT);
+        pending = new int[ID_COUNT];
+    }
+
+    /**
+     * Remove the definitions from a movie that are not used.
+     *
+     * @param movie the movie to update.
+     * @return the identifiers of the definitions that were removed.
+     *
+     * @throws IOException if an error occurs decoding a LazyTag.
+     */
+    public Set<Integer> prune(final Movie movie) throws IOException {
+        if (movie == null) {
+            throw new IllegalArgumentException();
+        }
+        return prune(movie.getObjects(), Collections.<Integer>emptySet());
+    }
+
+    /**
+     * Remove the definitions from a list of objects that are not used.
+     *
+     * @param objects the list of objects from a movie.
+     * @param keep the identifiers of definitions that should be kept even if
+     * they are not used by any other object, for example those accessed only
+     * by ActionScript.
+     * @return the identifiers of the definitions that were removed.
+     *
+     * @throws IOException if an error occurs decoding a LazyTag.
+     */
+    public Set<Integer> prune(final List<MovieTag> objects,
+            final Set<Integer> keep) throws IOException {
+        if (objects == null || keep == null) {
+            throw new IllegalArgumentException();
+        }
+        table.clear();
+        used.clear();
+        count = 0;
+        opaque = false;
+
+        decode(objects);
+
+        int identifier;
+
+        for (final MovieTag object : objects) {
+            identifier = identifierOf(object);
+            if (identifier == -1) {
+                findReferences(object);
+            } else {
+                List<MovieTag> list = table.get(identifier);
+                if (list == null) {
+                    list = new ArrayList<MovieTag>(1);
+                    table.put(identifier, list);
+                }
+                list.add(object);
+            }
+        }
+
+        for (final Integer id : keep) {
+            use(id);
+        }
+        while (count > 0) {
+            final List<MovieTag> list = table.get(pending[--count]);
+            if (list != null) {
+                for (final MovieTag tag : list) {
+                    findReferences(tag);
+                }
+            }
+        }
+
+        final Set<Integer> removed = new LinkedHashSet<Integer>();
+        if (!opaque) {
+            sweep(objects, removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Replace any LazyTags in a list of objects, including the objects in
+     * DefineMovieClips, with the decoded object.
+     *
+     * @param objects the list of objects.
+     * @throws IOException if an error occurs decoding a LazyTag.
+     */
+    private void decode(final List<MovieTag> objects) throws IOException {
+        final ListIterator<MovieTag> iter = objects.listIterator();
+        MovieTag object;
+
+        while (iter.hasNext()) {
+            object = iter.next();
+            if (object instanceof LazyTag) {
+                object = ((LazyTag) object).getTag();
+                iter.set(object);
+            }
+            if (object instanceof DefineMovieClip) {
+                decode(((DefineMovieClip) object).getObjects());
+            }
+        }
+    }
+
+    /**
+     * Get the identifier of the definition that an object defines or
+     * describes.
+     *
+     * @param object the object.
+     * @return the identifier or -1 if the object is neither a definition nor
+     * only describes one.
+     */
+    @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.NPathComplexity" })
+    private int identifierOf(final MovieTag object) {
+        final int identifier;
+
+        if (object instanceof DefineTag) {
+            identifier = ((DefineTag) object).getIdentifier();
+        } else if (object instanceof FontInfo) {
+            identifier = ((FontInfo) object).getIdentifier();
+        } else if (object instanceof FontInfo2) {
+            identifier = ((FontInfo2) object).getIdentifier();
+        } else if (object instanceof FontAlignment) {
+            identifier = ((FontAlignment) object).getIdentifier();
+        } else if (object instanceof FontName) {
+            identifier = ((FontName) object).getIdentifier();
+        } else if (object instanceof ButtonSound) {
+            identifier = ((ButtonSound) object).getIdentifier();
+        } else if (object instanceof ButtonColorTransform) {
+            identifier = ((ButtonColorTransform) object).getIdentifier();
+        } else if (object instanceof TextSettings) {
+            identifier = ((TextSettings) object).getIdentifier();
+        } else if (object instanceof VideoFrame) {
+            identifier = ((VideoFrame) object).getIdentifier();
+        } else if (object instanceof Remove) {
+            identifier = ((Remove) object).getIdentifier();
+        } else if (object instanceof Free) {
+            identifier = ((Free) object).getIdentifier();
+        } else {
+            identifier = -1;
+        }
+        return identifier;
+    }
+
+    /**
+     * Mark a definition as used. If it was not already used then it is added
+     * to the list of definitions to search for references.
+     *
+     * @param identifier the identifier of the definition.
+     */
+    private void use(final int identifier) {
+        if (identifier > 0 && identifier < ID_COUNT && !used.get(identifier)) {
+            used.set(identifier);
+            pending[count++] = identifier;
+        }
+    }
+
+    /**
+     * Mark the definitions referenced by an object as used.
+     *
+     * @param object the object.
+     */
+    @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.NPathComplexity" })
+    private void findReferences(final MovieTag object) {
+        if (object instanceof Place2) {
+            use(((Place2) object).getIdentifier());
+        } else if (object instanceof Place3) {
+            use(((Place3) object).getIdentifier());
+        } else if (object instanceof Place) {
+            use(((Place) object).getIdentifier());
+        } else if (object instanceof StartSound) {
+            useSound(((StartSound) object).getSound());
+        } else if (object instanceof ButtonSound) {
+            final ButtonSound sound = (ButtonSound) object;
+            for (final Event event : Event.values()) {
+                useSound(sound.getSoundInfo(event));
+            }
+        } else if (object instanceof DefineButton) {
+            useButton(((DefineButton) object).getShapes());
+        } else if (object instanceof DefineButton2) {
+            useButton(((DefineButton2) object).getShapes());
+        } else if (object instanceof StaticTextTag) {
+            useText(((StaticTextTag) object).getSpans());
+        } else if (object instanceof DefineTextField) {
+            use(((DefineTextField) object).getFontIdentifier());
+        } else if (object instanceof ShapeTag) {
+            useShape((ShapeTag) object);
+        } else if (object instanceof DefineMovieClip) {
+            for (final MovieTag tag : ((DefineMovieClip) object).getObjects()) {
+                findReferences(tag);
+            }
+        } else if (object instanceof Export) {
+            for (final Integer id : ((Export) object).getObjects().keySet()) {
+                use(id);
+            }
+        } else if (object instanceof SymbolClass) {
+            for (final Integer id
+                    : ((SymbolClass) object).getObjects().keySet()) {
+                use(id);
+            }
+        } else if (object instanceof InitializeMovieClip) {
+            use(((InitializeMovieClip) object).getIdentifier());
+        } else if (object instanceof MovieObject) {
+            opaque = true;
+        }
+    }
+
+    /**
+     * Mark the sound played as used.
+     *
+     * @param info the SoundInfo, which may be null.
+     */
+    private void useSound(final SoundInfo info) {
+        if (info != null) {
+            use(info.getIdentifier());
+        }
+    }
+
+    /**
+     * Mark the objects displayed in a button as used.
+     *
+     * @param shapes the list of objects displayed for each button state.
+     */
+    private void useButton(final List<ButtonShape> shapes) {
+        for (final ButtonShape shape : shapes) {
+            use(shape.getIdentifier());
+        }
+    }
+
+    /**
+     * Mark the fonts used in a block of text as used.
+     *
+     * @param spans the list of TextSpans.
+     */
+    private void useText(final List<TextSpan> spans) {
+        for (final TextSpan span : spans) {
+            if (span.getIdentifier() != null) {
+                use(span.getIdentifier());
+            }
+        }
+    }
+
+    /**
+     * Mark the images used in the styles of a shape as used.
+     *
+     * @param shape the shape definition.
+     */
+    private void useShape(final ShapeTag shape) {
+        useFills(shape.getFillStyles());
+        useLines(shape.getLineStyles());
+
+        for (final ShapeRecord record : shape.getShape().getStyles()) {
+            if (record instanceof ShapeStyle) {
+                useFills(((ShapeStyle) record).getFillStyles());
+            } else if (record instanceof ShapeStyle2) {
+                useFills(((ShapeStyle2) record).getFillStyles());
+                useLines(((ShapeStyle2) record).getLineStyles());
+            }
+        }
+    }
+
+    /**
+     * Mark the images used in a list of fill styles as used.
+     *
+     * @param styles the fill styles.
+     */
+    private void useFills(final List<FillStyle> styles) {
+        for (final FillStyle style : styles) {
+            useFill(style);
+        }
+    }
+
+    /**
+     * Mark the images used in a list of line styles as used.
+     *
+     * @param styles the line styles.
+     */
+    private void useLines(final List<? extends LineStyle> styles) {
+        for (final LineStyle style : styles) {
+            if (style instanceof LineStyle2) {
+                useFill(((LineStyle2) style).getFillStyle());
+            } else if (style instanceof MorphLineStyle2) {
+                useFill(((MorphLineStyle2) style).getFillStyle());
+            }
+        }
+    }
+
+    /**
+     * Mark the image used in a fill style as used.
+     *
+     * @param style the fill style, which may be null.
+     */
+    private void useFill(final FillStyle style) {
+        if (style instanceof BitmapFill) {
+            use(((BitmapFill) style).getIdentifier());
+        } else if (style instanceof MorphBitmapFill) {
+            use(((MorphBitmapFill) style).getIdentifier());
+        }
+    }
+
+    /**
+     * Rebuild a list of objects without the definitions that are not used
+     * and the objects that describe them.
+     *
+     * @param objects the list of objects.
+     * @param removed the set where the identifiers of the definitions removed
+     * are added.
+     */
+    private void sweep(final List<MovieTag> objects,
+            final Set<Integer> removed) {
+        final List<MovieTag> list = new ArrayList<MovieTag>(objects.size());
+        int identifier;
+
+        for (final MovieTag object : objects) {
+            identifier = identifierOf(object);
+            if (identifier == -1 || used.get(identifier)) {
+                list.add(object);
+                if (object instanceof DefineMovieClip) {
+                    sweep(((DefineMovieClip) object).getObjects(), removed);
+                }
+            } else if (object instanceof DefineTag) {
+                removed.add(identifier);
+            }
+        }
+        if (list.size() < objects.size()) {
+            objects.clear();
+            objects.addAll(list);
+        }
+    }
+}
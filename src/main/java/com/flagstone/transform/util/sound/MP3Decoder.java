@@ -95,6 +95,12 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
     };
     /** The number of bytes in each sample. */
     private static final int SAMPLE_SIZE = 2;
+    /** Number of bytes at the start of a DefineSound for the seek samples. */
+    private static final int SEEK_LENGTH = 2;
+    /** Number of bytes at the start of a SoundStreamBlock for the counts. */
+    private static final int BLOCK_HEADER = 4;
+    /** Number of frames to allow for when the length is not known. */
+    private static final int FRAME_COUNT = 256;
 
     /** The frame rate of the movie where the MP3 sound will be played. */
     private transient float movieRate;
@@ -106,6 +112,10 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
     private transient int sampleRate;
     /** The sound samples. */
     private transient byte[] sound;
+    /** The number of bytes added to the array of sound samples. */
+    private transient int soundLength;
+    /** The length of the stream containing the sound, if known. */
+    private transient int streamLength;
 
     /** The decoder used to read the MP3 frames. */
     private transient BigDecoder coder;
@@ -130,7 +140,7 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
 	public void read(final File file) throws IOException, DataFormatException {
         final FileInputStream stream = new FileInputStream(file);
         try {
-            read(stream);
+            read(stream, (int) file.length());
         } finally {
             if (stream != null) {
                 stream.close();
@@ -151,7 +161,7 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
         final InputStream stream = url.openStream();
 
         try {
-            read(stream);
+            read(stream, fileSize);
         } finally {
             if (stream != null) {
                 stream.close();
@@ -163,6 +173,21 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
     @Override
 	public void read(final InputStream stream)
             throws IOException, DataFormatException {
+        read(stream, stream.available());
+    }
+
+    /**
+     * Read the first frame of an MP3 sound.
+     *
+     * @param stream the stream containing the sound.
+     * @param length the length of the stream, if known, otherwise zero. The
+     * length is used to set the size of the array for the sound samples.
+     * @throws IOException if there is an error reading the data.
+     * @throws DataFormatException if the sound is not in MP3 format.
+     */
+    private void read(final InputStream stream, final int length)
+            throws IOException, DataFormatException {
+        streamLength = length;
         coder = new BigDecoder(stream);
         readFrame();
         actualSamples += samplesPerFrame;
@@ -173,17 +198,14 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
 	public DefineSound defineSound(final int identifier)
             throws IOException, DataFormatException {
 
-        int length;
-        sound = new byte[2];
+        start(SEEK_LENGTH, streamLength);
 
         do {
-            length = sound.length;
-            sound = Arrays.copyOf(sound, length + frame.length);
-            System.arraycopy(frame, 0, sound, length, frame.length);
+            append(frame);
         } while (readFrame());
 
         return new DefineSound(identifier, SoundFormat.MP3, sampleRate,
-                numberOfChannels, SAMPLE_SIZE, samplesPerChannel, sound);
+                numberOfChannels, SAMPLE_SIZE, samplesPerChannel, samples());
     }
 
     /** {@inheritDoc} */
@@ -191,14 +213,17 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
 	public DefineSound defineSound(final int identifier, final float duration)
             throws IOException, DataFormatException {
 
-        sound = new byte[2];
+        final long limit = streamLength > 0 ? streamLength
+                : FRAME_COUNT * frame.length;
+        final long frames = Math.min(
+                (long) (duration * sampleRate / samplesPerFrame),
+                limit / frame.length) + 1;
+
+        start(SEEK_LENGTH, (int) Math.min(frames * frame.length, limit));
         float played = 0;
-        int length;
 
         while (played < duration) {
-            length = sound.length;
-            sound = Arrays.copyOf(sound, length + frame.length);
-            System.arraycopy(frame, 0, sound, length, frame.length);
+            append(frame);
             played += (float) samplesPerFrame / (float) sampleRate;
             if (!readFrame()) {
                 break;
@@ -206,7 +231,7 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
         }
 
         return new DefineSound(identifier, SoundFormat.MP3, sampleRate,
-                numberOfChannels, SAMPLE_SIZE, samplesPerChannel, sound);
+                numberOfChannels, SAMPLE_SIZE, samplesPerChannel, samples());
     }
 
     /** {@inheritDoc} */
@@ -225,14 +250,12 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
                 ?  actualSamples - expectedSamples : 0;
 
         expectedSamples += sampleRate / movieRate;
-        sound = new byte[4];
+        start(BLOCK_HEADER, (Math.max(expectedSamples - actualSamples, 0)
+                / samplesPerFrame + 1) * frame.length);
         int sampleCount = 0;
         boolean hasFrames = true;
-        int length;
         do {
-            length = sound.length;
-            sound = Arrays.copyOf(sound, length + frame.length);
-            System.arraycopy(frame, 0, sound, length, frame.length);
+            append(frame);
             sampleCount += samplesPerFrame;
             hasFrames = readFrame();
             actualSamples += samplesPerFrame;
@@ -241,6 +264,7 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
         SoundStreamBlock block = null;
 
         if (hasFrames) {
+            sound = samples();
             sound[0] = (byte) sampleCount;
             sound[1] = (byte) (sampleCount >> Coder.TO_LOWER_BYTE);
             sound[2] = (byte) seek;
@@ -251,6 +275,47 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
         return block;
     }
 
+    /**
+     * Start a new array of sound samples.
+     *
+     * @param header the number of bytes reserved at the start of the array.
+     * @param length the expected number of bytes in the frames that will be
+     * added, or zero if this is not known.
+     */
+    private void start(final int header, final int length) {
+        final int capacity = length > 0 ? length
+                : FRAME_COUNT * frame.length;
+        sound = new byte[header + capacity];
+        soundLength = header;
+    }
+
+    /**
+     * Add a frame to the array of sound samples, doubling the size of the
+     * array if there is not enough space.
+     *
+     * @param bytes the contents of the frame.
+     */
+    private void append(final byte[] bytes) {
+        if (soundLength + bytes.length > sound.length) {
+            sound = Arrays.copyOf(sound, Math.max(sound.length << 1,
+                    soundLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, sound, soundLength, bytes.length);
+        soundLength += bytes.length;
+    }
+
+    /**
+     * Get the sound samples added since start() was called.
+     *
+     * @return an array containing the sound samples.
+     */
+    private byte[] samples() {
+        if (soundLength < sound.length) {
+            sound = Arrays.copyOf(sound, soundLength);
+        }
+        return sound;
+    }
+
     /**
      * Read a MP3 frame.
      * @return true if a frame was read.
@@ -353,6 +418,9 @@ public final class MP3Decoder implements SoundProvider, SoundDecoder {
         final int frameSize = 4 + (((version == MPEG1) ? 144 : 72)
                 * bitRate * 1000 / sampleRate + padding) - 4;
 
-        frame = coder.readBytes(new byte[frameSize]);
+        if (frame == null || frame.length != frameSize) {
+            frame = new byte[frameSize];
+        }
+        coder.readBytes(frame);
     }
 }
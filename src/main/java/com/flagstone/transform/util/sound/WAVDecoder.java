@@ -86,7 +86,12 @@ public final class WAVDecoder implements SoundProvider, SoundDecoder {
 
     /** {@inheritDoc} */
     public void read(final File file) throws IOException, DataFormatException {
-        read(new FileInputStream(file));
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            read(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -98,7 +103,13 @@ public final class WAVDecoder implements SoundProvider, SoundDecoder {
         if (fileSize < 0) {
             throw new FileNotFoundException(url.getFile());
         }
-        read(url.openStream());
+
+        final InputStream stream = url.openStream();
+        try {
+            read(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -30,13 +30,14 @@
  */
 package com.flagstone.transform.video;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.CoderPool;
 import com.flagstone.transform.coder.Copyable;
 import com.flagstone.transform.coder.SWFDecoder;
 import com.flagstone.transform.coder.SWFEncoder;
@@ -49,6 +50,8 @@ public final class ScreenPacket implements Copyable<ScreenPacket> {
 
     /** Multiplier for the encoded value representing the block width. */
     private static final int PIXELS_PER_BLOCK = 16;
+    /** Frame type used to identify key frames. */
+    private static final int KEY_FRAME = 1;
 
     /** Is this frame a key frame with blocks for the entire image. */
     private boolean keyFrame;
@@ -69,11 +72,24 @@ public final class ScreenPacket implements Copyable<ScreenPacket> {
      * @throws IOException if the data cannot be decoded.
      */
     public ScreenPacket(final byte[] data) throws IOException {
-        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
-        final SWFDecoder coder = new SWFDecoder(stream);
+        final SWFDecoder coder = CoderPool.getDecoder(ByteBuffer.wrap(data));
+        try {
+            decode(coder);
+        } finally {
+            CoderPool.release(coder);
+        }
+    }
+
+    /**
+     * Decode the header and image blocks for the packet.
+     *
+     * @param coder the decoder containing the encoded packet.
+     * @throws IOException if the data cannot be decoded.
+     */
+    private void decode(final SWFDecoder coder) throws IOException {
 
         int info = coder.readByte();
-        keyFrame = (info & Coder.NIB1) != 0;
+        keyFrame = ((info & Coder.NIB1) >> Coder.ALIGN_NIB1) == KEY_FRAME;
 
         info = (coder.readByte() << Coder.TO_UPPER_BYTE) + coder.readByte();
         blockWidth = (((info & Coder.NIB3) >> Coder.ALIGN_NIB3) + 1)
@@ -91,7 +107,7 @@ public final class ScreenPacket implements Copyable<ScreenPacket> {
                 + ((imageHeight % blockHeight > 0) ? 1 : 0);
 
         int height = imageHeight;
-        int width = imageWidth;
+        int width;
 
         imageBlocks = new ArrayList<ImageBlock>();
         ImageBlock block;
@@ -99,6 +115,7 @@ public final class ScreenPacket implements Copyable<ScreenPacket> {
         int length;
 
         for (int i = 0; i < rows; i++, height -= blockHeight) {
+            width = imageWidth;
             for (int j = 0; j < columns; j++, width -= blockWidth) {
                 length = (coder.readByte() << Coder.TO_UPPER_BYTE)
                         + coder.readByte();
@@ -316,33 +333,39 @@ public final class ScreenPacket implements Copyable<ScreenPacket> {
      */
     public byte[] encode() throws IOException {
         final ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        final SWFEncoder coder = new SWFEncoder(stream);
-
-        int bits = keyFrame ? Coder.BIT4 : Coder.BIT5;
-        bits |= Coder.BIT0 | Coder.BIT1;
-        coder.writeByte(bits);
-
-        int word = ((blockWidth / PIXELS_PER_BLOCK) - 1) << Coder.TO_UPPER_NIB;
-        word |= imageWidth & Coder.LOWEST12;
-        coder.writeByte(word >> Coder.TO_LOWER_BYTE);
-        coder.writeByte(word);
-
-        word = ((blockHeight / PIXELS_PER_BLOCK) - 1) << Coder.TO_UPPER_NIB;
-        word |= imageHeight & Coder.LOWEST12;
-        coder.writeByte(word >> Coder.TO_LOWER_BYTE);
-        coder.writeByte(word);
-
-        byte[] blockData;
-
-        for (final ImageBlock block : imageBlocks) {
-            if (block.isEmpty()) {
-                coder.writeShort(0);
-            } else {
-                blockData = block.getBlock();
-                coder.writeByte(blockData.length >> Coder.TO_LOWER_BYTE);
-                coder.writeByte(blockData.length);
-                coder.writeBytes(blockData);
+        final SWFEncoder coder = CoderPool.getEncoder(stream);
+
+        try {
+            int bits = keyFrame ? Coder.BIT4 : Coder.BIT5;
+            bits |= Coder.BIT0 | Coder.BIT1;
+            coder.writeByte(bits);
+
+            int word = ((blockWidth / PIXELS_PER_BLOCK) - 1)
+                    << Coder.ALIGN_NIB3;
+            word |= imageWidth & Coder.LOWEST12;
+            coder.writeByte(word >> Coder.TO_LOWER_BYTE);
+            coder.writeByte(word);
+
+            word = ((blockHeight / PIXELS_PER_BLOCK) - 1) << Coder.ALIGN_NIB3;
+            word |= imageHeight & Coder.LOWEST12;
+            coder.writeByte(word >> Coder.TO_LOWER_BYTE);
+            coder.writeByte(word);
+
+            byte[] blockData;
+
+            for (final ImageBlock block : imageBlocks) {
+                if (block.isEmpty()) {
+                    coder.writeShort(0);
+                } else {
+                    blockData = block.getBlock();
+                    coder.writeByte(blockData.length >> Coder.TO_LOWER_BYTE);
+                    coder.writeByte(blockData.length);
+                    coder.writeBytes(blockData);
+                }
             }
+            coder.flush();
+        } finally {
+            CoderPool.release(coder);
         }
 
         return stream.toByteArray();
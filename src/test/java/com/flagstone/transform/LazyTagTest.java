@@ -0,0 +1,174 @@
+/*
+ * LazyTagTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.Coder;
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.coder.SWFFactory;
+
+public final class LazyTagTest {
+
+    private MovieTag decode(final byte[] bytes) throws IOException {
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.setMovieDecoder(new LazyDecoder());
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(bytes));
+        final Context context = new Context();
+        context.setRegistry(registry);
+        context.put(Context.VERSION, Movie.VERSION);
+        final List<MovieTag> list = new ArrayList<MovieTag>();
+        registry.getMovieDecoder().getObject(list, decoder, context);
+        return list.get(0);
+    }
+
+    private byte[] encode(final MovieTag object) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        final Context context = new Context();
+        object.prepareToEncode(context);
+        object.encode(encoder, context);
+        encoder.flush();
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void checkTagIsNotDecoded() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+
+        final MovieTag object = decode(binary);
+
+        assertTrue(object instanceof LazyTag);
+        assertFalse(((LazyTag) object).isDecoded());
+        assertEquals(MovieTypes.FRAME_LABEL, ((LazyTag) object).getType());
+    }
+
+    @Test
+    public void checkTagIsDecodedWhenAccessed() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+
+        final LazyTag object = (LazyTag) decode(binary);
+        final MovieTag tag = object.getTag();
+
+        assertTrue(tag instanceof FrameLabel);
+        assertEquals("lab", ((FrameLabel) tag).getLabel());
+        assertTrue(object.isDecoded());
+        assertSame(tag, object.getTag());
+    }
+
+    @Test(expected = IOException.class)
+    public void checkSkippedTagIsNotDecoded() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+        final SWFFactory<MovieTag> factory = new SWFFactory<MovieTag>() {
+            public void getObject(final List<MovieTag> list,
+                    final SWFDecoder coder, final Context context)
+                    throws IOException {
+                coder.skip(coder.readUnsignedShort() & Coder.LENGTH_FIELD);
+            }
+        };
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+
+        new LazyTag(new SWFDecoder(new ByteArrayInputStream(binary)),
+                factory, context).getTag();
+    }
+
+    @Test
+    public void checkLengthExcludesHeader() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+        final byte[] extended = new byte[] {(byte) 0xFF, 0x0A, 0x04, 0x00,
+                0x00, 0x00, 0x6C, 0x61, 0x62, 0x00 };
+
+        assertEquals(4, ((LazyTag) decode(binary)).getLength());
+        assertEquals(4, ((LazyTag) decode(extended)).getLength());
+    }
+
+    @Test
+    public void checkUntouchedTagIsEncodedVerbatim() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xFF, 0x0A, 0x04, 0x00,
+                0x00, 0x00, 0x6C, 0x61, 0x62, 0x00 };
+
+        assertArrayEquals(binary, encode(decode(binary)));
+    }
+
+    @Test
+    public void checkDecodedTagIsEncoded() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+        final byte[] expected = new byte[] {(byte) 0xC4, 0x0A, 0x6E, 0x65,
+                0x77, 0x00 };
+
+        final LazyTag object = (LazyTag) decode(binary);
+        ((FrameLabel) object.getTag()).setLabel("new");
+
+        assertArrayEquals(expected, encode(object));
+    }
+
+    @Test
+    public void checkEmptyTagIsDecodedImmediately() throws IOException {
+        final byte[] binary = new byte[] {0x40, 0x00 };
+
+        assertTrue(decode(binary) instanceof ShowFrame);
+    }
+
+    @Test
+    public void checkCopyIsIndependent() throws IOException {
+        final byte[] binary = new byte[] {(byte) 0xC4, 0x0A, 0x6C, 0x61,
+                0x62, 0x00 };
+
+        final LazyTag object = (LazyTag) decode(binary);
+        object.getTag();
+        final LazyTag copy = object.copy();
+        ((FrameLabel) copy.getTag()).setLabel("new");
+
+        assertEquals("lab", ((FrameLabel) object.getTag()).getLabel());
+    }
+}
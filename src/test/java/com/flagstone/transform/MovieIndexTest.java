@@ -0,0 +1,253 @@
+/*
+ * MovieIndexTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.fillstyle.SolidFill;
+import com.flagstone.transform.linestyle.LineStyle1;
+import com.flagstone.transform.util.shape.Canvas;
+
+public final class MovieIndexTest {
+
+    private File write(final boolean compressed)
+            throws DataFormatException, IOException {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setCompressed(compressed);
+        movie.add(header);
+        movie.add(new Background(WebPalette.LIGHT_BLUE.color()));
+
+        final Canvas canvas = new Canvas();
+        canvas.setLineStyle(new LineStyle1(20, WebPalette.BLACK.color()));
+        canvas.setFillStyle(new SolidFill(WebPalette.RED.color()));
+        canvas.move(0, 0);
+        canvas.rline(1000, 0);
+        canvas.rline(0, 1000);
+        canvas.close();
+        movie.add(canvas.defineShape(4711));
+        movie.add(Place2.show(4711, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(new FrameLabel("second"));
+        movie.add(new DefineData(12, new byte[100]));
+        movie.add(ShowFrame.getInstance());
+
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        MovieIndex.sidecarFor(file).deleteOnExit();
+        movie.encodeToFile(file);
+        return file;
+    }
+
+    @Test
+    public void checkObjectsAreIndexed() throws DataFormatException,
+            IOException {
+        final MovieIndex index = MovieIndex.build(write(false));
+
+        assertFalse(index.isCompressed());
+        assertEquals(Movie.VERSION, index.getVersion());
+        assertEquals(2, index.getFrameCount());
+        assertEquals(7, index.size());
+        assertEquals(MovieTypes.DEFINE_SHAPE_2, index.getType(1));
+        assertEquals(4711, index.getIdentifier(1));
+        assertEquals(-1, index.getIdentifier(2));
+        assertEquals(0, index.getFrameNumber(3));
+        assertEquals(1, index.getFrameNumber(4));
+        assertEquals(1, index.find(4711));
+        assertEquals(5, index.find(12));
+        assertEquals(-1, index.find(1));
+    }
+
+    @Test
+    public void checkDefinitionIsDecoded() throws DataFormatException,
+            IOException {
+        final MovieIndex index = MovieIndex.build(write(false));
+
+        final MovieTag tag = index.getDefinition(4711);
+        assertTrue(tag instanceof DefineTag);
+        assertEquals(4711, ((DefineTag) tag).getIdentifier());
+        assertEquals(100, ((DefineData) index.getDefinition(12))
+                .getData().length);
+        assertNull(index.getDefinition(1));
+    }
+
+    @Test
+    public void checkFrameIsDecoded() throws DataFormatException,
+            IOException {
+        final MovieIndex index = MovieIndex.build(write(false));
+        final List<MovieTag> frame = index.getFrame(1);
+
+        assertEquals(3, frame.size());
+        assertEquals("second", ((FrameLabel) frame.get(0)).getLabel());
+        assertTrue(frame.get(2) instanceof ShowFrame);
+        assertTrue(index.getFrame(2).isEmpty());
+    }
+
+    @Test
+    public void checkCompressedMovieIsIndexed() throws DataFormatException,
+            IOException {
+        final MovieIndex index = MovieIndex.build(write(true));
+
+        assertTrue(index.isCompressed());
+        assertEquals(7, index.size());
+        assertEquals(4711, ((DefineTag) index.getDefinition(4711))
+                .getIdentifier());
+        assertEquals("second", ((FrameLabel) index.getTag(4)).getLabel());
+    }
+
+    @Test
+    public void checkIndexIsSaved() throws DataFormatException,
+            IOException {
+        final File file = write(false);
+
+        assertNull(MovieIndex.load(file));
+        final MovieIndex index = MovieIndex.open(file);
+        assertTrue(MovieIndex.sidecarFor(file).isFile());
+
+        final MovieIndex loaded = MovieIndex.load(file);
+        assertNotNull(loaded);
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getFrameCount(), loaded.getFrameCount());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.getType(i), loaded.getType(i));
+            assertEquals(index.getIdentifier(i), loaded.getIdentifier(i));
+            assertEquals(index.getOffset(i), loaded.getOffset(i));
+            assertEquals(index.getLength(i), loaded.getLength(i));
+            assertEquals(index.getFrameNumber(i), loaded.getFrameNumber(i));
+        }
+        assertEquals(1, loaded.find(4711));
+        assertEquals(4711, ((DefineTag) loaded.getDefinition(4711))
+                .getIdentifier());
+    }
+
+    @Test
+    public void checkIndexIsReturnedIfSidecarCannotBeWritten()
+            throws DataFormatException, IOException {
+        final File file = write(false);
+        final File sidecar = MovieIndex.sidecarFor(file);
+        final File blocker = new File(sidecar, "file");
+        assertTrue(sidecar.mkdir());
+        assertTrue(blocker.createNewFile());
+
+        try {
+            final MovieIndex index = MovieIndex.open(file);
+
+            assertEquals(MovieIndex.build(file).size(), index.size());
+            assertTrue(sidecar.isDirectory());
+            for (final String name : file.getParentFile().list()) {
+                assertFalse(name.startsWith(sidecar.getName())
+                        && !name.equals(sidecar.getName()));
+            }
+        } finally {
+            blocker.delete();
+            sidecar.delete();
+        }
+    }
+
+    private void corrupt(final File file, final int offset, final int value)
+            throws IOException {
+        final RandomAccessFile stream = new RandomAccessFile(
+                MovieIndex.sidecarFor(file), "rw");
+        try {
+            stream.seek(offset);
+            stream.writeInt(value);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void checkInvalidCountIsRejected() throws DataFormatException,
+            IOException {
+        final File file = write(false);
+        final int size = MovieIndex.open(file).size();
+
+        corrupt(file, 28, Integer.MAX_VALUE);
+        assertNull(MovieIndex.load(file));
+        corrupt(file, 28, -1);
+        assertNull(MovieIndex.load(file));
+        assertEquals(size, MovieIndex.open(file).size());
+    }
+
+    @Test
+    public void checkObjectOutsideMovieIsRejected()
+            throws DataFormatException, IOException {
+        final File file = write(true);
+        MovieIndex.open(file);
+        assertNotNull(MovieIndex.load(file));
+
+        corrupt(file, 38, Integer.MAX_VALUE);
+        assertNull(MovieIndex.load(file));
+        assertNotNull(MovieIndex.open(file).getDefinition(4711));
+    }
+
+    @Test
+    public void checkChangedMovieIsIndexedAgain()
+            throws DataFormatException, IOException {
+        final File file = write(false);
+        MovieIndex.open(file);
+
+        final FileOutputStream stream = new FileOutputStream(file, true);
+        stream.write(0);
+        stream.close();
+
+        assertNull(MovieIndex.load(file));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkInvalidSignatureIsRejected() throws DataFormatException,
+            IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        final FileOutputStream stream = new FileOutputStream(file);
+        stream.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        stream.close();
+
+        MovieIndex.build(file);
+    }
+}
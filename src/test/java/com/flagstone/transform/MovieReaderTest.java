@@ -0,0 +1,302 @@
+/*
+ * MovieReaderTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.CoderPool;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+import com.flagstone.transform.shape.PathsArePostscript;
+
+public final class MovieReaderTest {
+
+    private static final int POOL_SIZE = 4;
+
+    private byte[] encode(final boolean compressed)
+            throws DataFormatException, IOException {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setCompressed(compressed);
+        movie.add(header);
+        movie.add(new Background(WebPalette.LIGHT_BLUE.color()));
+        movie.add(PathsArePostscript.getInstance());
+        movie.add(new FrameLabel("label"));
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void checkHeaderIsDecoded() throws DataFormatException,
+            IOException {
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(false)));
+
+        assertEquals(2, reader.getHeader().getFrameCount());
+        assertEquals(8000, reader.getHeader().getFrameSize().getMaxX());
+        reader.close();
+    }
+
+    @Test
+    public void checkTagsAreReadInOrder() throws DataFormatException,
+            IOException {
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(false)));
+
+        assertTrue(reader.read() instanceof Background);
+        assertTrue(reader.read() instanceof PathsArePostscript);
+        assertTrue(reader.read() instanceof FrameLabel);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertNull(reader.read());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void checkCompressedMovieIsRead() throws DataFormatException,
+            IOException {
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(true)));
+
+        assertTrue(reader.getHeader().isCompressed());
+        assertTrue(reader.read() instanceof Background);
+        reader.close();
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkInvalidSignatureIsRejected() throws DataFormatException,
+            IOException {
+        new MovieReader(new ByteArrayInputStream(new byte[] {1, 2, 3, 4}));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkInvalidLengthIsRejected() throws DataFormatException,
+            IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        final FileOutputStream stream = new FileOutputStream(file);
+        stream.write(new byte[] {0x46, 0x57, 0x53, 1, 4, 0, 0, 0});
+        stream.close();
+
+        new MovieReader(file);
+    }
+
+    @Test
+    public void checkDecoderIsReleasedIfHeaderCannotBeRead()
+            throws DataFormatException, IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        final FileOutputStream stream = new FileOutputStream(file);
+        stream.write(encode(false), 0, 10);
+        stream.close();
+
+        final SWFDecoder[] pooled = new SWFDecoder[POOL_SIZE];
+        for (int i = 0; i < pooled.length; i++) {
+            pooled[i] = CoderPool.getDecoder(ByteBuffer.allocate(0));
+        }
+        CoderPool.release(pooled[0]);
+
+        try {
+            new MovieReader(file);
+            fail();
+        } catch (final RuntimeException e) {
+            assertSame(pooled[0], CoderPool.getDecoder(ByteBuffer.allocate(0)));
+        } finally {
+            for (final SWFDecoder decoder : pooled) {
+                CoderPool.release(decoder);
+            }
+        }
+    }
+
+    @Test
+    public void checkDecoderIsReleasedIfStreamHeaderCannotBeRead()
+            throws DataFormatException, IOException {
+        final byte[] data = Arrays.copyOf(encode(true), 12);
+        data[6] = 1;
+
+        final SWFDecoder[] pooled = new SWFDecoder[POOL_SIZE];
+        for (int i = 0; i < pooled.length; i++) {
+            pooled[i] = CoderPool.getDecoder(ByteBuffer.allocate(0));
+        }
+        CoderPool.release(pooled[0]);
+
+        try {
+            new MovieReader(new ByteArrayInputStream(data));
+            fail();
+        } catch (final IOException e) {
+            assertSame(pooled[0], CoderPool.getDecoder(ByteBuffer.allocate(0)));
+        } finally {
+            for (final SWFDecoder decoder : pooled) {
+                CoderPool.release(decoder);
+            }
+        }
+    }
+
+    @Test
+    public void checkUncompressedFileIsMapped() throws DataFormatException,
+            IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        final FileOutputStream stream = new FileOutputStream(file);
+        stream.write(encode(false));
+        stream.close();
+
+        final MovieReader reader = new MovieReader(file);
+
+        assertEquals(2, reader.getHeader().getFrameCount());
+        assertTrue(reader.read() instanceof Background);
+        assertTrue(reader.read() instanceof PathsArePostscript);
+        assertTrue(reader.read() instanceof FrameLabel);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void checkTagsAreReadInParallel() throws DataFormatException,
+            IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(true)));
+
+        try {
+            assertTrue(reader.read() instanceof Background);
+
+            final List<MovieTag> list = reader.readAll(executor);
+
+            assertEquals(4, list.size());
+            assertTrue(list.get(0) instanceof PathsArePostscript);
+            assertEquals("label", ((FrameLabel) list.get(1)).getLabel());
+            assertTrue(list.get(2) instanceof ShowFrame);
+            assertTrue(list.get(3) instanceof ShowFrame);
+            assertNull(reader.read());
+        } finally {
+            reader.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkLazyTagsAreNotDecodedInParallel()
+            throws DataFormatException, IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.setMovieDecoder(new LazyDecoder());
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(false)), registry,
+                CharacterEncoding.UTF8);
+
+        try {
+            final List<MovieTag> list = reader.readAll(executor);
+
+            assertEquals(5, list.size());
+            assertFalse(((LazyTag) list.get(0)).isDecoded());
+            assertTrue(list.get(1) instanceof PathsArePostscript);
+            assertFalse(((LazyTag) list.get(2)).isDecoded());
+            assertEquals("label",
+                    ((FrameLabel) ((LazyTag) list.get(2)).getTag()).getLabel());
+        } finally {
+            reader.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkSelectedTypesAreReadThroughLazyDecoder()
+            throws DataFormatException, IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.selectMovieTypes(
+                Collections.singleton(MovieTypes.FRAME_LABEL), false);
+        registry.setMovieDecoder(new LazyDecoder(registry.getMovieDecoder()));
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(encode(false)), registry,
+                CharacterEncoding.UTF8);
+
+        try {
+            final List<MovieTag> list = reader.readAll(executor);
+
+            assertEquals(1, list.size());
+            assertEquals("label",
+                    ((FrameLabel) ((LazyTag) list.get(0)).getTag()).getLabel());
+        } finally {
+            reader.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkMovieIsDecodedInParallel() throws DataFormatException,
+            IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Movie expected = new Movie();
+        final Movie movie = new Movie();
+
+        try {
+            expected.decodeFromStream(new ByteArrayInputStream(encode(false)));
+            movie.setExecutor(executor);
+            movie.decodeFromStream(new ByteArrayInputStream(encode(false)));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(expected.toString(), movie.toString());
+    }
+}
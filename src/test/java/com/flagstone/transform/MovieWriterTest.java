@@ -0,0 +1,155 @@
+/*
+ * MovieWriterTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+
+public final class MovieWriterTest {
+
+    private MovieHeader header(final boolean compressed) {
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setCompressed(compressed);
+        return header;
+    }
+
+    private void write(final MovieWriter writer) throws IOException {
+        writer.write(new Background(WebPalette.LIGHT_BLUE.color()));
+        writer.write(ShowFrame.getInstance());
+        writer.write(ShowFrame.getInstance());
+        writer.close();
+    }
+
+    private void check(final byte[] data) throws DataFormatException,
+            IOException {
+        final MovieReader reader = new MovieReader(
+                new ByteArrayInputStream(data));
+
+        assertEquals(2, reader.getHeader().getFrameCount());
+        assertTrue(reader.read() instanceof Background);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertTrue(reader.read() instanceof ShowFrame);
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    private byte[] read(final File file) throws IOException {
+        final byte[] data = new byte[(int) file.length()];
+        final FileInputStream stream = new FileInputStream(file);
+        int offset = 0;
+        while (offset < data.length) {
+            offset += stream.read(data, offset, data.length - offset);
+        }
+        stream.close();
+        return data;
+    }
+
+    @Test
+    public void checkUncompressedStreamIsWritten()
+            throws DataFormatException, IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        write(new MovieWriter(stream, header(false)));
+        check(stream.toByteArray());
+    }
+
+    @Test
+    public void checkCompressedStreamIsWritten()
+            throws DataFormatException, IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        write(new MovieWriter(stream, header(true)));
+        check(stream.toByteArray());
+    }
+
+    @Test
+    public void checkUncompressedFileIsPatched()
+            throws DataFormatException, IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        write(new MovieWriter(file, header(false)));
+        final byte[] data = read(file);
+        final int length = (data[4] & 0xFF) | (data[5] & 0xFF) << 8
+                | (data[6] & 0xFF) << 16 | (data[7] & 0xFF) << 24;
+
+        assertEquals(data.length, length);
+        check(data);
+    }
+
+    @Test
+    public void checkCompressedFileIsWritten()
+            throws DataFormatException, IOException {
+        final File file = File.createTempFile("movie", ".swf");
+        file.deleteOnExit();
+        write(new MovieWriter(file, header(true)));
+        check(read(file));
+    }
+
+    @Test
+    public void checkOutputMatchesMovie() throws DataFormatException,
+            IOException {
+        final Movie movie = new Movie();
+        movie.add(header(false));
+        movie.add(new Background(WebPalette.LIGHT_BLUE.color()));
+        movie.add(ShowFrame.getInstance());
+        movie.add(ShowFrame.getInstance());
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        movie.encodeToStream(expected);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        write(new MovieWriter(stream, header(false)));
+
+        assertArrayEquals(expected.toByteArray(), stream.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void checkWriteAfterCloseFails() throws IOException {
+        final MovieWriter writer = new MovieWriter(
+                new ByteArrayOutputStream(), header(false));
+        writer.close();
+        writer.write(ShowFrame.getInstance());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * SelectiveDecoderTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.flagstone.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
+import com.flagstone.transform.coder.SWFDecoder;
+import com.flagstone.transform.coder.SWFEncoder;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.WebPalette;
+
+public final class SelectiveDecoderTest {
+
+    private static final byte[] LABEL = new byte[] {(byte) 0xC4, 0x0A,
+        0x6C, 0x61, 0x62, 0x00 };
+
+    private static final byte[] FRAME = new byte[] {0x40, 0x00 };
+
+    private Set<Integer> types(final Integer... values) {
+        return new HashSet<Integer>(Arrays.asList(values));
+    }
+
+    private List<MovieTag> decode(final SelectiveDecoder factory,
+            final byte[] bytes) throws IOException {
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.setMovieDecoder(factory);
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(bytes));
+        final Context context = new Context();
+        context.setRegistry(registry);
+        context.put(Context.VERSION, Movie.VERSION);
+        final List<MovieTag> list = new ArrayList<MovieTag>();
+        factory.getObject(list, decoder, context);
+        return list;
+    }
+
+    private byte[] encode(final MovieTag object) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        final Context context = new Context();
+        object.prepareToEncode(context);
+        object.encode(encoder, context);
+        encoder.flush();
+        return stream.toByteArray();
+    }
+
+    private byte[] movie() throws DataFormatException, IOException {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        header.setCompressed(false);
+        movie.add(header);
+        movie.add(new Background(WebPalette.LIGHT_BLUE.color()));
+        movie.add(new FrameLabel("first"));
+        movie.add(ShowFrame.getInstance());
+        movie.add(new FrameLabel("second"));
+        movie.add(ShowFrame.getInstance());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkNullSetIsRejected() {
+        new SelectiveDecoder(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkInvalidTypeIsRejected() {
+        new SelectiveDecoder(types(1024));
+    }
+
+    @Test
+    public void checkSelectedTagIsDecoded() throws IOException {
+        final List<MovieTag> list = decode(new SelectiveDecoder(
+                types(MovieTypes.FRAME_LABEL)), LABEL);
+
+        assertEquals(1, list.size());
+        assertEquals("lab", ((FrameLabel) list.get(0)).getLabel());
+    }
+
+    @Test
+    public void checkOtherTagIsKept() throws IOException {
+        final List<MovieTag> list = decode(new SelectiveDecoder(
+                types(MovieTypes.SYMBOL)), LABEL);
+
+        assertEquals(1, list.size());
+        assertEquals(MovieTypes.FRAME_LABEL,
+                ((MovieObject) list.get(0)).getType());
+        assertArrayEquals(LABEL, encode(list.get(0)));
+    }
+
+    @Test
+    public void checkOtherTagIsDiscarded() throws IOException {
+        final SelectiveDecoder factory = new SelectiveDecoder(
+                types(MovieTypes.SYMBOL), false);
+
+        assertFalse(factory.isKeepingOthers());
+        assertTrue(decode(factory, LABEL).isEmpty());
+    }
+
+    @Test
+    public void checkEmptyTagIsDecodedWhenKept() throws IOException {
+        final List<MovieTag> list = decode(new SelectiveDecoder(
+                types(MovieTypes.SYMBOL)), FRAME);
+
+        assertTrue(list.get(0) instanceof ShowFrame);
+    }
+
+    @Test
+    public void checkEmptyTagIsDiscarded() throws IOException {
+        assertTrue(decode(new SelectiveDecoder(types(MovieTypes.SYMBOL),
+                false), FRAME).isEmpty());
+    }
+
+    @Test
+    public void checkMovieDecodesSelectedTags() throws DataFormatException,
+            IOException {
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.selectMovieTypes(types(MovieTypes.FRAME_LABEL), false);
+
+        final Movie movie = new Movie();
+        movie.setRegistry(registry);
+        movie.decodeFromStream(new ByteArrayInputStream(movie()));
+
+        assertEquals(3, movie.getObjects().size());
+        assertEquals("first",
+                ((FrameLabel) movie.getObjects().get(1)).getLabel());
+        assertEquals("second",
+                ((FrameLabel) movie.getObjects().get(2)).getLabel());
+    }
+
+    @Test
+    public void checkMovieDecodesSelectedTagsInParallel()
+            throws DataFormatException, IOException {
+        final DecoderRegistry registry = DecoderRegistry.getDefault();
+        registry.selectMovieTypes(types(MovieTypes.FRAME_LABEL), true);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Movie movie = new Movie();
+            movie.setRegistry(registry);
+            movie.setExecutor(executor);
+            movie.decodeFromStream(new ByteArrayInputStream(movie()));
+
+            final List<MovieTag> list = movie.getObjects();
+            assertEquals(6, list.size());
+            assertTrue(list.get(1) instanceof MovieObject);
+            assertEquals("first", ((FrameLabel) list.get(2)).getLabel());
+            assertTrue(list.get(3) instanceof ShowFrame);
+            assertEquals("second", ((FrameLabel) list.get(4)).getLabel());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
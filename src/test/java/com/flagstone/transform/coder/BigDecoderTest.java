@@ -161,6 +161,39 @@ public final class BigDecoderTest {
         assertEquals(4, fixture.readByte());
     }
 
+    @Test
+    public void readIntAfterRefillingBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5, 6 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final BigDecoder fixture = new BigDecoder(stream, 4);
+        fixture.readUnsignedShort();
+
+        assertEquals(0x03040506, fixture.readInt());
+    }
+
+    @Test
+    public void readBytesLargerThanBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final BigDecoder fixture = new BigDecoder(stream, 4);
+        fixture.readByte();
+        final byte[] bytes = fixture.readBytes(new byte[8]);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 1, 9), bytes);
+        assertEquals(9, fixture.mark());
+        assertEquals(10, fixture.readByte());
+        assertTrue(fixture.eof());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void readBytesBeyondAvailableData() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final BigDecoder fixture = new BigDecoder(stream, 2);
+
+        fixture.readBytes(new byte[6]);
+    }
+
     @Test(expected = ArrayIndexOutOfBoundsException.class)
     public void skipBeyondAvailableData() throws IOException {
         final byte[] data = new byte[] {1, 2, 3, 4 };
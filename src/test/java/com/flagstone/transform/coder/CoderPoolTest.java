@@ -0,0 +1,106 @@
+/*
+ * CoderPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.coder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.flagstone.transform.CharacterEncoding;
+
+public final class CoderPoolTest {
+
+    @Test
+    public void releasedDecoderIsReused() {
+        final SWFDecoder first = CoderPool.getDecoder(
+                ByteBuffer.wrap(new byte[1]));
+        CoderPool.release(first);
+        final SWFDecoder second = CoderPool.getDecoder(
+                new ByteArrayInputStream(new byte[1]));
+        CoderPool.release(second);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void nestedDecodersAreDifferent() {
+        final SWFDecoder outer = CoderPool.getDecoder(
+                ByteBuffer.wrap(new byte[1]));
+        final SWFDecoder inner = CoderPool.getDecoder(
+                ByteBuffer.wrap(new byte[1]));
+
+        assertNotSame(outer, inner);
+        CoderPool.release(inner);
+        CoderPool.release(outer);
+    }
+
+    @Test
+    public void reusedDecoderReadsNewData() throws IOException {
+        final SWFDecoder first = CoderPool.getDecoder(
+                ByteBuffer.wrap(new byte[] {1, 2 }));
+        first.setEncoding(CharacterEncoding.ANSI);
+        first.readByte();
+        CoderPool.release(first);
+
+        final SWFDecoder second = CoderPool.getDecoder(
+                new ByteArrayInputStream(new byte[] {0x61, 0x62, 0 }));
+
+        assertEquals("ab", second.readString());
+        CoderPool.release(second);
+    }
+
+    @Test
+    public void reusedEncoderWritesNewData() throws IOException {
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        SWFEncoder coder = CoderPool.getEncoder(first);
+        coder.writeBits(1, 1);
+        CoderPool.release(coder);
+
+        coder = CoderPool.getEncoder(second);
+        coder.writeByte(2);
+        coder.flush();
+        CoderPool.release(coder);
+
+        assertEquals(0, first.size());
+        assertArrayEquals(new byte[] {2 }, second.toByteArray());
+    }
+}
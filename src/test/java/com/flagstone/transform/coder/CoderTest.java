@@ -61,6 +61,17 @@ public final class CoderTest {
         assertEquals(3, Coder.maxSize(-1, 2, 1, 3));
     }
 
+    @Test
+    public void maxSizeForNoValues() {
+        assertEquals(0, Coder.maxSize());
+    }
+
+    @Test
+    public void sizeForZero() {
+        assertEquals(1, Coder.size(0));
+        assertEquals(0, Coder.unsignedSize(0));
+    }
+
     @Test
     public void sizeForNegativeByte() {
         assertEquals(8, Coder.unsignedSize(-255));
@@ -0,0 +1,112 @@
+/*
+ * CoderPoolTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.flagstone.transform.coder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+
+import org.junit.Test;
+
+public final class ContextTest {
+
+    @Test
+    public void putSetsVariable() {
+        final Context fixture = new Context();
+        fixture.put(Context.FILL_SIZE, 3);
+
+        assertTrue(fixture.contains(Context.FILL_SIZE));
+        assertEquals(3, fixture.get(Context.FILL_SIZE));
+    }
+
+    @Test
+    public void zeroValueIsSet() {
+        final Context fixture = new Context();
+        fixture.put(Context.LINE_SIZE, 0);
+
+        assertTrue(fixture.contains(Context.LINE_SIZE));
+    }
+
+    @Test
+    public void removeClearsVariable() {
+        final Context fixture = new Context();
+        fixture.put(Context.TYPE, 2);
+        fixture.put(Context.VERSION, 8);
+        fixture.remove(Context.TYPE);
+
+        assertFalse(fixture.contains(Context.TYPE));
+        assertEquals(0, fixture.get(Context.TYPE));
+        assertEquals(8, fixture.get(Context.VERSION));
+    }
+
+    @Test
+    public void setEncodingUpdatesCharset() {
+        final Context fixture = new Context();
+        fixture.setEncoding("UTF-16LE");
+
+        assertEquals(Charset.forName("UTF-16LE"), fixture.getCharset());
+        assertEquals(7, fixture.strlen("abc"));
+    }
+
+    @Test
+    public void strlenMatchesEncodedLength()
+            throws UnsupportedEncodingException {
+        final Context fixture = new Context();
+        final String[] strings = {"", "abc", "a\u00e9", "\u20ac1",
+                "\ud83d\ude00", "\ud83d", "x\ude00y" };
+
+        for (final String str : strings) {
+            assertEquals(str.getBytes("UTF-8").length + 1,
+                    fixture.strlen(str));
+        }
+    }
+
+    @Test
+    public void strlenWithAsciiCharset() throws UnsupportedEncodingException {
+        final Context fixture = new Context();
+        fixture.setEncoding("Shift_JIS");
+
+        assertEquals(4, fixture.strlen("abc"));
+        assertEquals("\u65e5".getBytes("Shift_JIS").length + 1,
+                fixture.strlen("\u65e5"));
+    }
+
+    @Test(expected = UnsupportedCharsetException.class)
+    public void setEncodingWithUnknownCharset() {
+        new Context().setEncoding("x-unknown");
+    }
+}
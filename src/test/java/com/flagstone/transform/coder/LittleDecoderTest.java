@@ -36,6 +36,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.EmptyStackException;
 
 import org.junit.Test;
@@ -139,6 +140,28 @@ public final class LittleDecoderTest {
         assertEquals(4, fixture.readByte());
     }
 
+    @Test
+    public void readBytesLargerThanBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final LittleDecoder fixture = new LittleDecoder(stream, 4);
+        fixture.readByte();
+        final byte[] bytes = fixture.readBytes(new byte[8]);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 1, 9), bytes);
+        assertEquals(9, fixture.mark());
+        assertEquals(10, fixture.readByte());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void readBytesBeyondAvailableData() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final LittleDecoder fixture = new LittleDecoder(stream, 2);
+
+        fixture.readBytes(new byte[6]);
+    }
+
     @Test(expected = ArrayIndexOutOfBoundsException.class)
     public void skipBeyondAvailableData() throws IOException {
         final byte[] data = new byte[] {1, 2, 3, 4 };
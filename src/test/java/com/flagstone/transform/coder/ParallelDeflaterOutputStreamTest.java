@@ -0,0 +1,155 @@
+/*
+ * ParallelDeflaterOutputStreamTest.java
+ * Transform
+ *
+ * Copyright (c) 2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.coder;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public final class ParallelDeflaterOutputStreamTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    private byte[] data(final int length) {
+        final Random random = new Random(length);
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return bytes;
+    }
+
+    private byte[] compress(final byte[] data, final int level,
+            final int strategy) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final ParallelDeflaterOutputStream deflater =
+            new ParallelDeflaterOutputStream(stream, executor, level,
+                    strategy);
+        deflater.write(data);
+        deflater.close();
+        return stream.toByteArray();
+    }
+
+    private byte[] inflate(final byte[] data) throws IOException {
+        final InputStream stream = new InflaterInputStream(
+                new ByteArrayInputStream(data));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        stream.close();
+        return out.toByteArray();
+    }
+
+    private void check(final int length) throws IOException {
+        final byte[] data = data(length);
+        assertArrayEquals(data, inflate(compress(data,
+                Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY)));
+    }
+
+    @Test
+    public void compressEmptyStream() throws IOException {
+        check(0);
+    }
+
+    @Test
+    public void compressPartialBlock() throws IOException {
+        check(1000);
+    }
+
+    @Test
+    public void compressSingleBlock() throws IOException {
+        check(ParallelDeflaterOutputStream.BLOCK_SIZE);
+    }
+
+    @Test
+    public void compressMultipleBlocks() throws IOException {
+        check(ParallelDeflaterOutputStream.BLOCK_SIZE * 7 + 12345);
+    }
+
+    @Test
+    public void compressWithLevelAndStrategy() throws IOException {
+        final byte[] data = data(ParallelDeflaterOutputStream.BLOCK_SIZE * 2);
+        assertArrayEquals(data, inflate(compress(data,
+                Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY)));
+        assertArrayEquals(data, inflate(compress(data,
+                Deflater.BEST_COMPRESSION, Deflater.FILTERED)));
+        assertArrayEquals(data, inflate(compress(data,
+                Deflater.BEST_SPEED, Deflater.HUFFMAN_ONLY)));
+    }
+
+    @Test
+    public void compressSingleBytes() throws IOException {
+        final byte[] data = data(ParallelDeflaterOutputStream.BLOCK_SIZE + 10);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final ParallelDeflaterOutputStream deflater =
+            new ParallelDeflaterOutputStream(stream, executor);
+        for (final byte value : data) {
+            deflater.write(value);
+        }
+        deflater.close();
+        assertArrayEquals(data, inflate(stream.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterFinish() throws IOException {
+        final ParallelDeflaterOutputStream deflater =
+            new ParallelDeflaterOutputStream(new ByteArrayOutputStream(),
+                    executor);
+        deflater.finish();
+        deflater.write(1);
+    }
+}
@@ -33,9 +33,14 @@ package com.flagstone.transform.coder; // NOPMD - too many methods, etc.
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.EmptyStackException;
 
 import org.junit.Test;
@@ -76,6 +81,23 @@ public final class SWFDecoderTest {
         fixture.unmark();
     }
 
+    @Test
+    public void markStoresNestedLocations() throws IOException {
+        final byte[] data = new byte[40];
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        for (int i = 0; i < data.length; i++) {
+            fixture.mark();
+            fixture.readByte();
+        }
+        for (int i = 0; i < data.length; i++) {
+            fixture.check(i + 1);
+            assertEquals(0, fixture.getDelta());
+            fixture.unmark();
+        }
+    }
+
     @Test
     public void resetRestoresLocations() throws IOException {
         final byte[] data = new byte[] {1, 2, 3, 4 };
@@ -284,6 +306,55 @@ public final class SWFDecoderTest {
         assertEquals(-1, fixture.readBits(4, true));
     }
 
+    @Test
+    public void readBitsWithFullWordAtOffset() throws IOException {
+        final byte[] data = new byte[] {(byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0x80 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        fixture.readBits(1, false);
+        assertEquals(-1, fixture.readBits(32, false));
+        assertEquals(0, fixture.readBits(7, false));
+    }
+
+    @Test
+    public void readBitsAcrossRefill() throws IOException {
+        final byte[] data = new byte[] {(byte) 0x81, (byte) 0x81,
+                (byte) 0x81, (byte) 0x81 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream, 2);
+
+        assertEquals(1, fixture.readBits(1, false));
+        assertEquals(0x0181, fixture.readBits(15, false));
+        assertEquals(0x0206, fixture.scanBits(10, false));
+        assertEquals(0x0206, fixture.readBits(10, false));
+        assertEquals(1, fixture.readBits(6, false));
+    }
+
+    @Test
+    public void readBitsAfterReadingBytes() throws IOException {
+        final byte[] data = new byte[] {(byte) 0xF0, 1, (byte) 0x80 };
+        final SWFDecoder fixture = new SWFDecoder(ByteBuffer.wrap(data));
+
+        assertEquals(0x0F, fixture.readBits(4, false));
+        fixture.alignToByte();
+        assertEquals(1, fixture.readByte());
+        assertEquals(1, fixture.readBits(1, false));
+    }
+
+    @Test
+    public void readBit() throws IOException {
+        final byte[] data = new byte[] {(byte) 0xA0, (byte) 0x80 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        fixture.readBits(7, false);
+        assertFalse(fixture.readBit());
+        assertTrue(fixture.readBit());
+        assertEquals(0, fixture.readBits(7, false));
+    }
+
     @Test
     public void readZeroBits() throws IOException {
         final byte[] data = new byte[] {3, (byte) 0xC0 };
@@ -348,6 +419,18 @@ public final class SWFDecoderTest {
         assertArrayEquals(data, buffer);
     }
 
+    @Test
+    public void readBytesWithOffset() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        final byte[] buffer = new byte[data.length + 2];
+        fixture.readBytes(buffer, 2, data.length);
+
+        assertArrayEquals(data, Arrays.copyOfRange(buffer, 2, buffer.length));
+    }
+
     @Test
     public void readString() throws IOException {
         final byte[] data = new byte[] {0x61, 0x62, 0x63, 0x00 };
@@ -366,6 +449,36 @@ public final class SWFDecoderTest {
         assertEquals(STRING, fixture.readString());
     }
 
+    @Test
+    public void readStringWithSeveralRefills() throws IOException {
+        final byte[] data = new byte[] {0x61, 0x62, 0x63, 0x64, 0x65, 0x00 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream, 2);
+
+        assertEquals("abcde", fixture.readString());
+    }
+
+    @Test
+    public void readStringWithMultibyteCharacters() throws IOException {
+        final byte[] data = new byte[] {0x61, (byte) 0xC3, (byte) 0xA9, 0x00 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        assertEquals("a\u00e9", fixture.readString());
+    }
+
+    @Test
+    public void readSharedStringReturnsSameString() throws IOException {
+        final byte[] data = new byte[] {0x61, 0x62, 0x63, 0x00,
+                0x61, 0x62, 0x63, 0x00 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream);
+
+        final String str = fixture.readSharedString();
+        assertEquals(STRING, str);
+        assertSame(str, fixture.readSharedString());
+    }
+
     @Test
     public void readStringWithLength() throws IOException {
         final byte[] data = new byte[] {0x61, 0x62, 0x63, 0x00 };
@@ -384,6 +497,15 @@ public final class SWFDecoderTest {
         assertEquals(STRING, fixture.readString(4));
     }
 
+    @Test
+    public void readStringWithLengthAndRefill() throws IOException {
+        final byte[] data = new byte[] {0x61, 0x62, 0x63, 0x00 };
+        final ByteArrayInputStream stream = new ByteArrayInputStream(data);
+        final SWFDecoder fixture = new SWFDecoder(stream, 2);
+
+        assertEquals(STRING, fixture.readString(4));
+    }
+
     @Test
     public void scanUnsignedShort() throws IOException {
         final byte[] data = new byte[] {2, 1, 0, 0 };
@@ -609,4 +731,115 @@ public final class SWFDecoderTest {
 
         assertEquals(0.0, fixture.readHalf(), 0.0);
     }
+
+    @Test
+    public void readFromArrayBuffer() throws IOException {
+        final byte[] data = new byte[] {9, 9, 1, 2, 3, 4, 9 };
+        final ByteBuffer buffer = ByteBuffer.wrap(data, 2, 4);
+        final SWFDecoder fixture = new SWFDecoder(buffer);
+
+        assertEquals(0, fixture.mark());
+        assertEquals(0x04030201, fixture.readInt());
+        assertEquals(4, fixture.bytesRead());
+        assertEquals(2, buffer.position());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void readPastEndOfArrayBuffer() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5, 6 };
+        final SWFDecoder fixture = new SWFDecoder(
+                ByteBuffer.wrap(data, 0, 3));
+
+        fixture.readInt();
+    }
+
+    @Test
+    public void readFromDirectBuffer() throws IOException {
+        final int length = SWFDecoder.BUFFER_SIZE * 3;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) i);
+        }
+        buffer.flip();
+        final SWFDecoder fixture = new SWFDecoder(buffer);
+
+        for (int i = 0; i < length; i++) {
+            assertEquals(i & 0xFF, fixture.readByte());
+        }
+    }
+
+    @Test
+    public void skipInDirectBuffer() throws IOException {
+        final int length = SWFDecoder.BUFFER_SIZE * 3;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) i);
+        }
+        buffer.flip();
+        final SWFDecoder fixture = new SWFDecoder(buffer);
+
+        fixture.mark();
+        fixture.readByte();
+        fixture.skip(SWFDecoder.BUFFER_SIZE * 2);
+        assertEquals((SWFDecoder.BUFFER_SIZE * 2 + 1) & 0xFF,
+                fixture.readByte());
+        assertEquals(SWFDecoder.BUFFER_SIZE * 2 + 2, fixture.bytesRead());
+    }
+
+    @Test
+    public void readBytesFromDirectBuffer() throws IOException {
+        final int length = SWFDecoder.BUFFER_SIZE * 3;
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(data);
+        buffer.flip();
+        final SWFDecoder fixture = new SWFDecoder(buffer);
+
+        fixture.mark();
+        assertEquals(0, fixture.readByte());
+        final byte[] bytes = fixture.readBytes(new byte[length - 2]);
+        assertEquals(1, bytes[0]);
+        assertEquals((length - 2) & 0xFF, bytes[length - 3] & 0xFF);
+        assertEquals((length - 1) & 0xFF, fixture.readByte());
+        assertEquals(length, fixture.bytesRead());
+    }
+
+    @Test
+    public void setInputDiscardsState() throws IOException {
+        final SWFDecoder fixture = new SWFDecoder(
+                ByteBuffer.wrap(new byte[] {1, 2, 3 }));
+
+        fixture.mark();
+        fixture.readBits(3, false);
+        fixture.setInput(new ByteArrayInputStream(new byte[] {4, 5 }));
+
+        fixture.mark();
+        assertEquals(4, fixture.readByte());
+        assertEquals(5, fixture.readByte());
+        assertEquals(2, fixture.bytesRead());
+    }
+
+    @Test
+    public void setInputWithByteBuffer() throws IOException {
+        final SWFDecoder fixture = new SWFDecoder(
+                new ByteArrayInputStream(new byte[] {1, 2, 3 }));
+
+        fixture.readByte();
+        fixture.setInput(ByteBuffer.wrap(new byte[] {4, 5, 6 }, 1, 2));
+
+        assertEquals(5, fixture.readByte());
+        assertEquals(6, fixture.readByte());
+    }
+
+    @Test(expected = EmptyStackException.class)
+    public void setInputClearsMarks() throws IOException {
+        final SWFDecoder fixture = new SWFDecoder(
+                ByteBuffer.wrap(new byte[] {1, 2, 3 }));
+        fixture.mark();
+        fixture.setInput(ByteBuffer.wrap(new byte[] {1, 2, 3 }));
+        fixture.unmark();
+    }
 }
@@ -123,6 +123,34 @@ public final class SWFEncoderTest {
         assertArrayEquals(data, stream.toByteArray());
     }
 
+    @Test
+    public void writeBitsWithFullWordAtOffset() throws IOException {
+        final byte[] data = new byte[] {-1, -1, -1, -1, -128 };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+
+        encoder.writeBits(1, 1);
+        encoder.writeBits(-1, 32);
+        encoder.alignToByte();
+        encoder.flush();
+
+        assertArrayEquals(data, stream.toByteArray());
+    }
+
+    @Test
+    public void writeZeroBitsAtOffset() throws IOException {
+        final byte[] data = new byte[] {-128 };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+
+        encoder.writeBits(1, 1);
+        encoder.writeBits(-1, 0);
+        encoder.alignToByte();
+        encoder.flush();
+
+        assertArrayEquals(data, stream.toByteArray());
+    }
+
     @Test
     public void writeBitsAcrossShortBoundary() throws IOException {
     	final byte[] data = new byte[] {0, 3, -64 };
@@ -209,6 +237,19 @@ public final class SWFEncoderTest {
         assertArrayEquals(data, stream.toByteArray());
     }
 
+    @Test
+    public void writeStringWithMultibyteCharacters() throws IOException {
+        final byte[] data = new byte[] {0x61, (byte) 0xC3, (byte) 0xA9, 0x00 };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        encoder.setEncoding(CharacterEncoding.UTF8);
+
+        encoder.writeString("a\u00e9");
+        encoder.flush();
+
+        assertArrayEquals(data, stream.toByteArray());
+    }
+
     @Test
     public void writeShort() throws IOException {
     	final byte[] data = new byte[] {2, 1 };
@@ -389,4 +430,21 @@ public final class SWFEncoderTest {
 
         assertArrayEquals(data, stream.toByteArray());
     }
+
+    @Test
+    public void setOutputDiscardsState() throws IOException {
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        final SWFEncoder fixture = new SWFEncoder(first);
+
+        fixture.writeByte(1);
+        fixture.writeBits(7, 3);
+        fixture.setOutput(second);
+        fixture.writeBits(1, 4);
+        fixture.alignToByte();
+        fixture.flush();
+
+        assertEquals(0, first.size());
+        assertArrayEquals(new byte[] {0x10 }, second.toByteArray());
+    }
 }
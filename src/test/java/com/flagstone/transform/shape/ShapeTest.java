@@ -31,6 +31,7 @@
 
 package com.flagstone.transform.shape;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
@@ -42,7 +43,9 @@ import java.io.IOException;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.flagstone.transform.MovieTypes;
 import com.flagstone.transform.coder.Context;
+import com.flagstone.transform.coder.DecoderRegistry;
 import com.flagstone.transform.coder.SWFDecoder;
 import com.flagstone.transform.coder.SWFEncoder;
 
@@ -56,6 +59,70 @@ public final class ShapeTest {
     private final transient byte[] extended = new byte[] {0x7F, 0x01, 0x06,
             0x00, 0x00, 0x00, 0x01, 0x00, 0x02, 0x00, 0x06, 0x50 };
 
+    private Shape createShape() {
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(100, -200));
+        shape.add(new Line(10, -20));
+        shape.add(new Line(0, 300));
+        shape.add(new Line(-4000, 0));
+        shape.add(new Line(0, 0));
+        shape.add(new Curve(1, 2, -30, 40));
+        shape.add(new ShapeStyle().setMove(-65536, 65535));
+        shape.add(new Curve(0, 0, 0, 0));
+        return shape;
+    }
+
+    private byte[] encode(final Shape shape) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final SWFEncoder encoder = new SWFEncoder(stream);
+        final Context context = new Context();
+        context.put(Context.FILL_SIZE, 1);
+        context.put(Context.LINE_SIZE, 1);
+
+        final int length = shape.prepareToEncode(context);
+        encoder.mark();
+        shape.encode(encoder, context);
+        encoder.check(length);
+        encoder.flush();
+        return stream.toByteArray();
+    }
+
+    private Shape decode(final byte[] data) throws IOException {
+        final SWFDecoder decoder = new SWFDecoder(
+                new ByteArrayInputStream(data));
+        final Context context = new Context();
+        context.setRegistry(DecoderRegistry.getDefault());
+        context.put(Context.TYPE, MovieTypes.DEFINE_SHAPE);
+        return new Shape(decoder, context);
+    }
+
+    @Test
+    public void decodedShapeEncodesTheSame() throws IOException {
+        final Shape shape = createShape();
+        final byte[] data = encode(shape);
+        final Shape decoded = decode(data);
+
+        assertArrayEquals(data, encode(decoded));
+        assertArrayEquals(data, encode(decoded.copy()));
+        assertEquals(shape.toString(), decoded.toString());
+    }
+
+    @Test
+    public void decodedShapeCreatesRecords() throws IOException {
+        final Shape shape = createShape();
+        final byte[] data = encode(shape);
+        final Shape decoded = decode(data);
+
+        assertEquals(shape.getObjects().size(),
+                decoded.getObjects().size());
+        assertEquals(shape.toString(), decoded.toString());
+        assertArrayEquals(data, encode(decoded));
+
+        decoded.add(new Line(1, 1));
+        assertEquals(shape.getObjects().size() + 1,
+                decoded.getObjects().size());
+    }
+
     @Test
     @Ignore
     public void checkCopy() {
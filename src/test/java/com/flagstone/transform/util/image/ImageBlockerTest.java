@@ -0,0 +1,88 @@
+/*
+ * ImageBlockerTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.flagstone.transform.video.ImageBlock;
+
+public final class ImageBlockerTest {
+
+    private static final int SIZE = 16;
+
+    private byte[] unzip(final byte[] data, final int length)
+            throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        final byte[] result = new byte[length];
+        try {
+            inflater.setInput(data);
+            assertEquals(length, inflater.inflate(result));
+            assertTrue(inflater.finished());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    @Test
+    public void checkBlockThatDoesNotCompress() throws DataFormatException {
+        final byte[] image = new byte[SIZE * 4];
+        new Random(1).nextBytes(image);
+
+        final List<ImageBlock> blocks = new ArrayList<ImageBlock>();
+        new ImageBlocker().getImageAsBlocks(blocks, SIZE, 1, SIZE, 1,
+                image);
+
+        assertEquals(1, blocks.size());
+        final byte[] data = blocks.get(0).getBlock();
+        assertTrue(data.length > SIZE * 3);
+
+        final byte[] expected = new byte[SIZE * 3];
+        int index = 0;
+        for (int src = 0; src < image.length; src += 4) {
+            expected[index++] = image[src + 2];
+            expected[index++] = image[src + 1];
+            expected[index++] = image[src];
+        }
+        assertArrayEquals(expected, unzip(data, expected.length));
+    }
+}
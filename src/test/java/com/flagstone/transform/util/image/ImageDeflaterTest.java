@@ -0,0 +1,121 @@
+/*
+ * ImageDeflaterTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.flagstone.transform.coder.ParallelDeflaterOutputStream;
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+public final class ImageDeflaterTest {
+
+    private byte[] image(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((i / 7) ^ (i % 13) ^ (i >> 11));
+        }
+        return data;
+    }
+
+    private byte[] unzip(final byte[] data, final int length)
+            throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        final byte[] result = new byte[length];
+        try {
+            inflater.setInput(data);
+            int count = 0;
+            while (!inflater.finished()) {
+                count += inflater.inflate(result, count, length - count);
+            }
+            assertEquals(0, inflater.getRemaining());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    @Test
+    public void checkImageIsCompressed() throws DataFormatException {
+        final byte[] img = image(1000);
+        final byte[] zipped = ImageDeflater.zip(null,
+                Deflater.DEFAULT_COMPRESSION, img);
+
+        assertTrue(zipped.length < img.length);
+        assertArrayEquals(img, unzip(zipped, img.length));
+    }
+
+    @Test
+    public void checkImageIsCompressedInParallel() throws DataFormatException {
+        final int length = 3 * ParallelDeflaterOutputStream.BLOCK_SIZE + 17;
+        final byte[] img = image(length);
+        final ExecutorService service = Executors.newFixedThreadPool(2);
+        try {
+            final byte[] zipped = ImageDeflater.zip(service,
+                    Deflater.BEST_SPEED, img);
+            assertArrayEquals(img, unzip(zipped, length));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void checkImageIsCompressedInRows() throws DataFormatException {
+        final byte[] img = image(5000);
+        final ImageDeflater zip = new ImageDeflater(null,
+                Deflater.BEST_COMPRESSION, img.length);
+        for (int i = 0; i < img.length; i += 100) {
+            zip.write(img, i, 100);
+        }
+        assertArrayEquals(img, unzip(zip.finish(), img.length));
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkLevelBelowLowerBound() {
+        ImageDeflater.checkLevel(Deflater.DEFAULT_COMPRESSION - 1);
+    }
+
+    @Test
+    public void checkBestCompressionIsAllowed() {
+        assertEquals(Deflater.BEST_COMPRESSION,
+                ImageDeflater.checkLevel(Deflater.BEST_COMPRESSION));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JPGDecoderTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+public final class JPGDecoderTest {
+
+    private static final int[] IMAGE = {
+        0xFF, 0xD8,
+        0xFF, 0xC0, 0x00, 0x0B, 0x08, 0x00, 0x02, 0x00, 0x03, 0x01,
+        0x01, 0x11, 0x00,
+        0xFF, 0xDA, 0x00, 0x08, 0x01, 0x01, 0x00, 0x00, 0x3F, 0x00,
+        0x12, 0xFF, 0x00, 0x34, 0xFF, 0xD0, 0x56,
+        0xFF, 0xD9
+    };
+
+    private byte[] bytes(final int[] values) {
+        final byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    private JPGDecoder decode(final byte[] data)
+            throws DataFormatException, IOException {
+        final JPGDecoder decoder = new JPGDecoder();
+        decoder.read(new ByteArrayInputStream(data));
+        return decoder;
+    }
+
+    @Test
+    public void checkImageIsDecoded() throws DataFormatException, IOException {
+        final byte[] data = bytes(IMAGE);
+        final JPGDecoder decoder = decode(data);
+
+        assertEquals(3, decoder.getWidth());
+        assertEquals(2, decoder.getHeight());
+        assertArrayEquals(data, decoder.getImage());
+    }
+
+    @Test
+    public void checkImageIsReadFromURL()
+            throws DataFormatException, IOException {
+        final byte[] data = bytes(IMAGE);
+        final File file = File.createTempFile("image", ".jpg");
+        file.deleteOnExit();
+        final FileOutputStream stream = new FileOutputStream(file);
+        stream.write(data);
+        stream.close();
+
+        final JPGDecoder decoder = new JPGDecoder();
+        decoder.read(file.toURI().toURL());
+
+        assertEquals(3, decoder.getWidth());
+        assertEquals(2, decoder.getHeight());
+        assertArrayEquals(data, decoder.getImage());
+    }
+
+    @Test
+    public void checkTrailingDataIsRemoved()
+            throws DataFormatException, IOException {
+        final byte[] data = bytes(IMAGE);
+        final byte[] padded = Arrays.copyOf(data, data.length + 4);
+
+        assertArrayEquals(data, decode(padded).getImage());
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkStartOfImageIsRequired()
+            throws DataFormatException, IOException {
+        decode(Arrays.copyOfRange(bytes(IMAGE), 2, IMAGE.length));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkEndOfImageIsRequired()
+            throws DataFormatException, IOException {
+        decode(Arrays.copyOf(bytes(IMAGE), IMAGE.length - 2));
+    }
+}
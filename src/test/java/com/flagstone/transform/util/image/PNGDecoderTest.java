@@ -0,0 +1,164 @@
+/*
+ * PNGDecoderTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.flagstone.transform.exception.IllegalArgumentRangeException;
+
+public final class PNGDecoderTest {
+
+    private static final int WIDTH = 13;
+    private static final int HEIGHT = 7;
+
+    private BufferedImage trueColour() {
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.setRGB(x, y, ((x * 19) << 24) | ((y * 37) << 16)
+                        | ((x * y * 3) << 8) | (x + y));
+            }
+        }
+        return img;
+    }
+
+    private BufferedImage indexed() {
+        final byte[] red = new byte[256];
+        final byte[] green = new byte[256];
+        final byte[] blue = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            red[i] = (byte) i;
+            green[i] = (byte) (255 - i);
+            blue[i] = (byte) (i * 7);
+        }
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, red, green, blue));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.getRaster().setSample(x, y, 0, (x * HEIGHT + y) * 2);
+            }
+        }
+        return img;
+    }
+
+    private byte[] rgba(final BufferedImage img) {
+        final byte[] data = new byte[WIDTH * HEIGHT * 4];
+        int index = 0;
+        int pixel;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                pixel = img.getRGB(x, y);
+                data[index++] = (byte) (pixel >> 16);
+                data[index++] = (byte) (pixel >> 8);
+                data[index++] = (byte) pixel;
+                data[index++] = (byte) (pixel >>> 24);
+            }
+        }
+        return data;
+    }
+
+    private byte[] encode(final BufferedImage img, final boolean interlaced)
+            throws IOException {
+        final ImageWriter writer =
+            ImageIO.getImageWritersByFormatName("png").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(interlaced
+                ? ImageWriteParam.MODE_DEFAULT
+                : ImageWriteParam.MODE_DISABLED);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            stream.close();
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private PNGDecoder decode(final byte[] data)
+            throws DataFormatException, IOException {
+        final PNGDecoder decoder = new PNGDecoder();
+        decoder.read(new ByteArrayInputStream(data));
+        return decoder;
+    }
+
+    @Test
+    public void checkTrueColourImageIsDecoded()
+            throws DataFormatException, IOException {
+        final BufferedImage img = trueColour();
+        final PNGDecoder decoder = decode(encode(img, false));
+
+        assertEquals(WIDTH, decoder.getWidth());
+        assertEquals(HEIGHT, decoder.getHeight());
+        assertArrayEquals(rgba(img), decoder.getImage());
+    }
+
+    @Test
+    public void checkInterlacedTrueColourImageIsDecoded()
+            throws DataFormatException, IOException {
+        final BufferedImage img = trueColour();
+        assertArrayEquals(rgba(img), decode(encode(img, true)).getImage());
+    }
+
+    @Test
+    public void checkInterlacedIndexedImageIsDecoded()
+            throws DataFormatException, IOException {
+        final BufferedImage img = indexed();
+        assertArrayEquals(decode(encode(img, false)).getImage(),
+                decode(encode(img, true)).getImage());
+    }
+
+    @Test(expected = IllegalArgumentRangeException.class)
+    public void checkCompressionLevelAboveUpperBound() {
+        new PNGDecoder().setCompressionLevel(10);
+    }
+}
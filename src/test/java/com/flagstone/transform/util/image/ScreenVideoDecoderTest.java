@@ -0,0 +1,181 @@
+/*
+ * ScreenVideoDecoderTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+public final class ScreenVideoDecoderTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 20;
+    private static final int BLOCK = 16;
+
+    private byte[] image(final int seed) {
+        final byte[] img = new byte[WIDTH * HEIGHT * 4];
+        for (int i = 0; i < img.length; i++) {
+            img[i] = (byte) ((i + seed) % 251);
+        }
+        return img;
+    }
+
+    private byte[] opaque(final byte[] img) {
+        final byte[] copy = Arrays.copyOf(img, img.length);
+        for (int i = 3; i < copy.length; i += 4) {
+            copy[i] = (byte) 255;
+        }
+        return copy;
+    }
+
+    private byte[][] encode(final int interval, final byte[]... images)
+            throws IOException {
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        encoder.setKeyFrameInterval(interval);
+        final byte[][] packets = new byte[images.length][];
+        for (int i = 0; i < images.length; i++) {
+            packets[i] = encoder.encode(images[i]).encode();
+        }
+        encoder.end();
+        return packets;
+    }
+
+    @Test
+    public void checkFramesAreDecoded()
+            throws IOException, DataFormatException {
+        final byte[] first = image(0);
+        final byte[] second = Arrays.copyOf(first, first.length);
+        second[0]++;
+        second[WIDTH * 4 * (HEIGHT - 1)]++;
+        final byte[][] packets = encode(30, first, second);
+
+        final ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+        decoder.decode(packets[0]);
+        assertTrue(decoder.isKeyFrame());
+        assertEquals(WIDTH, decoder.getWidth());
+        assertEquals(HEIGHT, decoder.getHeight());
+        assertArrayEquals(opaque(first), decoder.getImage());
+
+        decoder.decode(packets[1]);
+        assertFalse(decoder.isKeyFrame());
+        assertArrayEquals(opaque(second), decoder.getImage());
+        decoder.end();
+    }
+
+    @Test
+    public void checkReplacedBlocksAreNotDecompressed()
+            throws IOException, DataFormatException {
+        final byte[][] packets = encode(1, image(0), image(7));
+        // Corrupt the first block in the first packet.
+        packets[0][7] = 0;
+        packets[0][8] = 0;
+
+        final ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+        decoder.decode(packets[0]);
+        decoder.decode(packets[1]);
+        assertArrayEquals(opaque(image(7)), decoder.getImage());
+        decoder.end();
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkCorruptBlockIsReported()
+            throws IOException, DataFormatException {
+        final byte[][] packets = encode(1, image(0));
+        packets[0][7] = 0;
+        packets[0][8] = 0;
+
+        final ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+        decoder.decode(packets[0]);
+        decoder.getImage();
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void checkTruncatedPacketIsReported() throws IOException,
+            DataFormatException {
+        final byte[][] packets = encode(1, image(0));
+        new ScreenVideoDecoder().decode(Arrays.copyOf(packets[0], 20));
+    }
+
+    @Test
+    public void checkParallelDecodingMatchesSerial()
+            throws IOException, DataFormatException {
+        final byte[] second = image(0);
+        second[100] = 0;
+        final byte[][] packets = encode(30, image(0), second, image(3));
+        final ExecutorService service = Executors.newFixedThreadPool(2);
+        final ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+        decoder.setExecutor(service);
+
+        try {
+            decoder.decode(packets[0]);
+            decoder.decode(packets[1]);
+            assertArrayEquals(opaque(second), decoder.getImage());
+            decoder.decode(packets[2]);
+            assertArrayEquals(opaque(image(3)), decoder.getImage());
+        } finally {
+            service.shutdown();
+            decoder.end();
+        }
+    }
+
+    @Test
+    public void checkLargeBlocksAreDecoded()
+            throws IOException, DataFormatException {
+        final int width = 100;
+        final int height = 70;
+        final byte[] img = new byte[width * height * 4];
+        for (int i = 0; i < img.length; i++) {
+            img[i] = (byte) (i % 249);
+        }
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(width,
+                height, 64, 48);
+        final byte[] packet = encoder.encode(img).encode();
+        encoder.end();
+
+        final ScreenVideoDecoder decoder = new ScreenVideoDecoder();
+        decoder.decode(packet);
+        assertEquals(width, decoder.getWidth());
+        assertEquals(height, decoder.getHeight());
+        assertArrayEquals(opaque(img), decoder.getImage());
+        decoder.end();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ScreenVideoEncoderTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.flagstone.transform.exception.IllegalArgumentValueException;
+import com.flagstone.transform.video.ImageBlock;
+import com.flagstone.transform.video.ScreenPacket;
+
+public final class ScreenVideoEncoderTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 20;
+    private static final int BLOCK = 16;
+
+    private byte[] image() {
+        final byte[] img = new byte[WIDTH * HEIGHT * 4];
+        for (int i = 0; i < img.length; i++) {
+            img[i] = (byte) (i % 251);
+        }
+        return img;
+    }
+
+    private int changedBlocks(final ScreenPacket packet) {
+        int changed = 0;
+        for (final ImageBlock block : packet.getImageBlocks()) {
+            if (!block.isEmpty()) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private byte[] unzip(final byte[] data, final int length)
+            throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        final byte[] result = new byte[length];
+        try {
+            inflater.setInput(data);
+            assertEquals(length, inflater.inflate(result));
+            assertTrue(inflater.finished());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    @Test(expected = IllegalArgumentValueException.class)
+    public void checkBlockSizeIsMultipleOf16() {
+        new ScreenVideoEncoder(WIDTH, HEIGHT, 24, BLOCK);
+    }
+
+    @Test
+    public void checkFirstFrameIsKeyFrame() throws IOException {
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final ScreenPacket packet = encoder.encode(image());
+        encoder.end();
+
+        assertTrue(packet.isKeyFrame());
+        assertEquals(6, packet.getImageBlocks().size());
+        assertEquals(6, changedBlocks(packet));
+    }
+
+    @Test
+    public void checkUnchangedBlocksAreEmpty() throws IOException {
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final byte[] img = image();
+        encoder.encode(img);
+        ScreenPacket packet = encoder.encode(img);
+
+        assertFalse(packet.isKeyFrame());
+        assertEquals(0, changedBlocks(packet));
+
+        // Top right pixel is in the last block.
+        img[WIDTH * 4 - 2]++;
+        packet = encoder.encode(img);
+        encoder.end();
+
+        assertEquals(1, changedBlocks(packet));
+        assertFalse(packet.getImageBlocks().get(5).isEmpty());
+    }
+
+    @Test
+    public void checkKeyFrameInterval() throws IOException {
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final byte[] img = image();
+        encoder.setKeyFrameInterval(2);
+
+        assertTrue(encoder.encode(img).isKeyFrame());
+        assertFalse(encoder.encode(img).isKeyFrame());
+        final ScreenPacket packet = encoder.encode(img);
+        encoder.end();
+
+        assertTrue(packet.isKeyFrame());
+        assertEquals(6, changedBlocks(packet));
+    }
+
+    @Test
+    public void checkBlockPixelsAreBottomUpBGR()
+            throws IOException, DataFormatException {
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final byte[] img = image();
+        final List<ImageBlock> blocks = encoder.encode(img).getImageBlocks();
+        encoder.end();
+
+        // The last block covers the top right corner: 8 x 4 pixels.
+        final ImageBlock block = blocks.get(5);
+        assertEquals(8, block.getWidth());
+        assertEquals(4, block.getHeight());
+
+        final byte[] pixels = unzip(block.getBlock(), 8 * 4 * 3);
+        final int src = (3 * WIDTH + 32) * 4;
+        assertEquals(img[src + 2], pixels[0]);
+        assertEquals(img[src + 1], pixels[1]);
+        assertEquals(img[src], pixels[2]);
+    }
+
+    @Test
+    public void checkParallelEncodingMatchesSerial() throws IOException {
+        final ScreenVideoEncoder serial = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final ScreenVideoEncoder parallel = new ScreenVideoEncoder(WIDTH,
+                HEIGHT, BLOCK, BLOCK);
+        final ExecutorService service = Executors.newFixedThreadPool(2);
+        parallel.setExecutor(service);
+        final byte[] img = image();
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                img[i * 100]++;
+                assertArrayEquals(serial.encode(img).encode(),
+                        parallel.encode(img).encode());
+            }
+        } finally {
+            service.shutdown();
+            serial.end();
+            parallel.end();
+        }
+    }
+
+    @Test
+    public void checkLargeBlocksCanBeDecoded()
+            throws IOException, DataFormatException {
+        final int width = 100;
+        final int height = 70;
+        final byte[] img = new byte[width * height * 4];
+        for (int i = 0; i < img.length; i++) {
+            img[i] = (byte) (i % 249);
+        }
+        final ScreenVideoEncoder encoder = new ScreenVideoEncoder(width,
+                height, 64, 64);
+        final ScreenPacket decoded = new ScreenPacket(
+                encoder.encode(img).encode());
+        encoder.end();
+
+        assertTrue(decoded.isKeyFrame());
+        assertEquals(width, decoded.getImageWidth());
+        assertEquals(height, decoded.getImageHeight());
+        assertEquals(64, decoded.getBlockWidth());
+        assertEquals(64, decoded.getBlockHeight());
+        assertEquals(4, decoded.getImageBlocks().size());
+
+        // The last block covers the top right corner: 36 x 6 pixels.
+        final ImageBlock block = decoded.getImageBlocks().get(3);
+        assertEquals(36, block.getWidth());
+        assertEquals(6, block.getHeight());
+
+        final byte[] pixels = unzip(block.getBlock(), 36 * 6 * 3);
+        final byte[] expected = new byte[pixels.length];
+        int index = 0;
+        for (int row = 5; row >= 0; row--) {
+            for (int col = 64; col < width; col++) {
+                final int src = (row * width + col) * 4;
+                expected[index++] = img[src + 2];
+                expected[index++] = img[src + 1];
+                expected[index++] = img[src];
+            }
+        }
+        assertArrayEquals(expected, pixels);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * DeduplicatorTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.flagstone.transform.Export;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.image.DefineJPEGImage2;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.shape.DefineShape3;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.sound.DefineSound;
+import com.flagstone.transform.sound.SoundFormat;
+import com.flagstone.transform.sound.SoundInfo;
+import com.flagstone.transform.sound.SoundRate;
+import com.flagstone.transform.sound.StartSound;
+
+public final class DeduplicatorTest {
+
+    private static final byte[] IMAGE = new byte[] {1, 2, 3, 4, 5, 6};
+    private static final byte[] OTHER = new byte[] {6, 5, 4, 3, 2, 1};
+    private static final byte[] SOUND = new byte[] {9, 8, 7, 6};
+
+    private DefineShape3 shape(final int uid, final int image) {
+        final List<FillStyle> fills = new ArrayList<FillStyle>();
+        fills.add(new BitmapFill(false, false, image,
+                CoordTransform.translate(0, 0)));
+        final Shape shape = new Shape();
+        shape.add(new ShapeStyle().setMove(0, 0).setFillStyle(1));
+        shape.add(new Line(100, 0));
+        shape.add(new Line(0, 100));
+        shape.add(new Line(-100, -100));
+        return new DefineShape3(uid, new Bounds(0, 0, 100, 100), fills,
+                new ArrayList<LineStyle>(), shape);
+    }
+
+    private DefineSound sound(final int uid) {
+        return new DefineSound(uid, SoundFormat.PCM, SoundRate.KHZ_11K,
+                1, 2, 2, SOUND);
+    }
+
+    private StartSound start(final int uid) {
+        return new StartSound(new SoundInfo(uid, SoundInfo.Mode.START,
+                0, null));
+    }
+
+    private Movie movie(final Map<Integer, String> names) {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        movie.add(header);
+        movie.add(new DefineJPEGImage2(1, IMAGE));
+        movie.add(new DefineJPEGImage2(2, IMAGE));
+        movie.add(new DefineJPEGImage2(3, OTHER));
+        movie.add(shape(10, 2));
+        movie.add(sound(4));
+        movie.add(sound(5));
+        movie.add(start(5));
+        final List<MovieTag> clip = new ArrayList<MovieTag>();
+        clip.add(start(5));
+        clip.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(11, clip));
+        movie.add(new Export(names));
+        movie.add(Place2.show(10, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        return movie;
+    }
+
+    private byte[] encode(final Movie movie)
+            throws DataFormatException, IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        movie.encodeToStream(stream);
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void checkDuplicatesAreRemoved() throws IOException {
+        final Movie movie = movie(new LinkedHashMap<Integer, String>());
+        final Map<Integer, String> expected =
+                new LinkedHashMap<Integer, String>();
+
+        final Map<Integer, Integer> removed = new Deduplicator().merge(movie);
+
+        assertEquals(2, removed.size());
+        assertEquals(Integer.valueOf(1), removed.get(2));
+        assertEquals(Integer.valueOf(4), removed.get(5));
+        assertEquals(10, movie.getObjects().size());
+        assertEquals(expected, ((Export) movie.getObjects().get(7))
+                .getObjects());
+    }
+
+    @Test
+    public void checkReferencesAreUpdated() throws IOException {
+        final Movie movie = movie(new LinkedHashMap<Integer, String>());
+
+        new Deduplicator().merge(movie);
+
+        final DefineShape3 shape = (DefineShape3) movie.getObjects().get(3);
+        assertEquals(1, ((BitmapFill) shape.getFillStyles().get(0))
+                .getIdentifier());
+        assertEquals(4, ((StartSound) movie.getObjects().get(5))
+                .getSound().getIdentifier());
+        final DefineMovieClip clip =
+            (DefineMovieClip) movie.getObjects().get(6);
+        assertEquals(4, ((StartSound) clip.getObjects().get(0))
+                .getSound().getIdentifier());
+    }
+
+    @Test
+    public void checkExportedNameIsMoved() throws IOException {
+        final Map<Integer, String> names = new LinkedHashMap<Integer, String>();
+        names.put(2, "image");
+        final Movie movie = movie(names);
+
+        new Deduplicator().merge(movie);
+
+        final Map<Integer, String> expected =
+            new LinkedHashMap<Integer, String>();
+        expected.put(1, "image");
+        assertEquals(expected, ((Export) movie.getObjects().get(7))
+                .getObjects());
+    }
+
+    @Test
+    public void checkNamedDefinitionsAreKept() throws IOException {
+        final Map<Integer, String> names = new LinkedHashMap<Integer, String>();
+        names.put(1, "first");
+        names.put(2, "second");
+        final Movie movie = movie(names);
+
+        final Map<Integer, Integer> removed = new Deduplicator().merge(movie);
+
+        assertEquals(1, removed.size());
+        assertTrue(movie.getObjects().get(2) instanceof DefineJPEGImage2);
+        assertEquals(2, ((BitmapFill) ((DefineShape3) movie.getObjects()
+                .get(4)).getFillStyles().get(0)).getIdentifier());
+    }
+
+    @Test
+    public void checkMovieIsEncoded() throws DataFormatException,
+            IOException {
+        final Movie movie = movie(new LinkedHashMap<Integer, String>());
+        final int length = encode(movie).length;
+
+        new Deduplicator().merge(movie);
+        final byte[] data = encode(movie);
+
+        assertTrue(data.length < length);
+        final Movie decoded = new Movie();
+        decoded.decodeFromStream(new ByteArrayInputStream(data));
+        assertEquals(movie.getObjects().size(),
+                decoded.getObjects().size());
+    }
+}
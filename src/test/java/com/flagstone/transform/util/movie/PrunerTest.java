@@ -0,0 +1,202 @@
+/*
+ * PrunerTest.java
+ * Transform
+ *
+ * Copyright (c) 2001-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.util.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.flagstone.transform.DefineTag;
+import com.flagstone.transform.Export;
+import com.flagstone.transform.Free;
+import com.flagstone.transform.Movie;
+import com.flagstone.transform.MovieHeader;
+import com.flagstone.transform.MovieObject;
+import com.flagstone.transform.MovieTag;
+import com.flagstone.transform.Place2;
+import com.flagstone.transform.ScalingGrid;
+import com.flagstone.transform.ShowFrame;
+import com.flagstone.transform.datatype.Bounds;
+import com.flagstone.transform.datatype.CoordTransform;
+import com.flagstone.transform.fillstyle.BitmapFill;
+import com.flagstone.transform.fillstyle.FillStyle;
+import com.flagstone.transform.image.DefineJPEGImage2;
+import com.flagstone.transform.linestyle.LineStyle;
+import com.flagstone.transform.movieclip.DefineMovieClip;
+import com.flagstone.transform.shape.DefineShape3;
+import com.flagstone.transform.shape.Line;
+import com.flagstone.transform.shape.Shape;
+import com.flagstone.transform.shape.ShapeStyle;
+import com.flagstone.transform.sound.DefineSound;
+import com.flagstone.transform.sound.SoundFormat;
+import com.flagstone.transform.sound.SoundInfo;
+import com.flagstone.transform.sound.SoundRate;
+import com.flagstone.transform.sound.StartSound;
+
+public final class PrunerTest {
+
+    private static final byte[] IMAGE = new byte[] {1, 2, 3, 4, 5, 6};
+    private static final byte[] SOUND = new byte[] {9, 8, 7, 6};
+
+    private DefineShape3 shape(final int uid, final int image) {
+        final List<FillStyle> fills = new ArrayList<FillStyle>();
+        final Shape shape = new Shape();
+        final ShapeStyle style = new ShapeStyle().setMove(0, 0);
+        style.add(new BitmapFill(false, false, image,
+                CoordTransform.translate(0, 0)));
+        style.setFillStyle(1);
+        shape.add(style);
+        shape.add(new Line(100, 0));
+        shape.add(new Line(0, 100));
+        shape.add(new Line(-100, -100));
+        return new DefineShape3(uid, new Bounds(0, 0, 100, 100), fills,
+                new ArrayList<LineStyle>(), shape);
+    }
+
+    private DefineSound sound(final int uid) {
+        return new DefineSound(uid, SoundFormat.PCM, SoundRate.KHZ_11K,
+                1, 2, 2, SOUND);
+    }
+
+    private StartSound start(final int uid) {
+        return new StartSound(new SoundInfo(uid, SoundInfo.Mode.START,
+                0, null));
+    }
+
+    private Movie movie() {
+        final Movie movie = new Movie();
+        final MovieHeader header = new MovieHeader();
+        header.setFrameRate(1.0f);
+        header.setFrameSize(new Bounds(0, 0, 8000, 8000));
+        movie.add(header);
+        movie.add(new DefineJPEGImage2(1, IMAGE));
+        movie.add(new DefineJPEGImage2(2, IMAGE));
+        movie.add(shape(10, 1));
+        movie.add(shape(12, 2));
+        movie.add(new ScalingGrid(12, new Bounds(10, 10, 90, 90)));
+        movie.add(sound(4));
+        movie.add(sound(5));
+        final List<MovieTag> clip = new ArrayList<MovieTag>();
+        clip.add(start(5));
+        clip.add(Place2.show(10, 1, 0, 0));
+        clip.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(11, clip));
+        final List<MovieTag> unused = new ArrayList<MovieTag>();
+        unused.add(Place2.show(12, 1, 0, 0));
+        unused.add(ShowFrame.getInstance());
+        movie.add(new DefineMovieClip(13, unused));
+        movie.add(Place2.show(11, 1, 0, 0));
+        movie.add(ShowFrame.getInstance());
+        movie.add(new Free(13));
+        return movie;
+    }
+
+    private List<Integer> identifiers(final Movie movie) {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (final MovieTag object : movie.getObjects()) {
+            if (object instanceof DefineTag) {
+                list.add(((DefineTag) object).getIdentifier());
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void checkUnusedDefinitionsAreRemoved() throws IOException {
+        final Movie movie = movie();
+        final Set<Integer> removed = new Pruner().prune(movie);
+
+        assertEquals(4, removed.size());
+        assertTrue(removed.contains(2));
+        assertTrue(removed.contains(4));
+        assertTrue(removed.contains(12));
+        assertTrue(removed.contains(13));
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 1, 10, 5, 11);
+        assertEquals(expected, identifiers(movie));
+    }
+
+    @Test
+    public void checkDescriptionsAreRemoved() throws IOException {
+        final Movie movie = movie();
+        new Pruner().prune(movie);
+
+        for (final MovieTag object : movie.getObjects()) {
+            assertTrue(!(object instanceof ScalingGrid));
+            assertTrue(!(object instanceof Free));
+        }
+        assertEquals(7, movie.getObjects().size());
+    }
+
+    @Test
+    public void checkExportedDefinitionsAreKept() throws IOException {
+        final Movie movie = movie();
+        final Map<Integer, String> names =
+                new LinkedHashMap<Integer, String>();
+        names.put(13, "clip");
+        movie.add(new Export(names));
+
+        final Set<Integer> removed = new Pruner().prune(movie);
+
+        assertEquals(1, removed.size());
+        assertTrue(removed.contains(4));
+    }
+
+    @Test
+    public void checkSelectedDefinitionsAreKept() throws IOException {
+        final Movie movie = movie();
+        final Set<Integer> removed = new Pruner().prune(movie.getObjects(),
+                Collections.singleton(4));
+
+        assertEquals(3, removed.size());
+        assertTrue(!removed.contains(4));
+    }
+
+    @Test
+    public void checkMovieObjectsPreventRemoval() throws IOException {
+        final Movie movie = movie();
+        final int count = movie.getObjects().size();
+        movie.add(new MovieObject(255, new byte[] {1, 2}));
+
+        assertTrue(new Pruner().prune(movie).isEmpty());
+        assertEquals(count + 1, movie.getObjects().size());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * ScreenPacketTest.java
+ * Transform
+ *
+ * Copyright (c) 2009-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.flagstone.transform.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class ScreenPacketTest {
+
+    @Test
+    public void checkEncodedPacketIsDecoded() throws IOException {
+        final byte[] data = new byte[] {1, 2, 3, 4, 5 };
+        final List<ImageBlock> blocks = new ArrayList<ImageBlock>();
+        blocks.add(new ImageBlock(16, 16, data));
+        blocks.add(new ImageBlock(0, 0, new byte[0]));
+
+        final ScreenPacket packet = new ScreenPacket(true, 32, 16, 16, 16,
+                blocks);
+        final ScreenPacket decoded = new ScreenPacket(packet.encode());
+
+        assertEquals(32, decoded.getImageWidth());
+        assertEquals(16, decoded.getImageHeight());
+        assertEquals(16, decoded.getBlockWidth());
+        assertEquals(16, decoded.getBlockHeight());
+        assertEquals(2, decoded.getImageBlocks().size());
+        assertArrayEquals(data, decoded.getImageBlocks().get(0).getBlock());
+        assertTrue(decoded.getImageBlocks().get(1).isEmpty());
+    }
+
+    @Test
+    public void checkBlockSizesAreDecodedForEachRow() throws IOException {
+        final List<ImageBlock> blocks = new ArrayList<ImageBlock>();
+        blocks.add(new ImageBlock(16, 16, new byte[] {1 }));
+        blocks.add(new ImageBlock(4, 16, new byte[] {2 }));
+        blocks.add(new ImageBlock(16, 2, new byte[] {3 }));
+        blocks.add(new ImageBlock(4, 2, new byte[] {4 }));
+
+        final ScreenPacket packet = new ScreenPacket(false, 20, 18, 16, 16,
+                blocks);
+        final ScreenPacket decoded = new ScreenPacket(packet.encode());
+
+        assertFalse(decoded.isKeyFrame());
+        assertEquals(16, decoded.getImageBlocks().get(2).getWidth());
+        assertEquals(2, decoded.getImageBlocks().get(2).getHeight());
+        assertEquals(4, decoded.getImageBlocks().get(3).getWidth());
+        assertEquals(2, decoded.getImageBlocks().get(3).getHeight());
+    }
+
+    @Test
+    public void checkBlockSizeIsEncoded() throws IOException {
+        final List<ImageBlock> blocks = new ArrayList<ImageBlock>();
+        for (int i = 0; i < 36; i++) {
+            blocks.add(new ImageBlock(0, 0, new byte[0]));
+        }
+
+        final ScreenPacket packet = new ScreenPacket(true, 725, 100, 64, 48,
+                blocks);
+        final ScreenPacket decoded = new ScreenPacket(packet.encode());
+
+        assertEquals(725, decoded.getImageWidth());
+        assertEquals(100, decoded.getImageHeight());
+        assertEquals(64, decoded.getBlockWidth());
+        assertEquals(48, decoded.getBlockHeight());
+        assertEquals(36, decoded.getImageBlocks().size());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * MovieParallelIT.java
+ * Transform
+ *
+ * Copyright (c) 2009-2010 Flagstone Software Ltd. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of Flagstone Software Ltd. nor the names of its
+ *    contributors may be used to endorse or promote products derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package integration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.flagstone.transform.Movie;
+
+@RunWith(Parameterized.class)
+public final class MovieParallelIT {
+
+    private static ExecutorService executor;
+
+    @Parameters
+    public static Collection<Object[]>  files() {
+
+        File srcDir;
+
+        if (System.getProperty("test.suite") == null) {
+            srcDir = new File("src/test/resources/swf-reference");
+        } else {
+            srcDir = new File(System.getProperty("test.suite"));
+        }
+
+        final FilenameFilter filter = new FilenameFilter() {
+            @Override
+            public boolean accept(final File directory, final String name) {
+                return name.endsWith(".swf");
+            }
+        };
+
+        final String[] files = srcDir.list(filter);
+        final Object[][] collection = new Object[files.length][1];
+
+        for (int i = 0; i < files.length; i++) {
+            collection[i][0] = new File(srcDir, files[i]);
+        }
+        return Arrays.asList(collection);
+    }
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    private final transient File sourceFile;
+
+    private static byte[] uncompressed(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data, 0, 8);
+
+        if (data[0] == 'C') {
+            final InputStream stream = new InflaterInputStream(
+                    new ByteArrayInputStream(data, 8, data.length - 8));
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            stream.close();
+        } else {
+            out.write(data, 8, data.length - 8);
+        }
+        return out.toByteArray();
+    }
+
+    public MovieParallelIT(final File file) {
+        sourceFile = file;
+    }
+
+    @Test
+    public void decode() {
+        try {
+            final Movie expected = new Movie();
+            expected.decodeFromFile(sourceFile);
+
+            final Movie movie = new Movie();
+            movie.setExecutor(executor);
+            movie.decodeFromFile(sourceFile);
+
+            assertEquals(expected.toString(), movie.toString());
+        } catch (Exception e) {
+            if (System.getProperty("test.trace") != null) {
+                e.printStackTrace(); //NOPMD
+            }
+            fail(sourceFile.getPath());
+        }
+    }
+
+    @Test
+    public void encode() {
+        try {
+            final Movie movie = new Movie();
+            movie.decodeFromFile(sourceFile);
+
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            movie.encodeToStream(expected);
+
+            movie.setExecutor(executor);
+
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            movie.encodeToStream(actual);
+
+            assertArrayEquals(uncompressed(expected.toByteArray()),
+                    uncompressed(actual.toByteArray()));
+        } catch (Exception e) {
+            if (System.getProperty("test.trace") != null) {
+                e.printStackTrace(); //NOPMD
+            }
+            fail(sourceFile.getPath());
+        }
+    }
+}